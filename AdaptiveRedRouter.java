@@ -0,0 +1,58 @@
+import java.io.IOException;
+
+// AdaptiveRedRouter class: Adaptive RED (Floyd, Gummadi and Shenker)
+// Gentle RED whose maxDropProbability is retuned every half second to keep the average queue
+// between 40% and 60% of the way from minThreshold to maxThreshold: it grows by
+// min(0.01, max_p / 4) while the average is above that band and shrinks by a factor 0.9 while
+// below, staying within [0.01, 0.5]. The queue weight follows the link speed, 1 - exp(-1 / C) for
+// C typical packets per second, so the average reacts within about a second.
+class AdaptiveRedRouter extends RedRouter {
+    private static final long ADAPT_INTERVAL_NANOS = 500_000_000L;
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private final double targetLow;
+    private final double targetHigh;
+    private long lastAdaptation = NEVER;
+
+    public AdaptiveRedRouter(int id, int bucketCapacity, int tokenRate, double minThreshold, double maxThreshold,
+            double dropProbability, double averageQueueSize) {
+        super(id, bucketCapacity, tokenRate, minThreshold, maxThreshold, dropProbability, averageQueueSize, true);
+        this.targetLow = minThreshold + 0.4 * (maxThreshold - minThreshold);
+        this.targetHigh = minThreshold + 0.6 * (maxThreshold - minThreshold);
+        setQueueWeight(-Math.expm1(-typicalPacketNanos() / 1e9));
+    }
+
+    @Override
+    public boolean enqueuePacket(PacketTable packets, int packet, int port) {
+        long now = now();
+        if (lastAdaptation == NEVER || now < lastAdaptation) {
+            lastAdaptation = now;
+        } else if (now - lastAdaptation >= ADAPT_INTERVAL_NANOS) {
+            lastAdaptation = now;
+            adapt();
+        }
+        return super.enqueuePacket(packets, packet, port);
+    }
+
+    private void adapt() {
+        double average = getAverageQueueSize();
+        double probability = getDropProbability();
+        if (average > targetHigh && probability <= 0.5) {
+            setDropProbability(Math.min(1.0, probability + Math.min(0.01, probability / 4)));
+        } else if (average < targetLow && probability >= 0.01) {
+            setDropProbability(probability * 0.9);
+        }
+    }
+
+    @Override
+    void writeState(CheckpointOutput out) throws IOException {
+        super.writeState(out);
+        out.writeLong(lastAdaptation);
+    }
+
+    @Override
+    void readState(MappedInput in) throws IOException {
+        super.readState(in);
+        lastAdaptation = in.readLong();
+    }
+}
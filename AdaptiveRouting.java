@@ -0,0 +1,262 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// AdaptiveRouting class: shortest paths over link costs that follow congestion
+// Every interval of virtual time the simulator stops at the boundary and calls update(). It
+// samples each port's queue length and its share of dropped packets, smooths both with an EWMA,
+// and prices the link at weight * (1 + sensitivity * (occupancy + drop rate)). Costs that moved by
+// less than a quarter of the link's weight are left alone, which keeps routes from flapping on
+// noise. The changed costs go to a background thread that repairs a private DynamicShortestPaths
+// in place, writing into a back buffer of forwarding tables, while packets keep following the
+// tables the routers hold. At the next boundary the tables that changed are swapped into the
+// routers all at once and the back buffer catches up by copying them. New routes thus take one
+// interval to compute, and a run gives the same results however long the computation takes.
+class AdaptiveRouting {
+    static final double DEFAULT_INTERVAL_MILLIS = 100;
+    static final double DEFAULT_SENSITIVITY = 4;
+    // Costs are weights times COST_UNIT so that penalties below one weight unit still count
+    static final int COST_UNIT = 16;
+    static final double SMOOTHING = 0.25;
+    static final double HYSTERESIS = 0.25;
+
+    private final Graph graph;
+    private final double intervalMillis;
+    private final long intervalTicks;
+    private final double sensitivity;
+    // Touched only by the background thread while a computation is pending
+    private CompactGraph costs;
+    private DynamicShortestPaths engine;
+    private ForwardingTable[] back;
+    // Installed in the routers
+    private ForwardingTable[] front;
+    private OutputPorts ports;
+    private double[] occupancy;
+    private double[] dropRate;
+    private long[] lastEnqueued;
+    private long[] lastDrops;
+    // Cost of each link as last handed to the background thread
+    private int[] applied;
+    private int[] changedLinks;
+    private int[] changedCosts;
+    private int changedCount;
+    private boolean stale;
+    private boolean modified;
+    private ExecutorService worker;
+    private Future<?> pending;
+    private long nextUpdate;
+    private long updates;
+    private long linkChanges;
+    private long tablesSwapped;
+    private volatile long computeNanos;
+    private long waitNanos;
+
+    AdaptiveRouting(Graph graph, double intervalMillis, double sensitivity) {
+        if (!(intervalMillis > 0) || !(sensitivity >= 0)) {
+            throw new IllegalArgumentException("Adaptive routing needs a positive interval and a non-negative "
+                    + "sensitivity, got " + intervalMillis + " ms and " + sensitivity);
+        }
+        this.graph = graph;
+        this.intervalMillis = intervalMillis;
+        this.intervalTicks = Math.max(1, Math.round(intervalMillis * EventSimulator.TICKS_PER_MILLISECOND));
+        this.sensitivity = sensitivity;
+    }
+
+    // Shortest-path tables over the configured weights; the caller installs them
+    ForwardingTable[] build() {
+        CompactGraph compact = graph.getCompactGraph();
+        if (compact.minWeight() < 0) {
+            throw new IllegalArgumentException("Adaptive routing needs non-negative link weights");
+        }
+        int n = compact.size();
+        costs = compact.scaledCopy(COST_UNIT);
+        back = new ForwardingTable[n];
+        front = new ForwardingTable[n];
+        for (int i = 0; i < n; i++) {
+            back[i] = new ForwardingTable(n);
+        }
+        engine = new DynamicShortestPaths(costs, back);
+        engine.clearChangedTables();
+        for (int i = 0; i < n; i++) {
+            front[i] = new ForwardingTable(n);
+            front[i].copyFrom(back[i]);
+        }
+        applied = new int[compact.edgeCount()];
+        for (int e = 0; e < applied.length; e++) {
+            applied[e] = costs.weight(e);
+        }
+        changedLinks = new int[applied.length];
+        changedCosts = new int[applied.length];
+        stale = false;
+        modified = false;
+        return front;
+    }
+
+    // The configured topology or weights changed; routes are rebuilt when the next simulator attaches
+    void topologyChanged() {
+        stale = true;
+    }
+
+    // Called by a simulator being created, or restored from a checkpoint at virtual time now:
+    // starts from the configured weights again and takes the first sample one interval later
+    void attach(OutputPorts ports, long now) {
+        awaitPending();
+        if (stale || modified) {
+            ForwardingTable[] tables = build();
+            for (int i = 0; i < tables.length; i++) {
+                graph.getRouterByIndex(i).setForwardingTable(tables[i]);
+            }
+        }
+        this.ports = ports;
+        int count = ports.size();
+        occupancy = new double[count];
+        dropRate = new double[count];
+        lastEnqueued = new long[count];
+        lastDrops = new long[count];
+        for (int port = 0; port < count; port++) {
+            lastEnqueued[port] = ports.enqueued(port);
+            lastDrops[port] = ports.drops(port);
+        }
+        nextUpdate = now + intervalTicks;
+    }
+
+    // Virtual time of the next update; the simulator processes every event before it first
+    public long nextUpdateTime() {
+        return nextUpdate;
+    }
+
+    // Runs at nextUpdateTime() while no event is being processed: installs the routes computed
+    // since the last update, then samples the ports and starts computing the next ones
+    public void update() {
+        updates++;
+        awaitPending();
+        swapChangedTables();
+        sample();
+        if (changedCount > 0) {
+            modified = true;
+            int count = changedCount;
+            int[] links = changedLinks.clone();
+            int[] linkCosts = changedCosts.clone();
+            if (worker == null) {
+                worker = Executors.newSingleThreadExecutor(task -> {
+                    Thread thread = new Thread(task, "adaptive-routing");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            pending = worker.submit(() -> recompute(links, linkCosts, count));
+        }
+        nextUpdate += intervalTicks;
+    }
+
+    private void sample() {
+        CompactGraph compact = ports.getGraph();
+        changedCount = 0;
+        for (int port = 0; port < occupancy.length; port++) {
+            int weight = compact.weight(port);
+            long enqueued = ports.enqueued(port) - lastEnqueued[port];
+            long dropped = ports.drops(port) - lastDrops[port];
+            lastEnqueued[port] = ports.enqueued(port);
+            lastDrops[port] = ports.drops(port);
+            double lossSample = enqueued + dropped > 0 ? (double) dropped / (enqueued + dropped) : 0.0;
+            double capacity = graph.getRouterByIndex(ports.owner(port)).getQueueCapacity();
+            occupancy[port] += SMOOTHING * (ports.length(port) / capacity - occupancy[port]);
+            dropRate[port] += SMOOTHING * (lossSample - dropRate[port]);
+            if (weight == CompactGraph.NO_LINK) {
+                continue;
+            }
+            double unit = (double) Math.max(1, weight) * COST_UNIT;
+            long cost = (long) weight * COST_UNIT
+                    + Math.round(unit * sensitivity * (occupancy[port] + dropRate[port]));
+            if (Math.abs(cost - applied[port]) >= Math.max(1, HYSTERESIS * unit)) {
+                int clamped = (int) Math.min(cost, CompactGraph.NO_LINK - 1);
+                applied[port] = clamped;
+                changedLinks[changedCount] = port;
+                changedCosts[changedCount] = clamped;
+                changedCount++;
+            }
+        }
+        linkChanges += changedCount;
+    }
+
+    // Background thread: applies the new costs one link at a time, repairing only affected trees
+    private void recompute(int[] links, int[] linkCosts, int count) {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int e = links[i];
+            int source = ports.owner(e);
+            int target = costs.target(e);
+            int old = engine.linkWeight(source, target);
+            costs.setWeight(e, linkCosts[i]);
+            engine.linkChanged(source, target, old);
+        }
+        computeNanos += System.nanoTime() - start;
+    }
+
+    private void awaitPending() {
+        if (pending == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for adaptive routing", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Adaptive route computation failed", e.getCause());
+        } finally {
+            pending = null;
+            waitNanos += System.nanoTime() - start;
+        }
+    }
+
+    // Waits for the computation in progress and stops the background thread; the routes it
+    // computed are still installed at the next update, which starts a new thread if it needs one
+    void close() {
+        awaitPending();
+        if (worker != null) {
+            worker.shutdown();
+            worker = null;
+        }
+    }
+
+    // Hands each changed table to its router and reuses the one it replaces as the back buffer
+    private void swapChangedTables() {
+        for (int i = 0; i < engine.getChangedTableCount(); i++) {
+            int source = engine.changedTable(i);
+            ForwardingTable fresh = back[source];
+            graph.getRouterByIndex(source).setForwardingTable(fresh);
+            back[source] = front[source];
+            back[source].copyFrom(fresh);
+            front[source] = fresh;
+        }
+        tablesSwapped += engine.getChangedTableCount();
+        engine.clearChangedTables();
+    }
+
+    public long getUpdates() {
+        return updates;
+    }
+
+    public long getLinkChanges() {
+        return linkChanges;
+    }
+
+    public long getTablesSwapped() {
+        return tablesSwapped;
+    }
+
+    // Current cost of a link in COST_UNITs of weight, as routes will next be computed
+    public int linkCost(int edge) {
+        return applied[edge];
+    }
+
+    public String describe() {
+        return "Adaptive routing: " + updates + " updates every " + intervalMillis + " ms, " + linkChanges
+                + " link cost changes, " + tablesSwapped + " tables swapped, "
+                + String.format("%.1f", computeNanos / 1e6) + " ms computing in the background ("
+                + String.format("%.1f", waitNanos / 1e6) + " ms waited for)";
+    }
+}
@@ -0,0 +1,387 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// BatchSimulation class: headless run from a topology file plus a traffic file or generators
+// Usage: java BatchSimulation --topology <file> | --generate-topology <spec> | --restore <checkpoint>
+// [--traffic <file>] [--generator <model>] [options]; see usage() for the options. Tracing,
+// sharding, routing threads and live metrics follow the same -Dtrace.*, -Dsim.shards,
+// -Drouting.threads and -Dmetrics.* properties as the interactive program, and the statistics
+// end up in a JSON or CSV file.
+public class BatchSimulation {
+    public static void main(String[] args) throws IOException {
+        Path topologyFile = null;
+        TopologyGenerator topologyGenerator = null;
+        WeightDistribution linkWeights = WeightDistribution.constant(1);
+        Path trafficFile = null;
+        Path statisticsFile = Paths.get("statistics.json");
+        Path binaryTopologyFile = null;
+        Path checkpointFile = null;
+        double checkpointAtMillis = Double.POSITIVE_INFINITY;
+        Path restoreFile = null;
+        String metricsProperty = System.getProperty("metrics.file");
+        Path metricsFile = metricsProperty != null ? Paths.get(metricsProperty) : null;
+        long metricsInterval = Long.getLong("metrics.interval", 1000);
+        String routing = "dijkstra";
+        int shards = Integer.getInteger("sim.shards", 1);
+        int parallelism = NetworkSimulation.defaultRoutingParallelism();
+        int bucketCapacity = 100;
+        int tokenRate = 1000;
+        long linkBandwidth = Edge.DEFAULT_BANDWIDTH;
+        int linkDelayMicros = Edge.DEFAULT_DELAY_MICROS;
+        String generatorModel = null;
+        double packetsPerSecond = 100;
+        double durationMillis = 1000;
+        int packetSize = 64;
+        long seed = 1;
+        double onMillis = 10;
+        double offMillis = 90;
+        double paretoShape = 1.5;
+        int paths = 4;
+        int landmarks = OnDemandRouting.DEFAULT_LANDMARKS;
+        int routeCacheEntries = OnDemandRouting.DEFAULT_CACHE_ENTRIES;
+        double adaptInterval = AdaptiveRouting.DEFAULT_INTERVAL_MILLIS;
+        double adaptSensitivity = AdaptiveRouting.DEFAULT_SENSITIVITY;
+        int flows = TrafficGenerator.DEFAULT_FLOWS;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+                String value = args[++i];
+                switch (option) {
+                    case "--topology":
+                        topologyFile = Paths.get(value);
+                        break;
+                    case "--generate-topology":
+                        topologyGenerator = TopologyGenerator.parse(value);
+                        break;
+                    case "--weights":
+                        linkWeights = WeightDistribution.parse(value);
+                        break;
+                    case "--traffic":
+                        trafficFile = Paths.get(value);
+                        break;
+                    case "--statistics":
+                        statisticsFile = Paths.get(value);
+                        break;
+                    case "--save-topology":
+                        binaryTopologyFile = Paths.get(value);
+                        break;
+                    case "--checkpoint":
+                        checkpointFile = Paths.get(value);
+                        break;
+                    case "--checkpoint-at":
+                        checkpointAtMillis = Double.parseDouble(value);
+                        break;
+                    case "--restore":
+                        restoreFile = Paths.get(value);
+                        break;
+                    case "--metrics":
+                        metricsFile = Paths.get(value);
+                        break;
+                    case "--metrics-interval":
+                        metricsInterval = Long.parseLong(value);
+                        break;
+                    case "--routing":
+                        routing = value;
+                        break;
+                    case "--paths":
+                        paths = Integer.parseInt(value);
+                        break;
+                    case "--landmarks":
+                        landmarks = Integer.parseInt(value);
+                        break;
+                    case "--route-cache":
+                        routeCacheEntries = Integer.parseInt(value);
+                        break;
+                    case "--adapt-interval":
+                        adaptInterval = Double.parseDouble(value);
+                        break;
+                    case "--adapt-sensitivity":
+                        adaptSensitivity = Double.parseDouble(value);
+                        break;
+                    case "--flows":
+                        flows = Integer.parseInt(value);
+                        break;
+                    case "--shards":
+                        shards = Integer.parseInt(value);
+                        break;
+                    case "--routing-threads":
+                        parallelism = Integer.parseInt(value);
+                        break;
+                    case "--bucket-capacity":
+                        bucketCapacity = Integer.parseInt(value);
+                        break;
+                    case "--token-rate":
+                        tokenRate = Integer.parseInt(value);
+                        break;
+                    case "--link-bandwidth":
+                        linkBandwidth = Math.round(Double.parseDouble(value) * 1e6);
+                        break;
+                    case "--link-delay":
+                        linkDelayMicros = (int) Math.round(Double.parseDouble(value) * 1000);
+                        break;
+                    case "--generator":
+                        generatorModel = value;
+                        break;
+                    case "--rate":
+                        packetsPerSecond = Double.parseDouble(value);
+                        break;
+                    case "--duration":
+                        durationMillis = Double.parseDouble(value);
+                        break;
+                    case "--packet-size":
+                        packetSize = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--on-time":
+                        onMillis = Double.parseDouble(value);
+                        break;
+                    case "--off-time":
+                        offMillis = Double.parseDouble(value);
+                        break;
+                    case "--pareto-shape":
+                        paretoShape = Double.parseDouble(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+            int sources = (topologyFile != null ? 1 : 0) + (topologyGenerator != null ? 1 : 0)
+                    + (restoreFile != null ? 1 : 0);
+            if (sources != 1) {
+                throw new IllegalArgumentException(
+                        "Exactly one of --topology, --generate-topology and --restore is required");
+            }
+            if (checkpointFile != null && routing.equals("adaptive")) {
+                throw new IllegalArgumentException("Runs with adaptive routing cannot be checkpointed");
+            }
+            Edge.checkLinkProperties(linkBandwidth, linkDelayMicros);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+            return;
+        }
+
+        TraceLog trace = TraceLog.fromSystemProperties();
+        long start = System.currentTimeMillis();
+        // A restored run brings its own topology, traffic generators and shard count
+        Checkpoint checkpoint = restoreFile != null ? Checkpoint.open(restoreFile) : null;
+        Graph graph = checkpoint != null ? checkpoint.getGraph() : new Graph();
+        graph.setTraceLog(trace);
+        graph.setDefaultLinkProperties(linkBandwidth, linkDelayMicros);
+        if (checkpoint == null) {
+            graph.setRandomSeed(seed);
+        }
+        if (topologyFile != null) {
+            NetworkFiles.loadTopology(topologyFile, graph, bucketCapacity, tokenRate);
+        } else if (topologyGenerator != null) {
+            graph.loadCompactTopology(topologyGenerator.generate(seed, linkWeights, parallelism), bucketCapacity,
+                    tokenRate);
+            System.out.println(topologyGenerator.describe() + ", weights " + linkWeights.describe());
+        }
+        CompactGraph compact = graph.getCompactGraph();
+        System.out.println((topologyFile != null ? "Loaded " : topologyGenerator != null ? "Generated " : "Restored ")
+                + compact.size() + " routers and " + compact.edgeCount() + " links in "
+                + (System.currentTimeMillis() - start) + " ms");
+        if (binaryTopologyFile != null) {
+            NetworkFiles.writeBinaryTopology(graph, binaryTopologyFile);
+        }
+
+        switch (routing) {
+            case "dijkstra":
+                graph.calculateShortestPaths(parallelism);
+                break;
+            case "ecmp":
+                graph.calculateMultipathRoutes(parallelism);
+                break;
+            case "k-shortest":
+                System.out.println(graph.calculateKShortestPaths(paths, parallelism).describe());
+                break;
+            case "on-demand":
+                graph.enableOnDemandRouting(landmarks, routeCacheEntries);
+                break;
+            case "adaptive":
+                graph.enableAdaptiveRouting(adaptInterval, adaptSensitivity);
+                break;
+            case "bellman-ford":
+                graph.calculateShortestPathsBellmanFord();
+                break;
+            case "distance-vector":
+                System.out.println(graph.calculateDistanceVectors().describe());
+                break;
+            default:
+                System.err.println("Unknown routing algorithm " + routing);
+                usage();
+                System.exit(2);
+                return;
+        }
+        System.out.println(compact.describe());
+        if (graph.getOnDemandRouting() == null) {
+            System.out.println(ForwardingTable.describe(graph.getForwardingTables()));
+        }
+
+        Simulator simulator;
+        if (checkpoint != null) {
+            long restoreStart = System.nanoTime();
+            try {
+                simulator = checkpoint.restore();
+            } finally {
+                checkpoint.close();
+            }
+            System.out.println("Restored the run at "
+                    + String.format("%.3f", (double) simulator.getVirtualTime() / EventSimulator.TICKS_PER_MILLISECOND)
+                    + " ms of virtual time, " + simulator.getPacketTable().live() + " packets in flight, in "
+                    + (System.nanoTime() - restoreStart) / 1_000_000 + " ms");
+        } else {
+            simulator = NetworkSimulation.createSimulator(graph, shards);
+        }
+        if (trafficFile != null) {
+            long loaded = NetworkFiles.loadTraffic(trafficFile, graph, simulator::inject);
+            System.out.println("Loaded " + loaded + " packets");
+        }
+        if (generatorModel != null) {
+            // On top of a restored run, extra traffic starts where the run left off
+            long startTime = checkpoint != null ? simulator.getVirtualTime() : 0;
+            long endTime = startTime + (long) (durationMillis * EventSimulator.TICKS_PER_MILLISECOND);
+            TrafficGenerator[] generators;
+            try {
+                generators = createGenerators(generatorModel, compact, packetsPerSecond, packetSize, startTime,
+                        endTime, seed, onMillis, offMillis, paretoShape);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                usage();
+                System.exit(2);
+                return;
+            }
+            for (TrafficGenerator generator : generators) {
+                if (generator != null) {
+                    generator.setFlows(flows);
+                    simulator.addGenerator(generator);
+                }
+            }
+        }
+        SimulationMetrics metrics = SimulationMetrics.start(graph, simulator, Boolean.getBoolean("metrics.jmx"),
+                metricsFile, metricsInterval);
+        try {
+            if (checkpointFile != null) {
+                simulator.runUntil(checkpointAtMillis == Double.POSITIVE_INFINITY ? Long.MAX_VALUE
+                        : (long) (checkpointAtMillis * EventSimulator.TICKS_PER_MILLISECOND));
+                long writeStart = System.nanoTime();
+                long bytes = Checkpoint.write(checkpointFile, graph, simulator);
+                System.out.println("Checkpoint of " + bytes + " bytes written to " + checkpointFile + " at "
+                        + String.format("%.3f",
+                                (double) simulator.getVirtualTime() / EventSimulator.TICKS_PER_MILLISECOND)
+                        + " ms of virtual time in " + (System.nanoTime() - writeStart) / 1_000_000 + " ms");
+            }
+            simulator.run();
+        } finally {
+            metrics.close();
+        }
+        System.out.println(simulator.describe());
+        if (graph.getOnDemandRouting() != null) {
+            System.out.println(graph.getOnDemandRouting().describe());
+        }
+        if (graph.getAdaptiveRouting() != null) {
+            System.out.println(graph.getAdaptiveRouting().describe());
+        }
+        trace.summary(simulator.describe());
+
+        StatisticsWriter.write(statisticsFile, graph, simulator, System.currentTimeMillis() - start,
+                NetworkSimulation.getTotalMemoryUsage());
+        System.out.println("Statistics written to " + statisticsFile);
+        trace.close();
+    }
+
+    // One generator per router of the given model, each source on its own stream split off the
+    // seed; routers without traffic get null
+    static TrafficGenerator[] createGenerators(String model, CompactGraph compact, double packetsPerSecond,
+            int packetSize, long startTime, long endTime, long seed, double onMillis, double offMillis,
+            double paretoShape) {
+        SplitMix64 rng = new SplitMix64(seed);
+        int n = compact.size();
+        if (model.equals("gravity")) {
+            // Routers with more links attract and send proportionally more traffic
+            double[] weights = new double[n];
+            for (int i = 0; i < n; i++) {
+                weights[i] = compact.endEdge(i) - compact.firstEdge(i);
+            }
+            return GravityModel.create(weights, packetsPerSecond * n, packetSize, startTime, endTime, rng);
+        }
+        TrafficGenerator[] generators = new TrafficGenerator[n];
+        DestinationPicker destinations = new UniformDestinations(n);
+        for (int i = 0; i < n; i++) {
+            SplitMix64 sourceRng = rng.split();
+            switch (model) {
+                case "poisson":
+                    generators[i] = new PoissonTraffic(i, destinations, packetSize, startTime, endTime, sourceRng,
+                            packetsPerSecond);
+                    break;
+                case "onoff":
+                    generators[i] = new OnOffTraffic(i, destinations, packetSize, startTime, endTime, sourceRng,
+                            packetsPerSecond, onMillis, offMillis);
+                    break;
+                case "pareto":
+                    generators[i] = new ParetoTraffic(i, destinations, packetSize, startTime, endTime, sourceRng,
+                            packetsPerSecond, paretoShape);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown traffic generator " + model);
+            }
+        }
+        return generators;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java BatchSimulation --topology <file> | --generate-topology <spec>");
+        System.out.println("            | --restore <file> [--traffic <file>] [options]");
+        System.out.println("  --generate-topology <spec> erdos-renyi:<n>:<avgDegree>, barabasi-albert:<n>:<m>,");
+        System.out.println("                            waxman:<n>:<alpha>:<beta>, fat-tree:<k> or");
+        System.out.println("                            torus:<k>:<dimensions>");
+        System.out.println("  --weights <distribution>  generated link weights: constant:<w>, uniform:<lo>:<hi> or");
+        System.out.println("                            exponential:<mean> (default constant:1)");
+        System.out.println("  --statistics <file>       .json or .csv output (default statistics.json)");
+        System.out.println("  --routing <algorithm>     dijkstra, ecmp, k-shortest, on-demand, adaptive, bellman-ford");
+        System.out.println("                            or distance-vector (default dijkstra)");
+        System.out.println("  --paths <k>               paths per router pair for k-shortest (default 4)");
+        System.out.println("  --landmarks <n>           A* landmarks for on-demand routing (default 8)");
+        System.out.println("  --route-cache <entries>   next hops on-demand routing keeps cached (default 1048576)");
+        System.out.println("  --adapt-interval <ms>     virtual time between adaptive route updates (default 100)");
+        System.out.println("  --adapt-sensitivity <x>   adaptive cost of a full queue or 100% loss, in link weights");
+        System.out.println("                            (default 4)");
+        System.out.println("  --shards <n>              simulation worker threads (default 1)");
+        System.out.println("  --routing-threads <n>     threads for routing and topology generation");
+        System.out.println("                            (default: -Drouting.threads, else all cores)");
+        System.out.println("  --bucket-capacity <n>     for generated routers and those declared only by their links");
+        System.out.println("                            (default 100)");
+        System.out.println("  --token-rate <n>          tokens per second for those routers (default 1000)");
+        System.out.println("  --link-bandwidth <Mbit/s> for links without their own bandwidth");
+        System.out.println("                            (default 0.004, 2 ms per byte)");
+        System.out.println("  --link-delay <ms>         propagation delay of those links (default 10)");
+        System.out.println("  --save-topology <file>    also write the topology in the binary format");
+        System.out.println("  --checkpoint <file>       save the whole simulation state, then carry on");
+        System.out.println("  --checkpoint-at <ms>      virtual time at which to save it");
+        System.out.println("                            (default: the end of the run)");
+        System.out.println("  --restore <file>          continue from a checkpoint instead of a topology;");
+        System.out.println("                            give --routing again, and any --traffic or --generator");
+        System.out.println("                            traffic is added on top");
+        System.out.println("  --metrics <file>          snapshot live metrics while running:");
+        System.out.println("                            .json for JSON lines, else CSV");
+        System.out.println("  --metrics-interval <ms>   time between metrics snapshots (default 1000)");
+        System.out.println("  --generator <model>       poisson, onoff, pareto or gravity traffic from every router");
+        System.out.println("  --rate <packets/s>        rate per source: the mean, the peak for onoff, the average");
+        System.out.println("                            per router for gravity (default 100)");
+        System.out.println("  --duration <ms>           generate traffic for this much virtual time (default 1000)");
+        System.out.println("  --flows <n>               flows each generator spreads its packets over (default 16)");
+        System.out.println("  --packet-size <bytes>     size of generated packets (default 64)");
+        System.out.println("  --seed <n>                random seed for generated topology, traffic and RED drops");
+        System.out.println("                            (default 1)");
+        System.out.println("  --on-time, --off-time <ms> mean on and off periods for onoff (default 10 and 90)");
+        System.out.println("  --pareto-shape <shape>    tail shape for pareto, above 1 (default 1.5)");
+    }
+}
@@ -0,0 +1,141 @@
+import java.util.Arrays;
+
+// BellmanFord class: queue-based Bellman-Ford (SPFA) single-source shortest paths over a CompactGraph
+// Unlike Dijkstra it accepts negative weights, and it reports negative cycles reachable from the source.
+class BellmanFord {
+    private int[] distances;
+    private int[] parents;
+    private int[] relaxCounts;
+    private int[] queue;
+    private boolean[] queued;
+    private boolean negativeCycle;
+    // Router relaxed for the n-th time when the negative cycle was found
+    private int cycleRouter;
+    private int size;
+
+    public BellmanFord(int size) {
+        this.distances = new int[size];
+        this.parents = new int[size];
+        this.relaxCounts = new int[size];
+        this.queue = new int[size];
+        this.queued = new boolean[size];
+    }
+
+    //implementation of bellman-ford algo
+    public int[] run(CompactGraph graph, int source) {
+        int n = graph.size();
+        if (distances.length < n) {
+            distances = new int[n];
+            parents = new int[n];
+            relaxCounts = new int[n];
+            queue = new int[n];
+            queued = new boolean[n];
+        }
+        Arrays.fill(distances, 0, n, Dijkstra.UNREACHABLE);
+        Arrays.fill(parents, 0, n, -1);
+        Arrays.fill(relaxCounts, 0, n, 0);
+        Arrays.fill(queued, 0, n, false);
+        negativeCycle = false;
+        size = n;
+        distances[source] = 0;
+
+        // Circular FIFO; each router is queued at most once at a time, so n slots suffice
+        int head = 0;
+        int count = 1;
+        queue[0] = source;
+        queued[source] = true;
+        while (count > 0) {
+            int current = queue[head];
+            head = head + 1 == n ? 0 : head + 1;
+            count--;
+            queued[current] = false;
+            int currentDistance = distances[current];
+            for (int e = graph.firstEdge(current), end = graph.endEdge(current); e < end; e++) {
+                int weight = graph.weight(e);
+                if (weight == CompactGraph.NO_LINK) {
+                    continue;
+                }
+                int neighbor = graph.target(e);
+                int newDistance = currentDistance + weight;
+                if (newDistance < distances[neighbor]) {
+                    distances[neighbor] = newDistance;
+                    parents[neighbor] = current;
+                    // A shortest path has at most n - 1 edges, so n improvements imply a negative cycle
+                    if (++relaxCounts[neighbor] >= n) {
+                        negativeCycle = true;
+                        cycleRouter = neighbor;
+                        return distances;
+                    }
+                    if (!queued[neighbor]) {
+                        queued[neighbor] = true;
+                        int tail = head + count;
+                        queue[tail >= n ? tail - n : tail] = neighbor;
+                        count++;
+                    }
+                }
+            }
+        }
+        return distances;
+    }
+
+    public boolean hasNegativeCycle() {
+        return negativeCycle;
+    }
+
+    // Router indices around the negative cycle the last run found, in link order, or an empty array
+    // The predecessors of a router relaxed n times lead into a cycle of the predecessor graph, and
+    // every such cycle has negative weight.
+    public int[] negativeCycle() {
+        if (!negativeCycle) {
+            return new int[0];
+        }
+        int start = cycleRouter;
+        for (int i = 0; i < size && parents[start] >= 0; i++) {
+            start = parents[start];
+        }
+        int[] cycle = new int[size];
+        int length = 0;
+        int router = start;
+        do {
+            cycle[length++] = router;
+            router = parents[router];
+        } while (router >= 0 && router != start && length < size);
+        if (router != start) {
+            return new int[0];
+        }
+        int[] ordered = new int[length];
+        for (int i = 0; i < length; i++) {
+            ordered[i] = cycle[length - 1 - i];
+        }
+        return ordered;
+    }
+
+    // Fills next hops of the last run by walking each predecessor chain up to a resolved router
+    public void fillForwardingTable(int source, ForwardingTable table) {
+        int n = table.size();
+        for (int d = 0; d < n; d++) {
+            table.setNextHop(d, ForwardingTable.NO_ROUTE);
+        }
+        // queue doubles as the walk stack and queued as the resolved marker
+        for (int d = 0; d < n; d++) {
+            if (d == source || parents[d] < 0 || queued[d]) {
+                continue;
+            }
+            int top = 0;
+            int router = d;
+            while (!queued[router] && parents[router] != source) {
+                queue[top++] = router;
+                router = parents[router];
+            }
+            int hop = queued[router] ? table.nextHop(router) : router;
+            table.setNextHop(router, hop);
+            queued[router] = true;
+            while (top > 0) {
+                int child = queue[--top];
+                table.setNextHop(child, hop);
+                queued[child] = true;
+            }
+        }
+        Arrays.fill(queued, 0, n, false);
+    }
+}
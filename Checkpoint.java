@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// Checkpoint class: the complete state of a simulation in one binary file ("NSCP")
+// A checkpoint is taken between runs, e.g. after Simulator.runUntil, and holds the routers and
+// links (failed ones included, so output ports keep their numbers), every router's counters,
+// token bucket, RED or CoDel state and histograms, the output queues, the packet table, each
+// shard's pending events and traffic generators, and the state of every random number generator.
+// Restoring and running on gives the same results as the run the checkpoint was taken from.
+// Routes are not saved: the restoring program computes them on the restored topology, with the
+// same algorithm or, to fork a what-if experiment, another one. Adaptive routing keeps
+// congestion estimates a checkpoint does not cover, so runs using it cannot be checkpointed.
+class Checkpoint implements AutoCloseable {
+    private static final int MAGIC = 0x4E534350; // "NSCP"
+    private static final int VERSION = 4;
+
+    private final MappedInput in;
+    private final Graph graph;
+    private final int shardCount;
+
+    private Checkpoint(MappedInput in, Graph graph, int shardCount) {
+        this.in = in;
+        this.graph = graph;
+        this.shardCount = shardCount;
+    }
+
+    // Writes the graph and its simulator, which must not be running, and returns the file size.
+    // The file is written next to path and moved over it when complete, so a crash while writing
+    // leaves the previous checkpoint intact.
+    public static long write(Path path, Graph graph, Simulator simulator) throws IOException {
+        if (graph.getAdaptiveRouting() != null) {
+            throw new IllegalStateException("Checkpoints do not cover the congestion state of adaptive routing");
+        }
+        CompactGraph compact = graph.getCompactGraph();
+        int n = compact.size();
+        Path partial = path.resolveSibling(path.getFileName() + ".partial");
+        long bytes;
+        try (CheckpointOutput out = new CheckpointOutput(partial)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(simulator instanceof ShardedSimulator ? ((ShardedSimulator) simulator).getShardCount() : 1);
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                NetworkFiles.writeRouter(out.reserve(NetworkFiles.ROUTER_RECORD_BYTES), graph.getRouterByIndex(i));
+            }
+            compact.write(out);
+            for (int i = 0; i < n; i++) {
+                graph.getRouterByIndex(i).writeState(out);
+            }
+            graph.getOutputPorts().writeState(out);
+            simulator.getPacketTable().writeState(out);
+            simulator.writeState(out);
+            bytes = out.bytesWritten();
+        }
+        Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return bytes;
+    }
+
+    // Maps a checkpoint and rebuilds its topology into a new graph; compute routes on getGraph(),
+    // then call restore()
+    public static Checkpoint open(Path path) throws IOException {
+        MappedInput in = new MappedInput(path);
+        try {
+            if (!in.startsWith(MAGIC)) {
+                throw in.error("Not a checkpoint");
+            }
+            in.readInt();
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw in.error("Unsupported checkpoint version " + version);
+            }
+            int shardCount = in.readInt();
+            Graph graph = new Graph();
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                NetworkFiles.readRouter(in, graph);
+            }
+            graph.adoptCompactLinks(CompactGraph.read(in));
+            return new Checkpoint(in, graph, shardCount);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    public Graph getGraph() {
+        return graph;
+    }
+
+    // Shards of the run the checkpoint was taken from; the restored simulator has as many
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    // Creates a simulator for the restored graph and loads the state of the run into it
+    public Simulator restore() throws IOException {
+        Simulator simulator = NetworkSimulation.createSimulator(graph, shardCount);
+        int n = graph.getCompactGraph().size();
+        for (int i = 0; i < n; i++) {
+            graph.getRouterByIndex(i).readState(in);
+        }
+        graph.getOutputPorts().readState(in);
+        simulator.getPacketTable().readState(in);
+        simulator.readState(in);
+        if (!in.atEnd()) {
+            throw in.error("Unexpected data after the checkpoint");
+        }
+        return simulator;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
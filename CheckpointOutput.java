@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// CheckpointOutput class: big-endian binary writer for checkpoints, read back with MappedInput
+// Values go into one direct buffer that is written out whenever it fills, and arrays are copied
+// in through the buffer's int and long views, so a checkpoint is a single sequential pass of
+// large writes. The data is forced to disk on close.
+class CheckpointOutput implements AutoCloseable {
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long flushed;
+
+    CheckpointOutput(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // The buffer, with room for at least the given number of bytes, for records put directly
+    ByteBuffer reserve(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+        return buffer;
+    }
+
+    public void writeByte(byte value) throws IOException {
+        reserve(1).put(value);
+    }
+
+    public void writeInt(int value) throws IOException {
+        reserve(4).putInt(value);
+    }
+
+    public void writeLong(long value) throws IOException {
+        reserve(8).putLong(value);
+    }
+
+    public void writeDouble(double value) throws IOException {
+        reserve(8).putDouble(value);
+    }
+
+    public void writeInts(int[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, reserve(4).remaining() / 4);
+            buffer.asIntBuffer().put(values, offset, count);
+            buffer.position(buffer.position() + 4 * count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    public void writeLongs(long[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, reserve(8).remaining() / 8);
+            buffer.asLongBuffer().put(values, offset, count);
+            buffer.position(buffer.position() + 8 * count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    // One byte per value
+    public void writeBooleans(boolean[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, reserve(1).remaining());
+            for (int i = 0; i < count; i++) {
+                buffer.put((byte) (values[offset + i] ? 1 : 0));
+            }
+            offset += count;
+            length -= count;
+        }
+    }
+
+    public long bytesWritten() {
+        return flushed + buffer.position();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            flushed += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+// CodelRouter class: Controlled Delay queue management (Nichols and Jacobson, RFC 8289)
+// Decides at the head of each output queue from how long the head packet has waited, not from
+// the queue length. Once the sojourn time has stayed above target for a whole interval the port
+// starts dropping: one head packet at once, then one every interval / sqrt(count) until a packet
+// gets through in less than target. A new dropping state that begins soon after the last one
+// resumes its drop rate instead of starting over. Every port keeps its own state, in the
+// OutputPorts arrays next to its queue, so a backed-up link does not drop from the idle ones.
+// Sojourn times need the arrival timestamps kept by the event simulator, which asks dropAtHead
+// before each transmission.
+class CodelRouter extends Router {
+    static final double DEFAULT_TARGET_MILLIS = 5;
+    static final double DEFAULT_INTERVAL_MILLIS = 100;
+
+    private final double targetMillis;
+    private final double intervalMillis;
+    // In simulator ticks
+    private final long target;
+    private final long interval;
+
+    public CodelRouter(int id, int bucketCapacity, int tokenRate, double targetMillis, double intervalMillis) {
+        super(id, bucketCapacity, tokenRate);
+        if (targetMillis <= 0 || intervalMillis <= 0) {
+            throw new IllegalArgumentException("CoDel target and interval must be positive, got " + targetMillis
+                    + " and " + intervalMillis);
+        }
+        this.targetMillis = targetMillis;
+        this.intervalMillis = intervalMillis;
+        this.target = Math.round(targetMillis * EventSimulator.TICKS_PER_MILLISECOND);
+        this.interval = Math.round(intervalMillis * EventSimulator.TICKS_PER_MILLISECOND);
+    }
+
+    @Override
+    void setOutputPorts(OutputPorts ports) {
+        super.setOutputPorts(ports);
+        ports.enableCodel();
+    }
+
+    @Override
+    public boolean dropAtHead(PacketTable packets, int packet, int port, long now) {
+        OutputPorts ports = getOutputPorts();
+        OutputPorts.CodelState state = ports.getCodelState();
+        boolean okToDrop = sojournAboveTarget(ports, state, packets, packet, port, now);
+        if (state.dropping[port]) {
+            if (!okToDrop) {
+                state.dropping[port] = false;
+                return false;
+            }
+            if (now < state.dropNext[port]) {
+                return false;
+            }
+            state.count[port]++;
+            state.dropNext[port] = controlLaw(state.dropNext[port], state.count[port]);
+        } else {
+            if (!okToDrop) {
+                return false;
+            }
+            state.dropping[port] = true;
+            int delta = state.count[port] - state.lastCount[port];
+            int count = delta > 1 && now - state.dropNext[port] < 16 * interval ? delta : 1;
+            state.count[port] = count;
+            state.dropNext[port] = controlLaw(now, count);
+            state.lastCount[port] = count;
+        }
+        if (trace.drops()) {
+            trace.record(TraceLog.DROP_CODEL, getId(), packets, packet, -1);
+        }
+        recordEarlyDrop();
+        return true;
+    }
+
+    // Never while the packet is the only one left on its port, so a lone packet is not dropped
+    // for waiting
+    private boolean sojournAboveTarget(OutputPorts ports, OutputPorts.CodelState state, PacketTable packets,
+            int packet, int port, long now) {
+        if (now - packets.arrivedAt(packet) < target || ports.length(port) <= 1) {
+            state.firstAboveTime[port] = 0;
+            return false;
+        }
+        if (state.firstAboveTime[port] == 0) {
+            state.firstAboveTime[port] = now + interval;
+            return false;
+        }
+        return now >= state.firstAboveTime[port];
+    }
+
+    private long controlLaw(long time, int count) {
+        return time + (long) (interval / Math.sqrt(count));
+    }
+
+    @Override
+    public int dequeuePacket(PacketTable packets, int port) {
+        int packet = super.dequeuePacket(packets, port);
+        OutputPorts ports = getOutputPorts();
+        if (ports.length(port) == 0) {
+            OutputPorts.CodelState state = ports.getCodelState();
+            state.firstAboveTime[port] = 0;
+            state.dropping[port] = false;
+        }
+        return packet;
+    }
+
+    public double getTargetMillis() {
+        return targetMillis;
+    }
+
+    public double getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public boolean isDropping(int port) {
+        return getOutputPorts().getCodelState().dropping[port];
+    }
+}
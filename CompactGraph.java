@@ -0,0 +1,295 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+// CompactGraph class: frozen compressed-sparse-row (CSR) view of a Graph
+// Routers are addressed by dense indices 0..size()-1, and the outgoing edges of
+// router u live in targets/weights[offsets[u] .. offsets[u + 1]).
+// The topology is frozen but link weights may change; a failed link keeps its slot with weight NO_LINK.
+// Link bandwidths and propagation delays sit in arrays of their own, which stay null while every
+// link has the same values, e.g. in a generated topology.
+class CompactGraph {
+    static final int NO_LINK = Integer.MAX_VALUE;
+
+    private static final int ARRAY_HEADER_BYTES = 16;
+    // Approximate footprint of one Edge object (header + 3 fields) plus its ArrayList slot
+    private static final int OBJECT_BYTES_PER_EDGE = 24 + 4;
+
+    private final int[] routerIds;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+    private long[] bandwidths;
+    private int[] delays;
+    private long defaultBandwidth = Edge.DEFAULT_BANDWIDTH;
+    private int defaultDelay = Edge.DEFAULT_DELAY_MICROS;
+    private int maxWeight;
+    private int minWeight;
+    // Reverse CSR, built by buildReverseEdges(): in-edges of v are inEdges[inOffsets[v] .. inOffsets[v + 1])
+    private int[] inOffsets;
+    private int[] inEdges;
+    private int[] inSources;
+
+    CompactGraph(int[] routerIds, int[] offsets, int[] targets, int[] weights) {
+        this.routerIds = routerIds;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        int max = 0;
+        int min = 0;
+        for (int weight : weights) {
+            if (weight != NO_LINK) {
+                max = Math.max(max, weight);
+                min = Math.min(min, weight);
+            }
+        }
+        this.maxWeight = max;
+        this.minWeight = min;
+    }
+
+    // Builds the CSR arrays from routers whose getIndex() matches their list position
+    public static CompactGraph build(List<Router> routersByIndex) {
+        int n = routersByIndex.size();
+        int[] routerIds = new int[n];
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            Router router = routersByIndex.get(i);
+            routerIds[i] = router.getId();
+            offsets[i + 1] = offsets[i] + router.getOutgoingEdges().size();
+        }
+        int[] targets = new int[offsets[n]];
+        int[] weights = new int[offsets[n]];
+        long[] bandwidths = new long[offsets[n]];
+        int[] delays = new int[offsets[n]];
+        boolean uniform = true;
+        for (int i = 0; i < n; i++) {
+            int e = offsets[i];
+            for (Edge edge : routersByIndex.get(i).getOutgoingEdges()) {
+                targets[e] = edge.getDestination().getIndex();
+                weights[e] = edge.getWeight();
+                bandwidths[e] = edge.getBandwidth();
+                delays[e] = edge.getDelayMicros();
+                uniform &= bandwidths[e] == bandwidths[0] && delays[e] == delays[0];
+                e++;
+            }
+        }
+        CompactGraph graph = new CompactGraph(routerIds, offsets, targets, weights);
+        if (uniform && targets.length > 0) {
+            graph.setLinkProperties(bandwidths[0], delays[0]);
+        } else if (!uniform) {
+            graph.bandwidths = bandwidths;
+            graph.delays = delays;
+        }
+        return graph;
+    }
+
+    public int size() {
+        return routerIds.length;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    public int routerId(int index) {
+        return routerIds[index];
+    }
+
+    public int firstEdge(int index) {
+        return offsets[index];
+    }
+
+    public int endEdge(int index) {
+        return offsets[index + 1];
+    }
+
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    public int weight(int edge) {
+        return weights[edge];
+    }
+
+    // Bits per second of the link
+    public long bandwidth(int edge) {
+        return bandwidths != null ? bandwidths[edge] : defaultBandwidth;
+    }
+
+    // Propagation delay of the link in microseconds
+    public int delayMicros(int edge) {
+        return delays != null ? delays[edge] : defaultDelay;
+    }
+
+    // Gives every link the same bandwidth and delay
+    public void setLinkProperties(long bandwidth, int delayMicros) {
+        Edge.checkLinkProperties(bandwidth, delayMicros);
+        bandwidths = null;
+        delays = null;
+        defaultBandwidth = bandwidth;
+        defaultDelay = delayMicros;
+    }
+
+    // Largest link weight ever seen; it only grows when weights change
+    public int maxWeight() {
+        return maxWeight;
+    }
+
+    public int minWeight() {
+        return minWeight;
+    }
+
+    // Same routers and links with weights of its own, each multiplied by scale, for routing on
+    // costs other than the configured weights; link bandwidths and delays are not carried over
+    public CompactGraph scaledCopy(int scale) {
+        int[] scaled = new int[weights.length];
+        for (int e = 0; e < weights.length; e++) {
+            if (weights[e] != NO_LINK && Math.abs((long) weights[e] * scale) >= NO_LINK) {
+                throw new IllegalArgumentException("Link weight " + weights[e] + " overflows when scaled by " + scale);
+            }
+            scaled[e] = weights[e] == NO_LINK ? NO_LINK : weights[e] * scale;
+        }
+        return new CompactGraph(routerIds, offsets, targets, scaled);
+    }
+
+    public void setWeight(int edge, int weight) {
+        weights[edge] = weight;
+        if (weight != NO_LINK) {
+            maxWeight = Math.max(maxWeight, weight);
+            minWeight = Math.min(minWeight, weight);
+        }
+    }
+
+    // Edge index of the first source -> destination link, or -1 if there is none
+    public int findEdge(int source, int destination) {
+        for (int e = offsets[source], end = offsets[source + 1]; e < end; e++) {
+            if (targets[e] == destination) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    public int firstInEdge(int index) {
+        return inOffsets[index];
+    }
+
+    public int endInEdge(int index) {
+        return inOffsets[index + 1];
+    }
+
+    // Forward edge index of the i-th reverse entry
+    public int inEdge(int i) {
+        return inEdges[i];
+    }
+
+    public int inSource(int i) {
+        return inSources[i];
+    }
+
+    // Must be called once before the in-edge accessors are used
+    public synchronized void buildReverseEdges() {
+        if (inOffsets != null) {
+            return;
+        }
+        int n = size();
+        int[] reverseOffsets = new int[n + 1];
+        for (int target : targets) {
+            reverseOffsets[target + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        int[] fill = Arrays.copyOf(reverseOffsets, n);
+        int[] edges = new int[targets.length];
+        int[] sources = new int[targets.length];
+        for (int u = 0; u < n; u++) {
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int slot = fill[targets[e]]++;
+                edges[slot] = e;
+                sources[slot] = u;
+            }
+        }
+        inEdges = edges;
+        inSources = sources;
+        inOffsets = reverseOffsets;
+    }
+
+    // The CSR arrays and link properties, failed links included, for a checkpoint
+    void write(CheckpointOutput out) throws IOException {
+        int n = size();
+        out.writeInt(n);
+        out.writeInt(targets.length);
+        out.writeInts(routerIds, 0, n);
+        out.writeInts(offsets, 0, n + 1);
+        out.writeInts(targets, 0, targets.length);
+        out.writeInts(weights, 0, weights.length);
+        out.writeByte((byte) (bandwidths != null ? 1 : 0));
+        if (bandwidths != null) {
+            out.writeLongs(bandwidths, 0, bandwidths.length);
+            out.writeInts(delays, 0, delays.length);
+        } else {
+            out.writeLong(defaultBandwidth);
+            out.writeInt(defaultDelay);
+        }
+    }
+
+    static CompactGraph read(MappedInput in) throws IOException {
+        int n = in.readInt();
+        int edges = in.readInt();
+        if (n < 0 || edges < 0) {
+            throw in.error("Invalid compact graph of " + n + " routers and " + edges + " links");
+        }
+        int[] routerIds = new int[n];
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[edges];
+        int[] weights = new int[edges];
+        in.readInts(routerIds, 0, n);
+        in.readInts(offsets, 0, n + 1);
+        in.readInts(targets, 0, edges);
+        in.readInts(weights, 0, edges);
+        if (offsets[0] != 0 || offsets[n] != edges) {
+            throw in.error("Link offsets do not cover " + edges + " links");
+        }
+        for (int i = 0; i < n; i++) {
+            if (offsets[i + 1] < offsets[i]) {
+                throw in.error("Link offsets of router index " + i + " are out of order");
+            }
+        }
+        for (int target : targets) {
+            if (target < 0 || target >= n) {
+                throw in.error("Link to unknown router index " + target);
+            }
+        }
+        CompactGraph graph = new CompactGraph(routerIds, offsets, targets, weights);
+        if (in.readByte() != 0) {
+            graph.bandwidths = new long[edges];
+            graph.delays = new int[edges];
+            in.readLongs(graph.bandwidths, 0, edges);
+            in.readInts(graph.delays, 0, edges);
+        } else {
+            graph.setLinkProperties(in.readLong(), in.readInt());
+        }
+        return graph;
+    }
+
+    // Exact size of the CSR arrays in bytes
+    public long memoryBytes() {
+        long bytes = 4L * (routerIds.length + offsets.length + targets.length + weights.length)
+                + 4L * ARRAY_HEADER_BYTES;
+        if (bandwidths != null) {
+            bytes += 12L * bandwidths.length + 2L * ARRAY_HEADER_BYTES;
+        }
+        return bytes;
+    }
+
+    public double bytesPerEdge() {
+        return targets.length > 0 ? (double) memoryBytes() / targets.length : 0.0;
+    }
+
+    public String describe() {
+        return "Compact graph: " + size() + " routers, " + edgeCount() + " edges, "
+                + String.format("%.1f", bytesPerEdge()) + " bytes/edge (object adjacency ~"
+                + OBJECT_BYTES_PER_EDGE + " bytes/edge)";
+    }
+}
@@ -0,0 +1,4 @@
+// DestinationPicker interface: chooses the destination router index for a packet from source
+interface DestinationPicker {
+    int pick(SplitMix64 rng, int source);
+}
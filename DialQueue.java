@@ -0,0 +1,96 @@
+import java.util.Arrays;
+
+// DialQueue class: circular bucket queue (Dial's algorithm) for small integer weights
+// Keys must never be below the last polled key (true for Dijkstra). With edge weights in
+// [0, maxWeight] every queued key then lies in [min, min + maxWeight], so maxWeight + 1
+// buckets indexed by key modulo the bucket count are enough.
+class DialQueue implements IndexedPriorityQueue {
+    private static final int NOT_QUEUED = -2;
+    private static final int NONE = -1;
+
+    private final int bucketCount;
+    private final int[] bucketHeads;
+    private int[] next;
+    private int[] previous;
+    private int[] keys;
+    private int size;
+    private int currentKey;
+
+    public DialQueue(int capacity, int maxWeight) {
+        this.bucketCount = maxWeight + 1;
+        this.bucketHeads = new int[bucketCount];
+        this.next = new int[capacity];
+        this.previous = new int[capacity];
+        this.keys = new int[capacity];
+        clear(capacity);
+    }
+
+    public int getMaxWeight() {
+        return bucketCount - 1;
+    }
+
+    @Override
+    public void clear(int capacity) {
+        if (previous.length < capacity) {
+            next = new int[capacity];
+            previous = new int[capacity];
+            keys = new int[capacity];
+        }
+        Arrays.fill(bucketHeads, NONE);
+        Arrays.fill(previous, 0, capacity, NOT_QUEUED);
+        size = 0;
+        currentKey = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void insertOrDecrease(int router, int key) {
+        if (previous[router] != NOT_QUEUED) {
+            if (key >= keys[router]) {
+                return;
+            }
+            unlink(router);
+        }
+        keys[router] = key;
+        int bucket = key % bucketCount;
+        int head = bucketHeads[bucket];
+        next[router] = head;
+        previous[router] = NONE;
+        if (head != NONE) {
+            previous[head] = router;
+        }
+        bucketHeads[bucket] = router;
+        size++;
+    }
+
+    @Override
+    public int pollMin() {
+        int bucket = currentKey % bucketCount;
+        while (bucketHeads[bucket] == NONE) {
+            currentKey++;
+            bucket = bucket + 1 == bucketCount ? 0 : bucket + 1;
+        }
+        int router = bucketHeads[bucket];
+        unlink(router);
+        return router;
+    }
+
+    private void unlink(int router) {
+        int before = previous[router];
+        int after = next[router];
+        if (before == NONE) {
+            bucketHeads[keys[router] % bucketCount] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+        previous[router] = NOT_QUEUED;
+        size--;
+    }
+}
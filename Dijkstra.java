@@ -0,0 +1,196 @@
+import java.util.Arrays;
+
+// Dijkstra class: single-source shortest paths over a CompactGraph
+// The scratch arrays are reused between runs, so one instance serves many sources.
+// Graphs whose weights are all small integers use Dial's bucket queue, others an indexed binary heap.
+// Weights must be non-negative; each router is settled at most once even if they are not, so a
+// negative cycle gives wrong distances rather than a crash. Use BellmanFord for those graphs.
+class Dijkstra {
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+    static final int DIAL_MAX_WEIGHT = 64;
+
+    private int[] distances;
+    private int[] parents;
+    private int[] settleOrder;
+    private boolean[] settled;
+    private int settledCount;
+    // Per router, the source's links that start a shortest path to it; see fillMultipathGroups
+    private long[] firstHops;
+    private IndexedMinHeap heap;
+    private DialQueue dial;
+
+    public Dijkstra(int size) {
+        this.distances = new int[size];
+        this.parents = new int[size];
+        this.settleOrder = new int[size];
+        this.settled = new boolean[size];
+    }
+
+    private IndexedPriorityQueue queueFor(CompactGraph graph) {
+        int n = graph.size();
+        int maxWeight = graph.maxWeight();
+        if (maxWeight <= DIAL_MAX_WEIGHT && graph.minWeight() >= 0) {
+            if (dial == null || dial.getMaxWeight() != maxWeight) {
+                dial = new DialQueue(n, maxWeight);
+            }
+            dial.clear(n);
+            return dial;
+        }
+        if (heap == null) {
+            heap = new IndexedMinHeap(n);
+        }
+        heap.clear(n);
+        return heap;
+    }
+
+    //implementation of dijkstra algo
+    public int[] run(CompactGraph graph, int source) {
+        int n = graph.size();
+        if (distances.length < n) {
+            distances = new int[n];
+            parents = new int[n];
+            settleOrder = new int[n];
+            settled = new boolean[n];
+        }
+        Arrays.fill(distances, 0, n, UNREACHABLE);
+        Arrays.fill(settled, 0, n, false);
+        Arrays.fill(parents, 0, n, -1);
+        distances[source] = 0;
+        settledCount = 0;
+
+        IndexedPriorityQueue queue = queueFor(graph);
+        queue.insertOrDecrease(source, 0);
+        while (!queue.isEmpty()) {
+            int current = queue.pollMin();
+            if (settled[current]) {
+                continue;
+            }
+            settled[current] = true;
+            int currentDistance = distances[current];
+            settleOrder[settledCount++] = current;
+            for (int e = graph.firstEdge(current), end = graph.endEdge(current); e < end; e++) {
+                int weight = graph.weight(e);
+                if (weight == CompactGraph.NO_LINK) {
+                    continue;
+                }
+                int neighbor = graph.target(e);
+                int newDistance = currentDistance + weight;
+                if (!settled[neighbor] && newDistance < distances[neighbor]) {
+                    distances[neighbor] = newDistance;
+                    parents[neighbor] = current;
+                    queue.insertOrDecrease(neighbor, newDistance);
+                }
+            }
+        }
+        return distances;
+    }
+
+    // Predecessor of every router in the last run's shortest-path tree, -1 if none
+    public int[] getParents() {
+        return parents;
+    }
+
+    // Fills next hops of the last run from its predecessor tree; parents settle before children
+    public void fillForwardingTable(int source, ForwardingTable table) {
+        for (int d = 0; d < table.size(); d++) {
+            table.setNextHop(d, ForwardingTable.NO_ROUTE);
+        }
+        for (int i = 0; i < settledCount; i++) {
+            int router = settleOrder[i];
+            int parent = parents[router];
+            if (parent == source) {
+                table.setNextHop(router, router);
+            } else if (parent >= 0) {
+                table.setNextHop(router, table.nextHop(parent));
+            }
+        }
+    }
+
+    // Adds equal-cost next-hop groups to the table fillForwardingTable filled from the same run
+    // A link leaving the source starts a shortest path to every router it reaches through the
+    // shortest-path DAG, so the first hops towards a router are the union over its DAG
+    // predecessors, collected in settle order as bitmasks over the source's links. Sources with
+    // more than 64 links keep a single path.
+    public void fillMultipathGroups(CompactGraph graph, int source, ForwardingTable table) {
+        int first = graph.firstEdge(source);
+        int degree = graph.endEdge(source) - first;
+        if (degree < 2 || degree > Long.SIZE) {
+            return;
+        }
+        int n = graph.size();
+        if (firstHops == null || firstHops.length < n) {
+            firstHops = new long[n];
+        }
+        for (int i = 0; i < settledCount; i++) {
+            firstHops[settleOrder[i]] = 0;
+        }
+        for (int i = 0; i < settledCount; i++) {
+            int current = settleOrder[i];
+            for (int e = graph.firstEdge(current), end = graph.endEdge(current); e < end; e++) {
+                int weight = graph.weight(e);
+                int neighbor = graph.target(e);
+                if (weight == CompactGraph.NO_LINK || (long) distances[current] + weight != distances[neighbor]) {
+                    continue;
+                }
+                // A zero-weight link may lead to a router settled earlier; only the tree keeps those
+                if (weight == 0 && parents[neighbor] != current) {
+                    continue;
+                }
+                firstHops[neighbor] |= current == source ? 1L << (e - first) : firstHops[current];
+            }
+        }
+
+        int[] groupOf = new int[table.size()];
+        int[] offsets = new int[16];
+        int[] members = new int[16];
+        int groupCount = 0;
+        int memberCount = 0;
+        long[] groupMasks = new long[16];
+        for (int i = 0; i < settledCount; i++) {
+            int router = settleOrder[i];
+            long mask = firstHops[router];
+            if (router == source || Long.bitCount(mask) < 2) {
+                continue;
+            }
+            int group = 0;
+            for (int g = 0; g < groupCount; g++) {
+                if (groupMasks[g] == mask) {
+                    group = g + 1;
+                    break;
+                }
+            }
+            if (group == 0) {
+                int start = memberCount;
+                for (long bits = mask; bits != 0; bits &= bits - 1) {
+                    int neighbor = graph.target(first + Long.numberOfTrailingZeros(bits));
+                    boolean seen = false;
+                    for (int m = start; m < memberCount && !seen; m++) {
+                        seen = members[m] == neighbor;
+                    }
+                    if (!seen) {
+                        if (memberCount == members.length) {
+                            members = Arrays.copyOf(members, 2 * memberCount);
+                        }
+                        members[memberCount++] = neighbor;
+                    }
+                }
+                if (memberCount - start < 2) {
+                    // Parallel links to one neighbor
+                    memberCount = start;
+                    continue;
+                }
+                if (groupCount + 1 == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+                    groupMasks = Arrays.copyOf(groupMasks, 2 * groupMasks.length);
+                }
+                groupMasks[groupCount++] = mask;
+                offsets[groupCount] = memberCount;
+                group = groupCount;
+            }
+            groupOf[router] = group;
+        }
+        if (groupCount > 0) {
+            table.setGroups(groupOf, Arrays.copyOf(offsets, groupCount + 1), Arrays.copyOf(members, memberCount));
+        }
+    }
+}
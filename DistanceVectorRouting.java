@@ -0,0 +1,253 @@
+import java.util.Arrays;
+
+// DistanceVectorRouting class: distributed Bellman-Ford where each router keeps its own vector
+// A router only advertises the entries that changed since its last advertisement, and only to the
+// routers that have a link towards it. After a link change only the affected entries are re-propagated
+// through the worklist instead of recomputing all pairs. A round is one pass over the routers that
+// have pending changes; routers updated during a round advertise in the next one.
+// The engine reads link weights from the CompactGraph it was built on, so link changes go through
+// Graph, which updates that graph and then calls linkChanged. The tables handed out by
+// buildForwardingTables are kept up to date in place.
+class DistanceVectorRouting {
+    // Link weights may grow up to this multiple of the initial maximum before the metric overflows
+    private static final int WEIGHT_HEADROOM = 16;
+
+    private final CompactGraph graph;
+    private final int size;
+    private final int maxLinkWeight;
+    private final int infinity;
+    private final int[][] distances;
+    private final int[][] nextHops;
+    private final int[][] pending;
+    private final int[] pendingCounts;
+    private final long[][] pendingBits;
+    private int[] worklist;
+    private int worklistSize;
+    private int[] nextWorklist;
+    private int nextWorklistSize;
+    private final boolean[] scheduled;
+    private int[] advertised;
+    // Installed in the routers once buildForwardingTables has run
+    private ForwardingTable[] tables;
+    private boolean negativeCycle;
+    private long rounds;
+    private long messages;
+    private long entriesSent;
+
+    public DistanceVectorRouting(CompactGraph graph) {
+        this.graph = graph;
+        this.size = graph.size();
+        graph.buildReverseEdges();
+        // Paths have at most size - 1 links, so anything at or above this bound is unreachable
+        this.maxLinkWeight = (int) Math.min((long) Math.max(1, maxAbsWeight(graph)) * WEIGHT_HEADROOM,
+                Integer.MAX_VALUE / 2);
+        long bound = (long) Math.max(1, size) * maxLinkWeight + 1;
+        this.infinity = (int) Math.min(bound, Integer.MAX_VALUE / 2);
+        this.distances = new int[size][size];
+        this.nextHops = new int[size][size];
+        this.pending = new int[size][];
+        this.pendingCounts = new int[size];
+        this.pendingBits = new long[size][(size + 63) >>> 6];
+        this.worklist = new int[size];
+        this.nextWorklist = new int[size];
+        this.scheduled = new boolean[size];
+        this.advertised = new int[size];
+        for (int u = 0; u < size; u++) {
+            Arrays.fill(distances[u], infinity);
+            Arrays.fill(nextHops[u], ForwardingTable.NO_ROUTE);
+            distances[u][u] = 0;
+            pending[u] = new int[4];
+        }
+    }
+
+    private static int maxAbsWeight(CompactGraph graph) {
+        return Math.max(graph.maxWeight(), -graph.minWeight());
+    }
+
+    // Cold start: every router advertises its own entry and the network converges from scratch
+    public void converge() {
+        for (int u = 0; u < size; u++) {
+            markPending(u, u);
+        }
+        propagate();
+    }
+
+    // False for a weight the metric cannot represent; Graph checks before changing a link
+    public boolean acceptsWeight(int weight) {
+        return weight == CompactGraph.NO_LINK || Math.abs((long) weight) <= maxLinkWeight;
+    }
+
+    // Re-converges after the source -> destination links (router indices) changed in the graph:
+    // the source re-evaluates every entry over its current links, parallel ones included
+    public void linkChanged(int source, int destination) {
+        if (destination < 0 || destination >= size) {
+            throw new IllegalArgumentException("No router index " + destination);
+        }
+        for (int d = 0; d < size; d++) {
+            recompute(source, d);
+        }
+        propagate();
+    }
+
+    private void propagate() {
+        while (nextWorklistSize > 0 && !negativeCycle) {
+            int[] swap = worklist;
+            worklist = nextWorklist;
+            worklistSize = nextWorklistSize;
+            nextWorklist = swap;
+            nextWorklistSize = 0;
+            rounds++;
+            for (int i = 0; i < worklistSize && !negativeCycle; i++) {
+                advertise(worklist[i]);
+            }
+        }
+    }
+
+    // Sends the pending entries of router v to every router with a live link towards v
+    private void advertise(int v) {
+        scheduled[v] = false;
+        int count = pendingCounts[v];
+        if (advertised.length < count) {
+            advertised = new int[Math.max(count, advertised.length * 2)];
+        }
+        System.arraycopy(pending[v], 0, advertised, 0, count);
+        pendingCounts[v] = 0;
+        long[] bits = pendingBits[v];
+        for (int i = 0; i < count; i++) {
+            int d = advertised[i];
+            bits[d >>> 6] &= ~(1L << d);
+        }
+        int[] neighborDistances = distances[v];
+        for (int i = graph.firstInEdge(v), end = graph.endInEdge(v); i < end; i++) {
+            int weight = graph.weight(graph.inEdge(i));
+            if (weight == CompactGraph.NO_LINK) {
+                continue;
+            }
+            int u = graph.inSource(i);
+            messages++;
+            entriesSent += count;
+            int[] ownDistances = distances[u];
+            int[] ownNextHops = nextHops[u];
+            for (int k = 0; k < count; k++) {
+                int d = advertised[k];
+                int candidate = add(weight, neighborDistances[d]);
+                if (ownNextHops[d] == v) {
+                    if (candidate != ownDistances[d]) {
+                        recompute(u, d);
+                    }
+                } else if (candidate < ownDistances[d]) {
+                    setEntry(u, d, candidate, v);
+                }
+                if (negativeCycle) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Re-evaluates the Bellman-Ford equation for one entry from all of u's current neighbor vectors
+    private void recompute(int u, int d) {
+        int best = u == d ? 0 : infinity;
+        int bestHop = ForwardingTable.NO_ROUTE;
+        for (int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++) {
+            int weight = graph.weight(e);
+            if (weight == CompactGraph.NO_LINK) {
+                continue;
+            }
+            int neighbor = graph.target(e);
+            int candidate = add(weight, distances[neighbor][d]);
+            if (candidate < best) {
+                best = candidate;
+                bestHop = neighbor;
+            }
+        }
+        if (best != distances[u][d] || bestHop != nextHops[u][d]) {
+            setEntry(u, d, best, bestHop);
+        }
+    }
+
+    private void setEntry(int u, int d, int distance, int nextHop) {
+        if (u == d && distance < 0) {
+            negativeCycle = true;
+        }
+        boolean changed = distance != distances[u][d];
+        distances[u][d] = distance;
+        nextHops[u][d] = distance >= infinity ? ForwardingTable.NO_ROUTE : nextHop;
+        if (tables != null) {
+            tables[u].setNextHop(d, nextHops[u][d]);
+        }
+        if (changed) {
+            markPending(u, d);
+        }
+    }
+
+    private void markPending(int u, int d) {
+        long[] bits = pendingBits[u];
+        long mask = 1L << d;
+        if ((bits[d >>> 6] & mask) == 0) {
+            bits[d >>> 6] |= mask;
+            if (pendingCounts[u] == pending[u].length) {
+                pending[u] = Arrays.copyOf(pending[u], Math.min(size, pending[u].length * 2));
+            }
+            pending[u][pendingCounts[u]++] = d;
+        }
+        if (!scheduled[u]) {
+            scheduled[u] = true;
+            nextWorklist[nextWorklistSize++] = u;
+        }
+    }
+
+    // Saturating addition so that anything reached through an unreachable neighbor stays unreachable
+    private int add(int weight, int distance) {
+        if (distance >= infinity) {
+            return infinity;
+        }
+        long sum = (long) weight + distance;
+        return sum >= infinity ? infinity : (int) Math.max(sum, -infinity);
+    }
+
+    public int getDistance(int source, int destination) {
+        int distance = distances[source][destination];
+        return distance >= infinity ? Dijkstra.UNREACHABLE : distance;
+    }
+
+    public boolean hasNegativeCycle() {
+        return negativeCycle;
+    }
+
+    public long getRounds() {
+        return rounds;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public long getEntriesSent() {
+        return entriesSent;
+    }
+
+    public void resetStatistics() {
+        rounds = 0;
+        messages = 0;
+        entriesSent = 0;
+    }
+
+    // Tables of the current vectors, which later link changes update in place
+    public ForwardingTable[] buildForwardingTables() {
+        ForwardingTable[] built = new ForwardingTable[size];
+        for (int u = 0; u < size; u++) {
+            built[u] = new ForwardingTable(size);
+            for (int d = 0; d < size; d++) {
+                built[u].setNextHop(d, nextHops[u][d]);
+            }
+        }
+        tables = built;
+        return built;
+    }
+
+    public String describe() {
+        return "Distance vector: " + rounds + " rounds, " + messages + " messages, " + entriesSent
+                + " entries exchanged" + (negativeCycle ? " (negative cycle detected)" : "");
+    }
+}
@@ -0,0 +1,257 @@
+// DynamicShortestPaths class: all-pairs shortest-path trees repaired in place after link changes
+// Follows Ramalingam-Reps: a weight decrease (or new link) relaxes outwards from the link head only in
+// trees where it now gives a shorter path, and a weight increase (or failure) rebuilds only the
+// subtree hanging below the link in trees that actually route over it. Untouched trees cost a
+// couple of array reads each, and the routers' ForwardingTables are rewritten in place.
+// Link weights must be non-negative.
+class DynamicShortestPaths {
+    private CompactGraph graph;
+    private final int size;
+    private final int[][] distances;
+    private final int[][] parents;
+    private final ForwardingTable[] tables;
+    private final IndexedMinHeap heap;
+    private final int[] touched;
+    private final int[] subtree;
+    private final int[] marks;
+    private int epoch;
+    private long updates;
+    private long treesTouched;
+    private long routersTouched;
+    private int lastTreesTouched;
+    private int lastRoutersTouched;
+    // Sources whose forwarding table was written since clearChangedTables()
+    private final boolean[] tableChanged;
+    private final int[] changedTables;
+    private int changedCount;
+
+    public DynamicShortestPaths(CompactGraph graph, ForwardingTable[] tables) {
+        this.graph = graph;
+        this.size = graph.size();
+        this.distances = new int[size][];
+        this.parents = new int[size][];
+        this.tables = tables;
+        this.heap = new IndexedMinHeap(size);
+        this.touched = new int[size];
+        this.subtree = new int[size];
+        this.marks = new int[size];
+        this.tableChanged = new boolean[size];
+        this.changedTables = new int[size];
+        graph.buildReverseEdges();
+        Dijkstra dijkstra = new Dijkstra(size);
+        for (int source = 0; source < size; source++) {
+            distances[source] = dijkstra.run(graph, source).clone();
+            parents[source] = dijkstra.getParents().clone();
+            dijkstra.fillForwardingTable(source, tables[source]);
+        }
+    }
+
+    // Switches to a rebuilt CSR view; router indices are stable, so the trees stay valid
+    public void rebind(CompactGraph rebuilt) {
+        if (rebuilt.size() != size) {
+            throw new IllegalStateException("Incremental routing cannot follow a change in the router count");
+        }
+        rebuilt.buildReverseEdges();
+        this.graph = rebuilt;
+    }
+
+    // Effective source -> destination weight over all live parallel links, or NO_LINK
+    public int linkWeight(int source, int destination) {
+        int best = CompactGraph.NO_LINK;
+        for (int e = graph.firstEdge(source), end = graph.endEdge(source); e < end; e++) {
+            if (graph.target(e) == destination) {
+                best = Math.min(best, graph.weight(e));
+            }
+        }
+        return best;
+    }
+
+    // Called after the CSR weights of source -> destination changed from oldWeight (NO_LINK if absent)
+    public void linkChanged(int source, int destination, int oldWeight) {
+        int newWeight = linkWeight(source, destination);
+        if (newWeight != CompactGraph.NO_LINK && newWeight < 0) {
+            throw new IllegalArgumentException("Incremental routing requires non-negative link weights");
+        }
+        updates++;
+        lastTreesTouched = 0;
+        lastRoutersTouched = 0;
+        if (newWeight == oldWeight) {
+            return;
+        }
+        for (int s = 0; s < size; s++) {
+            int touchedCount;
+            if (newWeight < oldWeight) {
+                touchedCount = decrease(s, source, destination, newWeight);
+            } else {
+                touchedCount = increase(s, source, destination, newWeight);
+            }
+            if (touchedCount > 0) {
+                lastTreesTouched++;
+                lastRoutersTouched += touchedCount;
+            }
+        }
+        treesTouched += lastTreesTouched;
+        routersTouched += lastRoutersTouched;
+    }
+
+    // The link got cheaper: relax outwards from its head if it now offers a shorter path
+    private int decrease(int s, int u, int v, int weight) {
+        int[] dist = distances[s];
+        if (dist[u] == Dijkstra.UNREACHABLE || dist[u] + weight >= dist[v]) {
+            return 0;
+        }
+        dist[v] = dist[u] + weight;
+        parents[s][v] = u;
+        heap.insertOrDecrease(v, dist[v]);
+        int count = settle(s);
+        refreshNextHops(s, count);
+        return count;
+    }
+
+    // The link got dearer or failed: rebuild the subtree below it if this tree routes over it
+    private int increase(int s, int u, int v, int weight) {
+        int[] dist = distances[s];
+        int[] parent = parents[s];
+        if (parent[v] != u || (weight != CompactGraph.NO_LINK && dist[u] + weight == dist[v])) {
+            return 0;
+        }
+        // Collect the subtree rooted at v by following tree links forwards
+        int mark = ++epoch;
+        int count = 0;
+        subtree[count++] = v;
+        marks[v] = mark;
+        for (int i = 0; i < count; i++) {
+            int x = subtree[i];
+            for (int e = graph.firstEdge(x), end = graph.endEdge(x); e < end; e++) {
+                int child = graph.target(e);
+                if (parent[child] == x && marks[child] != mark) {
+                    marks[child] = mark;
+                    subtree[count++] = child;
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int x = subtree[i];
+            dist[x] = Dijkstra.UNREACHABLE;
+            parent[x] = -1;
+        }
+        // Seed every subtree router with its best entry from outside the subtree
+        for (int i = 0; i < count; i++) {
+            int x = subtree[i];
+            for (int k = graph.firstInEdge(x), end = graph.endInEdge(x); k < end; k++) {
+                int y = graph.inSource(k);
+                int w = graph.weight(graph.inEdge(k));
+                if (marks[y] == mark || w == CompactGraph.NO_LINK || dist[y] == Dijkstra.UNREACHABLE) {
+                    continue;
+                }
+                int candidate = dist[y] + w;
+                if (candidate < dist[x]) {
+                    dist[x] = candidate;
+                    parent[x] = y;
+                }
+            }
+            if (dist[x] != Dijkstra.UNREACHABLE) {
+                heap.insertOrDecrease(x, dist[x]);
+            }
+        }
+        refreshNextHops(s, settle(s));
+        // Routers that became unreachable were never settled, but their next hops must be cleared
+        for (int i = 0; i < count; i++) {
+            int x = subtree[i];
+            if (dist[x] == Dijkstra.UNREACHABLE) {
+                setNextHop(s, x, ForwardingTable.NO_ROUTE);
+            }
+        }
+        return count;
+    }
+
+    // Dijkstra restricted to the routers whose distance improves; records them in settle order
+    private int settle(int s) {
+        int count = 0;
+        int[] dist = distances[s];
+        int[] parent = parents[s];
+        while (!heap.isEmpty()) {
+            int x = heap.pollMin();
+            touched[count++] = x;
+            int base = dist[x];
+            for (int e = graph.firstEdge(x), end = graph.endEdge(x); e < end; e++) {
+                int w = graph.weight(e);
+                if (w == CompactGraph.NO_LINK) {
+                    continue;
+                }
+                int y = graph.target(e);
+                if (base + w < dist[y]) {
+                    dist[y] = base + w;
+                    parent[y] = x;
+                    heap.insertOrDecrease(y, dist[y]);
+                }
+            }
+        }
+        return count;
+    }
+
+    // Parents settle before their children, so one pass over the touched routers is enough
+    private void refreshNextHops(int s, int count) {
+        ForwardingTable table = tables[s];
+        int[] parent = parents[s];
+        for (int i = 0; i < count; i++) {
+            int x = touched[i];
+            int p = parent[x];
+            if (x == s || p < 0) {
+                continue;
+            }
+            setNextHop(s, x, p == s ? x : table.nextHop(p));
+        }
+    }
+
+    private void setNextHop(int s, int destination, int nextHop) {
+        ForwardingTable table = tables[s];
+        if (table.nextHop(destination) == nextHop) {
+            return;
+        }
+        table.setNextHop(destination, nextHop);
+        if (!tableChanged[s]) {
+            tableChanged[s] = true;
+            changedTables[changedCount++] = s;
+        }
+    }
+
+    // Number of sources whose table changed since clearChangedTables(), see changedTable(i)
+    public int getChangedTableCount() {
+        return changedCount;
+    }
+
+    public int changedTable(int i) {
+        return changedTables[i];
+    }
+
+    public void clearChangedTables() {
+        for (int i = 0; i < changedCount; i++) {
+            tableChanged[changedTables[i]] = false;
+        }
+        changedCount = 0;
+    }
+
+    public int getDistance(int source, int destination) {
+        return distances[source][destination];
+    }
+
+    public ForwardingTable[] getForwardingTables() {
+        return tables;
+    }
+
+    public int getLastTreesTouched() {
+        return lastTreesTouched;
+    }
+
+    public int getLastRoutersTouched() {
+        return lastRoutersTouched;
+    }
+
+    public String describe() {
+        double perUpdate = updates > 0 ? (double) treesTouched / updates : 0.0;
+        return "Incremental routing: " + updates + " updates, " + treesTouched + " of " + updates * size
+                + " trees touched (" + String.format("%.1f", perUpdate) + " per update), " + routersTouched
+                + " routers re-settled";
+    }
+}
@@ -0,0 +1,312 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+// EventScheduler class: calendar queue of timestamped simulation events
+// Events live in primitive pool arrays and are addressed by int handles. Each bucket keeps a list
+// sorted by time (events with equal times stay in scheduling order), and the bucket count and
+// width are re-tuned as the queue grows or shrinks, giving O(1) amortized schedule and poll.
+class EventScheduler {
+    private static final int NIL = -1;
+    private static final int MIN_BUCKETS = 16;
+
+    // Event pool
+    private long[] times;
+    private int[] types;
+    private int[] routers;
+    private int[] payloads;
+    private int[] next;
+    private int freeList = NIL;
+    // The last polled handle is recycled only on the next poll, so its fields stay readable
+    private int pendingRelease = NIL;
+    private int poolUsed;
+
+    // Calendar
+    private int[] heads;
+    private int[] tails;
+    private int mask;
+    private long width;
+    private int lastBucket;
+    private long bucketTop;
+    private long lastTime;
+    private int size;
+
+    public EventScheduler() {
+        this(1024);
+    }
+
+    public EventScheduler(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.times = new long[capacity];
+        this.types = new int[capacity];
+        this.routers = new int[capacity];
+        this.payloads = new int[capacity];
+        this.next = new int[capacity];
+        this.width = 1;
+        allocateBuckets(MIN_BUCKETS);
+        reposition(0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Time of the most recently polled event
+    public long currentTime() {
+        return lastTime;
+    }
+
+    public void schedule(long time, int type, int router, int payload) {
+        if (time < lastTime) {
+            throw new IllegalArgumentException("Cannot schedule an event at " + time + " before " + lastTime);
+        }
+        int event = allocate();
+        times[event] = time;
+        types[event] = type;
+        routers[event] = router;
+        payloads[event] = payload;
+        insert(event);
+        size++;
+        if (size > 2 * heads.length) {
+            resize(2 * heads.length);
+        }
+    }
+
+    // Removes the earliest event and returns its handle; the handle is valid until the next poll
+    public int poll() {
+        if (size == 0) {
+            return NIL;
+        }
+        int bucket = lastBucket;
+        for (int scanned = 0; scanned <= mask; scanned++) {
+            int event = heads[bucket];
+            if (event != NIL && times[event] < bucketTop) {
+                return take(bucket, event);
+            }
+            bucket = (bucket + 1) & mask;
+            bucketTop += width;
+        }
+        // Nothing within a whole year of buckets: jump straight to the earliest event
+        int best = NIL;
+        int bestBucket = 0;
+        for (int b = 0; b <= mask; b++) {
+            int event = heads[b];
+            if (event != NIL && (best == NIL || times[event] < times[best])) {
+                best = event;
+                bestBucket = b;
+            }
+        }
+        reposition(times[best]);
+        return take(bestBucket, best);
+    }
+
+    // Timestamp of the earliest pending event without removing it, Long.MAX_VALUE if empty
+    public long peekTime() {
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+        int bucket = lastBucket;
+        long top = bucketTop;
+        for (int scanned = 0; scanned <= mask; scanned++) {
+            int event = heads[bucket];
+            if (event != NIL && times[event] < top) {
+                return times[event];
+            }
+            bucket = (bucket + 1) & mask;
+            top += width;
+        }
+        long earliest = Long.MAX_VALUE;
+        for (int head : heads) {
+            if (head != NIL) {
+                earliest = Math.min(earliest, times[head]);
+            }
+        }
+        return earliest;
+    }
+
+    public long time(int event) {
+        return times[event];
+    }
+
+    public int type(int event) {
+        return types[event];
+    }
+
+    public int router(int event) {
+        return routers[event];
+    }
+
+    public int payload(int event) {
+        return payloads[event];
+    }
+
+    // The pool and calendar exactly as they are, so pending events come out in the same order
+    // after readState, ties included
+    void writeState(CheckpointOutput out) throws IOException {
+        out.writeInt(poolUsed);
+        out.writeLongs(times, 0, poolUsed);
+        out.writeInts(types, 0, poolUsed);
+        out.writeInts(routers, 0, poolUsed);
+        out.writeInts(payloads, 0, poolUsed);
+        out.writeInts(next, 0, poolUsed);
+        out.writeInt(freeList);
+        out.writeInt(pendingRelease);
+        out.writeInt(heads.length);
+        out.writeInts(heads, 0, heads.length);
+        out.writeInts(tails, 0, tails.length);
+        out.writeLong(width);
+        out.writeInt(lastBucket);
+        out.writeLong(bucketTop);
+        out.writeLong(lastTime);
+        out.writeInt(size);
+    }
+
+    void readState(MappedInput in) throws IOException {
+        poolUsed = in.readInt();
+        int capacity = Math.max(16, poolUsed);
+        times = new long[capacity];
+        types = new int[capacity];
+        routers = new int[capacity];
+        payloads = new int[capacity];
+        next = new int[capacity];
+        in.readLongs(times, 0, poolUsed);
+        in.readInts(types, 0, poolUsed);
+        in.readInts(routers, 0, poolUsed);
+        in.readInts(payloads, 0, poolUsed);
+        in.readInts(next, 0, poolUsed);
+        freeList = in.readInt();
+        pendingRelease = in.readInt();
+        int buckets = in.readInt();
+        if (buckets < MIN_BUCKETS || Integer.bitCount(buckets) != 1) {
+            throw in.error("Invalid event calendar of " + buckets + " buckets");
+        }
+        allocateBuckets(buckets);
+        in.readInts(heads, 0, buckets);
+        in.readInts(tails, 0, buckets);
+        width = in.readLong();
+        lastBucket = in.readInt();
+        bucketTop = in.readLong();
+        lastTime = in.readLong();
+        size = in.readInt();
+    }
+
+    private int take(int bucket, int event) {
+        heads[bucket] = next[event];
+        if (heads[bucket] == NIL) {
+            tails[bucket] = NIL;
+        }
+        lastBucket = bucket;
+        lastTime = times[event];
+        size--;
+        release(event);
+        if (size < heads.length / 2 && heads.length > MIN_BUCKETS) {
+            resize(heads.length / 2);
+        }
+        return event;
+    }
+
+    private void insert(int event) {
+        long time = times[event];
+        int bucket = (int) (time / width) & mask;
+        int tail = tails[bucket];
+        if (tail == NIL) {
+            heads[bucket] = event;
+            tails[bucket] = event;
+            next[event] = NIL;
+        } else if (times[tail] <= time) {
+            // Common case: events are mostly scheduled in increasing time order
+            next[tail] = event;
+            tails[bucket] = event;
+            next[event] = NIL;
+        } else if (times[heads[bucket]] > time) {
+            next[event] = heads[bucket];
+            heads[bucket] = event;
+        } else {
+            int previous = heads[bucket];
+            while (times[next[previous]] <= time) {
+                previous = next[previous];
+            }
+            next[event] = next[previous];
+            next[previous] = event;
+        }
+    }
+
+    private int allocate() {
+        if (freeList != NIL) {
+            int event = freeList;
+            freeList = next[event];
+            return event;
+        }
+        if (poolUsed == times.length) {
+            int capacity = times.length * 2;
+            times = Arrays.copyOf(times, capacity);
+            types = Arrays.copyOf(types, capacity);
+            routers = Arrays.copyOf(routers, capacity);
+            payloads = Arrays.copyOf(payloads, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return poolUsed++;
+    }
+
+    private void release(int event) {
+        if (pendingRelease != NIL) {
+            next[pendingRelease] = freeList;
+            freeList = pendingRelease;
+        }
+        pendingRelease = event;
+    }
+
+    private void allocateBuckets(int count) {
+        heads = new int[count];
+        tails = new int[count];
+        Arrays.fill(heads, NIL);
+        Arrays.fill(tails, NIL);
+        mask = count - 1;
+    }
+
+    private void reposition(long time) {
+        lastTime = time;
+        long year = time / width;
+        lastBucket = (int) year & mask;
+        bucketTop = (year + 1) * width;
+    }
+
+    // Re-buckets every event; the new width is about three times the mean gap between events.
+    // Buckets are chained in list order so equal-time events keep their scheduling order.
+    private void resize(int bucketCount) {
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        int chain = NIL;
+        int chainTail = NIL;
+        for (int head : heads) {
+            if (head == NIL) {
+                continue;
+            }
+            for (int event = head; event != NIL; event = next[event]) {
+                minTime = Math.min(minTime, times[event]);
+                maxTime = Math.max(maxTime, times[event]);
+            }
+            if (chain == NIL) {
+                chain = head;
+            } else {
+                next[chainTail] = head;
+            }
+            for (chainTail = head; next[chainTail] != NIL; ) {
+                chainTail = next[chainTail];
+            }
+        }
+        if (size > 1) {
+            width = Math.max(1, 3 * (maxTime - minTime) / size);
+        }
+        allocateBuckets(bucketCount);
+        reposition(lastTime);
+        while (chain != NIL) {
+            int following = next[chain];
+            insert(chain);
+            chain = following;
+        }
+    }
+}
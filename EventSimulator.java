@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+// EventSimulator class: discrete-event traffic simulation in virtual time on a single thread
+// Every router belongs to one SimulationShard, which holds the event handlers; ShardedSimulator
+// runs the same handlers across several threads. Virtual time is counted in microseconds.
+class EventSimulator implements Simulator {
+    static final long TICKS_PER_MILLISECOND = 1000;
+
+    static final long NANOS_PER_TICK = 1000;
+
+    private final PacketTable packets;
+    private final SimulationShard shard;
+    private final boolean[] transmitting;
+    private final boolean[] refillPending;
+    private final TraceLog trace;
+    // Null unless routes follow congestion; then the run stops at every route update
+    private final AdaptiveRouting adaptive;
+    private long runNanos;
+
+    public EventSimulator(Graph graph) {
+        int n = graph.getCompactGraph().size();
+        Router[] routers = new Router[n];
+        for (int i = 0; i < n; i++) {
+            routers[i] = graph.getRouterByIndex(i);
+        }
+        this.trace = graph.getTraceLog();
+        OutputPorts ports = graph.getOutputPorts();
+        this.packets = new PacketTable(routers);
+        this.transmitting = new boolean[ports.size()];
+        this.refillPending = new boolean[n];
+        this.shard = new SimulationShard(0, routers, null, packets, ports, null, transmitting, refillPending, trace);
+        trace.setTimeSource(shard.getClock());
+        this.adaptive = graph.getAdaptiveRouting();
+        if (adaptive != null) {
+            adaptive.attach(ports, 0);
+        }
+    }
+
+    // Schedules the packet to arrive at its source router at the given virtual time
+    @Override
+    public void inject(Packet packet, long time) {
+        int id = packets.add(0, packet, time);
+        if (trace.packets()) {
+            shard.getClock().setNanoTime(time * NANOS_PER_TICK);
+            trace.inject(packet.getSource().getId(), id, packet.getData());
+        }
+        shard.scheduleArrival(time, packet.getSource().getIndex(), id);
+    }
+
+    // Same as inject(Packet, long) for a payload-less packet of a flow between router indices
+    @Override
+    public void inject(int source, int destination, int sizeBytes, int flowId, long time) {
+        shard.scheduleArrival(time, source, packets.add(0, source, destination, sizeBytes, flowId, time));
+    }
+
+    @Override
+    public void addGenerator(TrafficGenerator generator) {
+        shard.addGenerator(generator);
+    }
+
+    @Override
+    public PacketTable getPacketTable() {
+        return packets;
+    }
+
+    // Processes events until the queue drains
+    @Override
+    public void run() {
+        runUntil(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void runUntil(long end) {
+        long start = System.nanoTime();
+        if (adaptive == null) {
+            shard.processUntil(end);
+        } else {
+            for (long next = shard.nextEventTime(); next < end; next = shard.nextEventTime()) {
+                while (adaptive.nextUpdateTime() <= next) {
+                    adaptive.update();
+                }
+                shard.processUntil(Math.min(end, adaptive.nextUpdateTime()));
+            }
+            adaptive.close();
+        }
+        runNanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void writeState(CheckpointOutput out) throws IOException {
+        out.writeInt(1);
+        out.writeBooleans(transmitting, 0, transmitting.length);
+        out.writeBooleans(refillPending, 0, refillPending.length);
+        shard.writeState(out, new IdentityHashMap<>());
+    }
+
+    @Override
+    public void readState(MappedInput in) throws IOException {
+        int shards = in.readInt();
+        if (shards != 1) {
+            throw in.error("Checkpoint of " + shards + " shards cannot be restored into a single-threaded simulator");
+        }
+        in.readBooleans(transmitting, 0, transmitting.length);
+        in.readBooleans(refillPending, 0, refillPending.length);
+        shard.readState(in, new ArrayList<>());
+        if (adaptive != null) {
+            adaptive.attach(shard.getPorts(), getVirtualTime());
+        }
+    }
+
+    @Override
+    public long getEventsProcessed() {
+        return shard.getEventsProcessed();
+    }
+
+    @Override
+    public long getPacketsDelivered() {
+        return shard.getPacketsDelivered();
+    }
+
+    @Override
+    public long getPacketsUnroutable() {
+        return shard.getPacketsUnroutable();
+    }
+
+    @Override
+    public long getVirtualTime() {
+        return shard.getVirtualTime();
+    }
+
+    @Override
+    public long getTokenMisses() {
+        return shard.getTokenMisses();
+    }
+
+    @Override
+    public long getLiveCount(int counter) {
+        return shard.getPublished(counter);
+    }
+
+    @Override
+    public double getAverageEndToEndDelayMillis() {
+        return shard.getEndToEndLatency().getMean() / TICKS_PER_MILLISECOND;
+    }
+
+    @Override
+    public Histogram getEndToEndLatency() {
+        return shard.getEndToEndLatency();
+    }
+
+    @Override
+    public double getSimulatedThroughput() {
+        return simulatedThroughput(getPacketsDelivered(), getVirtualTime());
+    }
+
+    @Override
+    public double getEventsPerSecond() {
+        return runNanos > 0 ? shard.getEventsProcessed() * 1e9 / runNanos : 0.0;
+    }
+
+    @Override
+    public String describe() {
+        return describe(packets.injected(), getPacketsDelivered(), getPacketsUnroutable(), getEndToEndLatency(),
+                getVirtualTime(), getEventsProcessed(), getEventsPerSecond());
+    }
+
+    static double simulatedThroughput(long delivered, long virtualTime) {
+        return virtualTime > 0 ? delivered * (TICKS_PER_MILLISECOND * 1000.0) / virtualTime : 0.0;
+    }
+
+    // Simulated figures (delays, throughput per virtual second) first, then the simulator's speed
+    static String describe(long injected, long delivered, long unroutable, Histogram latency, long virtualTime,
+            long events, double eventsPerSecond) {
+        return "Delivered " + delivered + " of " + injected + " packets (" + unroutable
+                + " unroutable), average end-to-end delay "
+                + String.format("%.3f", latency.getMean() / TICKS_PER_MILLISECOND) + " ms ("
+                + latency.describe(TICKS_PER_MILLISECOND, "ms") + "), "
+                + String.format("%.1f", simulatedThroughput(delivered, virtualTime)) + " packets/s over "
+                + String.format("%.3f", (double) virtualTime / TICKS_PER_MILLISECOND) + " ms of virtual time; "
+                + events + " events (" + String.format("%.0f", eventsPerSecond) + " events/s)";
+    }
+}
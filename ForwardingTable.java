@@ -0,0 +1,142 @@
+// ForwardingTable class: next-hop router index for every destination index
+// Networks with fewer than 32768 routers use a short[] row, larger ones fall back to int[].
+// A multipath table also maps destinations to groups of equal-cost next hops; a flow hash picks
+// one member, so all packets of a flow take the same path. Destinations with a single next hop
+// keep group 0 and cost nothing extra.
+class ForwardingTable {
+    static final int NO_ROUTE = -1;
+    static final int NO_GROUP = 0;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    // HashMap.Node + boxed Integer + table slot for one entry of the old nested-map layout
+    static final int BOXED_BYTES_PER_ENTRY = 32 + 16 + 4;
+
+    private final short[] narrow;
+    private final int[] wide;
+    // Group of each destination; members of group g are groupMembers[groupOffsets[g - 1] .. groupOffsets[g])
+    private int[] groups;
+    private int[] groupOffsets;
+    private int[] groupMembers;
+
+    public ForwardingTable(int size) {
+        if (size <= Short.MAX_VALUE) {
+            this.narrow = new short[size];
+            this.wide = null;
+        } else {
+            this.narrow = null;
+            this.wide = new int[size];
+        }
+    }
+
+    public int size() {
+        return narrow != null ? narrow.length : wide.length;
+    }
+
+    public int nextHop(int destination) {
+        return narrow != null ? narrow[destination] : wide[destination];
+    }
+
+    public void setNextHop(int destination, int nextHop) {
+        if (narrow != null) {
+            narrow[destination] = (short) nextHop;
+        } else {
+            wide[destination] = nextHop;
+        }
+    }
+
+    // Overwrites this table's next hops with those of an equally sized single-path table
+    public void copyFrom(ForwardingTable other) {
+        if (other.size() != size()) {
+            throw new IllegalArgumentException("Cannot copy a table of " + other.size() + " destinations into one of "
+                    + size());
+        }
+        if (narrow != null) {
+            System.arraycopy(other.narrow, 0, narrow, 0, narrow.length);
+        } else {
+            System.arraycopy(other.wide, 0, wide, 0, wide.length);
+        }
+    }
+
+    // Next hop for a packet of the flow, hashed with rehash() for this router
+    public int nextHop(int destination, int flowHash) {
+        int group = groups != null ? groups[destination] : NO_GROUP;
+        if (group == NO_GROUP) {
+            return nextHop(destination);
+        }
+        int first = groupOffsets[group - 1];
+        return groupMembers[first + pick(flowHash, groupOffsets[group] - first)];
+    }
+
+    // Installs next-hop groups: groupOf[d] is NO_GROUP or g for members[offsets[g - 1] .. offsets[g])
+    public void setGroups(int[] groupOf, int[] offsets, int[] members) {
+        if (groupOf.length != size()) {
+            throw new IllegalArgumentException("Need a group for each of " + size() + " destinations");
+        }
+        this.groups = groupOf;
+        this.groupOffsets = offsets;
+        this.groupMembers = members;
+    }
+
+    public boolean isMultipath() {
+        return groups != null;
+    }
+
+    // Next hops towards the destination, a single one unless the destination has a group
+    public int pathCount(int destination) {
+        int group = groups != null ? groups[destination] : NO_GROUP;
+        if (group == NO_GROUP) {
+            return nextHop(destination) != NO_ROUTE ? 1 : 0;
+        }
+        return groupOffsets[group] - groupOffsets[group - 1];
+    }
+
+    // Hash of a flow, computed once when the packet enters the network
+    static int flowHash(int source, int destination, int flowId) {
+        return mix(source * 0x9E3779B9 + destination * 0x85EBCA6B + flowId * 0xC2B2AE35);
+    }
+
+    // Flow hash as seen by one router; without it routers in series would all pick the same
+    // member index and use only part of the paths behind them
+    static int rehash(int flowHash, int router) {
+        return mix(flowHash ^ router * 0x9E3779B9);
+    }
+
+    // Maps the hash onto 0..count-1 with a multiply instead of a division
+    static int pick(int hash, int count) {
+        return (int) (((hash & 0xFFFFFFFFL) * count) >>> 32);
+    }
+
+    // Murmur3 finalizer
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    public long memoryBytes() {
+        long bytes = narrow != null ? 2L * narrow.length + ARRAY_HEADER_BYTES : 4L * wide.length + ARRAY_HEADER_BYTES;
+        if (groups != null) {
+            bytes += 4L * (groups.length + groupOffsets.length + groupMembers.length) + 3L * ARRAY_HEADER_BYTES;
+        }
+        return bytes;
+    }
+
+    public static String describe(ForwardingTable[] tables) {
+        long bytes = 0;
+        long entries = 0;
+        long multipath = 0;
+        for (ForwardingTable table : tables) {
+            bytes += table.memoryBytes();
+            entries += table.size();
+            if (table.isMultipath()) {
+                for (int d = 0; d < table.size(); d++) {
+                    multipath += table.groups[d] != NO_GROUP ? 1 : 0;
+                }
+            }
+        }
+        return "Forwarding tables: " + entries + " entries" + (multipath > 0 ? " (" + multipath
+                + " with equal-cost next hops)" : "") + ", " + bytes + " bytes (nested boxed map ~"
+                + entries * BOXED_BYTES_PER_ENTRY + " bytes)";
+    }
+}
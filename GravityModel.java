@@ -0,0 +1,29 @@
+// GravityModel class: Poisson sources whose traffic matrix follows the gravity model
+// Traffic from i to j is proportional to weight[i] * weight[j], scaled so all sources together
+// send totalPacketsPerSecond.
+class GravityModel {
+    private GravityModel() {
+    }
+
+    public static TrafficGenerator[] create(double[] weights, double totalPacketsPerSecond, int sizeBytes,
+            long startTime, long endTime, SplitMix64 rng) {
+        int n = weights.length;
+        double weightSum = 0;
+        for (double weight : weights) {
+            weightSum += weight;
+        }
+        double pairSum = 0;
+        for (double weight : weights) {
+            pairSum += weight * (weightSum - weight);
+        }
+        DestinationPicker destinations = new WeightedDestinations(weights);
+        TrafficGenerator[] generators = new TrafficGenerator[n];
+        for (int i = 0; i < n; i++) {
+            double rate = totalPacketsPerSecond * weights[i] * (weightSum - weights[i]) / pairSum;
+            if (rate > 0) {
+                generators[i] = new PoissonTraffic(i, destinations, sizeBytes, startTime, endTime, rng.split(), rate);
+            }
+        }
+        return generators;
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Histogram class: fixed-size log-linear histogram of non-negative long values
+// Values below 2^precisionBits get a bucket each; above that every power-of-two range is split
+// into 2^(precisionBits - 1) equal buckets, so a percentile is exact to within a relative error of
+// 2^-(precisionBits - 1). All buckets are allocated up front and record() only updates counters,
+// atomically, so several threads may record into one histogram; histograms recorded separately,
+// e.g. one per simulation shard, are combined with add(). Values above highestTrackableValue are
+// counted in the last bucket, while the maximum is kept exactly.
+class Histogram {
+    private final int precisionBits;
+    private final int halfBucketCount;
+    private final AtomicLongArray counts;
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public Histogram(long highestTrackableValue, int precisionBits) {
+        if (precisionBits < 1 || precisionBits > 20) {
+            throw new IllegalArgumentException("Precision must be between 1 and 20 bits");
+        }
+        if (highestTrackableValue < 1) {
+            throw new IllegalArgumentException("Highest trackable value must be positive");
+        }
+        this.precisionBits = precisionBits;
+        this.halfBucketCount = 1 << (precisionBits - 1);
+        this.counts = new AtomicLongArray(bucketIndex(highestTrackableValue) + 1);
+    }
+
+    private int bucketIndex(long value) {
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (precisionBits - 1);
+        if (shift <= 0) {
+            return (int) value;
+        }
+        return shift * halfBucketCount + (int) (value >>> shift);
+    }
+
+    private long lowestEquivalentValue(int index) {
+        if (index < 2 * halfBucketCount) {
+            return index;
+        }
+        int shift = index / halfBucketCount - 1;
+        return (long) (index - shift * halfBucketCount) << shift;
+    }
+
+    private long highestEquivalentValue(int index) {
+        return lowestEquivalentValue(index + 1) - 1;
+    }
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    public void record(long value, long count) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Histogram values must not be negative: " + value);
+        }
+        counts.addAndGet(Math.min(bucketIndex(value), counts.length() - 1), count);
+        sum.addAndGet(value * count);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    // Adds the other histogram's counts; it may use a different range or precision
+    public void add(Histogram other) {
+        for (int i = 0; i < other.counts.length(); i++) {
+            long count = other.counts.get(i);
+            if (count > 0) {
+                long value = other.lowestEquivalentValue(i);
+                counts.addAndGet(Math.min(bucketIndex(value), counts.length() - 1), count);
+            }
+        }
+        sum.addAndGet(other.sum.get());
+        long otherMax = other.max.get();
+        long current = max.get();
+        while (otherMax > current && !max.compareAndSet(current, otherMax)) {
+            current = max.get();
+        }
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long total = getTotalCount();
+        return total > 0 ? (double) sum.get() / total : 0.0;
+    }
+
+    // Smallest recorded value such that the given percentage of values are at or below it,
+    // reported as the top of its bucket (never above the exact maximum); 0 when empty
+    public long valueAtPercentile(double percentile) {
+        long total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    // Summary with values divided by scale, e.g. ticks per millisecond
+    public String describe(double scale, String unit) {
+        return String.format("p50 %.3f, p99 %.3f, p99.9 %.3f, max %.3f %s (%d samples)",
+                valueAtPercentile(50) / scale, valueAtPercentile(99) / scale, valueAtPercentile(99.9) / scale,
+                getMax() / scale, unit, getTotalCount());
+    }
+
+    public long memoryBytes() {
+        return 8L * counts.length();
+    }
+
+    // Counts, sum and maximum, for a checkpoint; readState expects a histogram of the same layout
+    void writeState(CheckpointOutput out) throws IOException {
+        out.writeInt(counts.length());
+        for (int i = 0; i < counts.length(); i++) {
+            out.writeLong(counts.get(i));
+        }
+        out.writeLong(sum.get());
+        out.writeLong(max.get());
+    }
+
+    void readState(MappedInput in) throws IOException {
+        int length = in.readInt();
+        if (length != counts.length()) {
+            throw in.error("Histogram of " + length + " buckets does not fit one of " + counts.length());
+        }
+        for (int i = 0; i < length; i++) {
+            counts.set(i, in.readLong());
+        }
+        sum.set(in.readLong());
+        max.set(in.readLong());
+    }
+}
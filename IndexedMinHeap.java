@@ -0,0 +1,108 @@
+import java.util.Arrays;
+
+// IndexedMinHeap class: primitive binary heap with position tracking
+class IndexedMinHeap implements IndexedPriorityQueue {
+    private int[] heap;
+    private int[] keys;
+    private int[] positions;
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.keys = new int[capacity];
+        this.positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    @Override
+    public void clear(int capacity) {
+        if (positions.length < capacity) {
+            heap = new int[capacity];
+            keys = new int[capacity];
+            positions = new int[capacity];
+        }
+        Arrays.fill(positions, 0, capacity, -1);
+        size = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Empties the heap in time proportional to what it holds rather than to its capacity, for
+    // searches that stop early and leave part of their frontier queued
+    public void clearQueued() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    @Override
+    public void insertOrDecrease(int router, int key) {
+        int position = positions[router];
+        if (position < 0) {
+            position = size++;
+            heap[position] = router;
+            positions[router] = position;
+        } else if (key >= keys[router]) {
+            return;
+        }
+        keys[router] = key;
+        siftUp(position);
+    }
+
+    @Override
+    public int pollMin() {
+        int min = heap[0];
+        positions[min] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            positions[last] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    private void siftUp(int position) {
+        int router = heap[position];
+        int key = keys[router];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            int parentRouter = heap[parent];
+            if (keys[parentRouter] <= key) {
+                break;
+            }
+            heap[position] = parentRouter;
+            positions[parentRouter] = position;
+            position = parent;
+        }
+        heap[position] = router;
+        positions[router] = position;
+    }
+
+    private void siftDown(int position) {
+        int router = heap[position];
+        int key = keys[router];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            int childRouter = heap[child];
+            if (key <= keys[childRouter]) {
+                break;
+            }
+            heap[position] = childRouter;
+            positions[childRouter] = position;
+            position = child;
+        }
+        heap[position] = router;
+        positions[router] = position;
+    }
+}
@@ -0,0 +1,13 @@
+// IndexedPriorityQueue interface: min-queue of router indices with decrease-key
+// Every router is held at most once, so the queue never grows past the router count.
+interface IndexedPriorityQueue {
+    void clear(int size);
+
+    boolean isEmpty();
+
+    // Inserts the router, or lowers its key if it is already queued
+    void insertOrDecrease(int router, int key);
+
+    // Removes and returns the router with the smallest key
+    int pollMin();
+}
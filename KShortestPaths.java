@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// KShortestPaths class: Yen's algorithm for the k cheapest loopless paths between two routers
+// Path i + 1 is the cheapest deviation from paths 0..i: for every router along path i, the spur
+// search runs Dijkstra from it with the links already used by paths sharing the same prefix
+// removed, and with the prefix routers removed so the result stays loopless. Removal is done
+// by stamping routers and links, so the CompactGraph is never modified and one instance serves
+// many pairs.
+class KShortestPaths {
+    private final CompactGraph graph;
+    private final int[] distances;
+    private final int[] parents;
+    private final IndexedMinHeap heap;
+    // A router or link is removed from the current spur search when its stamp equals stamp
+    private final int[] routerStamps;
+    private final int[] linkStamps;
+    private int stamp;
+
+    // Candidate path with its cost, ordered by cost, then length, then routers
+    private static final class Candidate implements Comparable<Candidate> {
+        final int[] path;
+        final long cost;
+
+        Candidate(int[] path, long cost) {
+            this.path = path;
+            this.cost = cost;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (cost != other.cost) {
+                return Long.compare(cost, other.cost);
+            }
+            if (path.length != other.path.length) {
+                return Integer.compare(path.length, other.path.length);
+            }
+            return Arrays.compare(path, other.path);
+        }
+    }
+
+    public KShortestPaths(CompactGraph graph) {
+        int n = graph.size();
+        this.graph = graph;
+        this.distances = new int[n];
+        this.parents = new int[n];
+        this.heap = new IndexedMinHeap(n);
+        this.routerStamps = new int[n];
+        this.linkStamps = new int[graph.edgeCount()];
+    }
+
+    // Up to k loopless paths from source to destination as router index arrays, cheapest first;
+    // empty if the destination is unreachable
+    public List<int[]> find(int source, int destination, int k) {
+        List<int[]> paths = new ArrayList<>(k);
+        if (k <= 0 || source == destination) {
+            return paths;
+        }
+        stamp++;
+        int[] first = shortestPath(source, destination);
+        if (first == null) {
+            return paths;
+        }
+        paths.add(first);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        while (paths.size() < k) {
+            int[] previous = paths.get(paths.size() - 1);
+            long rootCost = 0;
+            for (int i = 0; i + 1 < previous.length; i++) {
+                int spur = previous[i];
+                stamp++;
+                for (int[] path : paths) {
+                    if (path.length > i + 1 && Arrays.equals(path, 0, i + 1, previous, 0, i + 1)) {
+                        removeLinks(path[i], path[i + 1]);
+                    }
+                }
+                for (int j = 0; j < i; j++) {
+                    routerStamps[previous[j]] = stamp;
+                }
+                int[] spurPath = shortestPath(spur, destination);
+                if (spurPath != null) {
+                    int[] path = Arrays.copyOf(previous, i + spurPath.length);
+                    System.arraycopy(spurPath, 0, path, i, spurPath.length);
+                    addCandidate(candidates, paths, path, rootCost + distances[destination]);
+                }
+                rootCost += linkWeight(previous[i], previous[i + 1]);
+            }
+            Candidate next = candidates.poll();
+            if (next == null) {
+                break;
+            }
+            paths.add(next.path);
+        }
+        return paths;
+    }
+
+    private static void addCandidate(PriorityQueue<Candidate> candidates, List<int[]> paths, int[] path, long cost) {
+        for (int[] accepted : paths) {
+            if (Arrays.equals(accepted, path)) {
+                return;
+            }
+        }
+        for (Candidate candidate : candidates) {
+            if (Arrays.equals(candidate.path, path)) {
+                return;
+            }
+        }
+        candidates.add(new Candidate(path, cost));
+    }
+
+    // Cost of a path found by find()
+    public long cost(int[] path) {
+        long cost = 0;
+        for (int i = 0; i + 1 < path.length; i++) {
+            cost += linkWeight(path[i], path[i + 1]);
+        }
+        return cost;
+    }
+
+    // Cheapest live link from u to v; paths only ever step along live links
+    private int linkWeight(int u, int v) {
+        int best = CompactGraph.NO_LINK;
+        for (int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++) {
+            if (graph.target(e) == v) {
+                best = Math.min(best, graph.weight(e));
+            }
+        }
+        return best;
+    }
+
+    private void removeLinks(int u, int v) {
+        for (int e = graph.firstEdge(u), end = graph.endEdge(u); e < end; e++) {
+            if (graph.target(e) == v) {
+                linkStamps[e] = stamp;
+            }
+        }
+    }
+
+    // Dijkstra from source avoiding removed routers and links; the path, or null if there is none
+    private int[] shortestPath(int source, int destination) {
+        int n = graph.size();
+        Arrays.fill(distances, Dijkstra.UNREACHABLE);
+        distances[source] = 0;
+        parents[source] = -1;
+        heap.clear(n);
+        heap.insertOrDecrease(source, 0);
+        while (!heap.isEmpty()) {
+            int current = heap.pollMin();
+            if (current == destination) {
+                break;
+            }
+            for (int e = graph.firstEdge(current), end = graph.endEdge(current); e < end; e++) {
+                int weight = graph.weight(e);
+                int neighbor = graph.target(e);
+                if (weight == CompactGraph.NO_LINK || linkStamps[e] == stamp || routerStamps[neighbor] == stamp) {
+                    continue;
+                }
+                int newDistance = distances[current] + weight;
+                if (newDistance < distances[neighbor]) {
+                    distances[neighbor] = newDistance;
+                    parents[neighbor] = current;
+                    heap.insertOrDecrease(neighbor, newDistance);
+                }
+            }
+        }
+        if (distances[destination] == Dijkstra.UNREACHABLE) {
+            return null;
+        }
+        int length = 1;
+        for (int router = destination; router != source; router = parents[router]) {
+            length++;
+        }
+        int[] path = new int[length];
+        int router = destination;
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = router;
+            router = parents[router];
+        }
+        return path;
+    }
+}
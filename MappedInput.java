@@ -0,0 +1,300 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// MappedInput class: reads numbers straight out of a memory-mapped file
+// The file is mapped in windows of up to 256 MB that slide forward as it is read, so files beyond
+// the 2 GB limit of a single mapping work too. Text is parsed byte by byte without building a
+// String per line or token; '#' starts a comment that runs to the end of the line. Binary fields
+// are big-endian, and arrays of them are copied out a window at a time, e.g. for checkpoints.
+class MappedInput implements AutoCloseable {
+    private static final long WINDOW_BYTES = 1L << 28;
+    // Longest token or binary field; a window is remapped before fewer bytes than this remain
+    private static final int MAX_TOKEN_BYTES = 64;
+    private static final int EOF = -1;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer buffer;
+    private long windowStart;
+    private long line = 1;
+
+    public MappedInput(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        map(0);
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, fileSize - start));
+        buffer.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    private long position() {
+        return windowStart + buffer.position();
+    }
+
+    // Slides the window so that at least MAX_TOKEN_BYTES (or the rest of the file) are mapped
+    private void ensure() throws IOException {
+        if (buffer.remaining() < MAX_TOKEN_BYTES && windowStart + buffer.limit() < fileSize) {
+            map(position());
+        }
+    }
+
+    private int peek() throws IOException {
+        ensure();
+        return buffer.hasRemaining() ? buffer.get(buffer.position()) & 0xFF : EOF;
+    }
+
+    public boolean startsWith(int magic) throws IOException {
+        ensure();
+        return buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == magic;
+    }
+
+    // Skips blank lines and comments; returns false at the end of the file
+    public boolean nextRecord() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c == EOF) {
+                return false;
+            }
+            if (c == '#') {
+                skipLine();
+            } else if (c == '\n') {
+                buffer.get();
+                line++;
+            } else if (c == ' ' || c == '\t' || c == '\r' || c == ',') {
+                buffer.get();
+            } else {
+                return true;
+            }
+        }
+    }
+
+    // True if another field follows on the current line
+    public boolean hasField() throws IOException {
+        skipSpaces();
+        int c = peek();
+        return c != EOF && c != '\n' && c != '#';
+    }
+
+    public void skipLine() throws IOException {
+        int c;
+        while ((c = peek()) != EOF) {
+            buffer.get();
+            if (c == '\n') {
+                line++;
+                return;
+            }
+        }
+    }
+
+    // Ends a record: only spaces or a comment may follow on the line
+    public void endRecord() throws IOException {
+        if (hasField()) {
+            throw error("Unexpected field");
+        }
+        skipLine();
+    }
+
+    private void skipSpaces() throws IOException {
+        int c;
+        while ((c = peek()) == ' ' || c == '\t' || c == '\r' || c == ',') {
+            buffer.get();
+        }
+    }
+
+    // Consumes the keyword if it is the next field
+    public boolean keyword(byte[] word) throws IOException {
+        skipSpaces();
+        ensure();
+        int p = buffer.position();
+        if (buffer.limit() - p < word.length) {
+            return false;
+        }
+        for (int i = 0; i < word.length; i++) {
+            if (buffer.get(p + i) != word[i]) {
+                return false;
+            }
+        }
+        if (p + word.length < buffer.limit() && !isDelimiter(buffer.get(p + word.length) & 0xFF)) {
+            return false;
+        }
+        buffer.position(p + word.length);
+        return true;
+    }
+
+    public long nextLong() throws IOException {
+        skipSpaces();
+        ensure();
+        boolean negative = false;
+        int c = peek();
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            buffer.get();
+            c = peek();
+        }
+        if (c < '0' || c > '9') {
+            throw error("Expected a number");
+        }
+        long value = 0;
+        while (c >= '0' && c <= '9') {
+            if (value > (Long.MAX_VALUE - (c - '0')) / 10) {
+                throw error("Number out of range");
+            }
+            value = value * 10 + (c - '0');
+            buffer.get();
+            c = peek();
+        }
+        if (!isDelimiter(c)) {
+            throw error("Malformed number");
+        }
+        return negative ? -value : value;
+    }
+
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw error("Number out of range");
+        }
+        return (int) value;
+    }
+
+    // Plain decimal such as 0.25 or -3; exponents are not supported
+    public double nextDouble() throws IOException {
+        skipSpaces();
+        ensure();
+        boolean negative = false;
+        int c = peek();
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            buffer.get();
+            c = peek();
+        }
+        long mantissa = 0;
+        double scale = 1;
+        boolean digits = false;
+        boolean fraction = false;
+        while ((c >= '0' && c <= '9') || (c == '.' && !fraction)) {
+            if (c == '.') {
+                fraction = true;
+            } else if (mantissa < Long.MAX_VALUE / 10) {
+                mantissa = mantissa * 10 + (c - '0');
+                digits = true;
+                if (fraction) {
+                    scale *= 10;
+                }
+            } else if (!fraction) {
+                throw error("Number out of range");
+            }
+            buffer.get();
+            c = peek();
+        }
+        double value = mantissa / scale;
+        if (!digits || !isDelimiter(c)) {
+            throw error("Expected a decimal number");
+        }
+        return negative ? -value : value;
+    }
+
+    // Big-endian binary fields
+    public int readInt() throws IOException {
+        ensure();
+        if (buffer.remaining() < 4) {
+            throw error("Unexpected end of file");
+        }
+        return buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        ensure();
+        if (buffer.remaining() < 8) {
+            throw error("Unexpected end of file");
+        }
+        return buffer.getLong();
+    }
+
+    public boolean atEnd() throws IOException {
+        return peek() == EOF;
+    }
+
+    public byte readByte() throws IOException {
+        ensure();
+        if (!buffer.hasRemaining()) {
+            throw error("Unexpected end of file");
+        }
+        return buffer.get();
+    }
+
+    public double readDouble() throws IOException {
+        ensure();
+        if (buffer.remaining() < 8) {
+            throw error("Unexpected end of file");
+        }
+        return buffer.getDouble();
+    }
+
+    // Bulk reads of big-endian arrays, a window at a time
+    public void readInts(int[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, bulkRemaining(4));
+            buffer.asIntBuffer().get(values, offset, count);
+            buffer.position(buffer.position() + 4 * count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    public void readLongs(long[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, bulkRemaining(8));
+            buffer.asLongBuffer().get(values, offset, count);
+            buffer.position(buffer.position() + 8 * count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    // One byte per value
+    public void readBooleans(boolean[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, bulkRemaining(1));
+            for (int i = 0; i < count; i++) {
+                values[offset + i] = buffer.get() != 0;
+            }
+            offset += count;
+            length -= count;
+        }
+    }
+
+    // Whole values of the given width left in the window, remapping it first if there are none
+    private int bulkRemaining(int width) throws IOException {
+        if (buffer.remaining() < width) {
+            ensure();
+        }
+        int count = buffer.remaining() / width;
+        if (count == 0) {
+            throw error("Unexpected end of file");
+        }
+        return count;
+    }
+
+    private static boolean isDelimiter(int c) {
+        return c == EOF || c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == ',' || c == '#';
+    }
+
+    public IOException error(String message) {
+        return new IOException(path + ":" + line + ": " + message + " (offset " + position() + ")");
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// NetworkFiles class: loads topologies and traffic for batch runs
+// Text topology, one record per line ('#' comments, commas or blanks between fields):
+//   router <id> <bucketCapacity> <tokenRate>
+//   red <id> <bucketCapacity> <tokenRate> <minThreshold> <maxThreshold> <dropProbability> <averageQueueSize>
+//   gred and ared, with the same fields, for gentle and adaptive RED
+//   codel <id> <bucketCapacity> <tokenRate> <targetMillis> <intervalMillis>
+//   <sourceId> <destinationId> <weight> [<bandwidthMbps> <delayMillis>]
+// Routers that only appear in links get the default bucket capacity and token rate, and links
+// without bandwidth and delay get the graph's default link properties. The binary topology
+// ("NSTG") holds the same records and is written by writeBinaryTopology; version 1 files, which
+// predate link properties, still load.
+// Traffic, one packet per line: <time in microseconds> <sourceId> <destinationId> <sizeBytes> [<flowId>]
+class NetworkFiles {
+    private static final int TOPOLOGY_MAGIC = 0x4E535447; // "NSTG"
+    private static final int TOPOLOGY_VERSION = 2;
+    private static final int TOPOLOGY_VERSION_WITHOUT_LINK_PROPERTIES = 1;
+    private static final double BITS_PER_MEGABIT = 1e6;
+    private static final byte KIND_ROUTER = 0;
+    private static final byte KIND_RED = 1;
+    private static final byte KIND_GENTLE_RED = 2;
+    private static final byte KIND_ADAPTIVE_RED = 3;
+    private static final byte KIND_CODEL = 4;
+    // Longest binary router record, that of a RED router
+    static final int ROUTER_RECORD_BYTES = 4 * 3 + 1 + 8 * 4;
+    private static final byte[] ROUTER = "router".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RED = "red".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GENTLE_RED = "gred".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ADAPTIVE_RED = "ared".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CODEL = "codel".getBytes(StandardCharsets.US_ASCII);
+
+    // Receives the packets of a traffic file, e.g. Simulator::inject
+    interface TrafficSink {
+        void inject(int source, int destination, int sizeBytes, int flowId, long time);
+    }
+
+    private NetworkFiles() {
+    }
+
+    // Adds the routers and links of a text or binary topology file to the graph
+    public static void loadTopology(Path path, Graph graph, int defaultBucketCapacity, int defaultTokenRate)
+            throws IOException {
+        try (MappedInput in = new MappedInput(path)) {
+            if (in.startsWith(TOPOLOGY_MAGIC)) {
+                loadBinaryTopology(in, graph);
+            } else {
+                loadTextTopology(in, graph, defaultBucketCapacity, defaultTokenRate);
+            }
+        }
+    }
+
+    private static void loadTextTopology(MappedInput in, Graph graph, int defaultBucketCapacity, int defaultTokenRate)
+            throws IOException {
+        // Links are buffered so router records may appear anywhere in the file
+        int[] links = new int[3 * 1024];
+        long[] bandwidths = null;
+        int[] delays = null;
+        int linkCount = 0;
+        while (in.nextRecord()) {
+            if (in.keyword(ROUTER)) {
+                int id = in.nextInt();
+                graph.addRouter(id, in.nextInt(), in.nextInt());
+            } else if (in.keyword(RED)) {
+                int id = in.nextInt();
+                int bucketCapacity = in.nextInt();
+                int tokenRate = in.nextInt();
+                graph.addRedRouter(id, bucketCapacity, tokenRate, in.nextDouble(), in.nextDouble(), in.nextDouble(),
+                        in.nextDouble());
+            } else if (in.keyword(GENTLE_RED)) {
+                int id = in.nextInt();
+                int bucketCapacity = in.nextInt();
+                int tokenRate = in.nextInt();
+                graph.addGentleRedRouter(id, bucketCapacity, tokenRate, in.nextDouble(), in.nextDouble(),
+                        in.nextDouble(), in.nextDouble());
+            } else if (in.keyword(ADAPTIVE_RED)) {
+                int id = in.nextInt();
+                int bucketCapacity = in.nextInt();
+                int tokenRate = in.nextInt();
+                graph.addAdaptiveRedRouter(id, bucketCapacity, tokenRate, in.nextDouble(), in.nextDouble(),
+                        in.nextDouble(), in.nextDouble());
+            } else if (in.keyword(CODEL)) {
+                int id = in.nextInt();
+                int bucketCapacity = in.nextInt();
+                int tokenRate = in.nextInt();
+                graph.addCodelRouter(id, bucketCapacity, tokenRate, in.nextDouble(), in.nextDouble());
+            } else {
+                if (3 * linkCount + 3 > links.length) {
+                    links = Arrays.copyOf(links, links.length * 2);
+                }
+                links[3 * linkCount] = in.nextInt();
+                links[3 * linkCount + 1] = in.nextInt();
+                links[3 * linkCount + 2] = in.nextInt();
+                if (in.hasField()) {
+                    // Allocated at the first link that has its own properties; the others keep -1
+                    if (bandwidths == null) {
+                        bandwidths = new long[links.length / 3];
+                        delays = new int[links.length / 3];
+                        Arrays.fill(bandwidths, 0, linkCount, -1);
+                        Arrays.fill(delays, 0, linkCount, -1);
+                    }
+                    bandwidths[linkCount] = Math.round(in.nextDouble() * BITS_PER_MEGABIT);
+                    delays[linkCount] = (int) Math.round(in.nextDouble() * 1000);
+                    if (bandwidths[linkCount] <= 0 || delays[linkCount] < 0) {
+                        throw in.error("Link bandwidth must be positive and delay non-negative");
+                    }
+                } else if (bandwidths != null) {
+                    bandwidths[linkCount] = -1;
+                    delays[linkCount] = -1;
+                }
+                linkCount++;
+                if (bandwidths != null && linkCount == bandwidths.length) {
+                    bandwidths = Arrays.copyOf(bandwidths, 2 * linkCount);
+                    delays = Arrays.copyOf(delays, 2 * linkCount);
+                }
+            }
+            in.endRecord();
+        }
+        for (int i = 0; i < 2 * linkCount; i++) {
+            int id = links[3 * (i >> 1) + (i & 1)];
+            if (graph.getRouter(id) == null) {
+                graph.addRouter(id, defaultBucketCapacity, defaultTokenRate);
+            }
+        }
+        graph.addEdges(links, linkCount, bandwidths, delays);
+    }
+
+    private static void loadBinaryTopology(MappedInput in, Graph graph) throws IOException {
+        in.readInt();
+        int version = in.readInt();
+        if (version != TOPOLOGY_VERSION && version != TOPOLOGY_VERSION_WITHOUT_LINK_PROPERTIES) {
+            throw in.error("Unsupported topology version " + version);
+        }
+        int routerCount = in.readInt();
+        for (int i = 0; i < routerCount; i++) {
+            readRouter(in, graph);
+        }
+        long linkCount = in.readLong();
+        if (linkCount > Integer.MAX_VALUE / 3) {
+            throw in.error("Too many links: " + linkCount);
+        }
+        int[] links = new int[3 * (int) linkCount];
+        if (version == TOPOLOGY_VERSION_WITHOUT_LINK_PROPERTIES) {
+            for (int i = 0; i < links.length; i++) {
+                links[i] = in.readInt();
+            }
+            graph.addEdges(links, (int) linkCount);
+            return;
+        }
+        long[] bandwidths = new long[(int) linkCount];
+        int[] delays = new int[(int) linkCount];
+        for (int i = 0; i < linkCount; i++) {
+            links[3 * i] = in.readInt();
+            links[3 * i + 1] = in.readInt();
+            links[3 * i + 2] = in.readInt();
+            bandwidths[i] = in.readLong();
+            delays[i] = in.readInt();
+            if (bandwidths[i] <= 0 || delays[i] < 0) {
+                throw in.error("Invalid bandwidth or delay on link " + i);
+            }
+        }
+        graph.addEdges(links, (int) linkCount, bandwidths, delays);
+    }
+
+    // Adds the router of one binary router record to the graph; also used by Checkpoint
+    static void readRouter(MappedInput in, Graph graph) throws IOException {
+        int id = in.readInt();
+        int bucketCapacity = in.readInt();
+        int tokenRate = in.readInt();
+        byte kind = in.readByte();
+        if (kind == KIND_RED) {
+            graph.addRedRouter(id, bucketCapacity, tokenRate, in.readDouble(), in.readDouble(), in.readDouble(),
+                    in.readDouble());
+        } else if (kind == KIND_GENTLE_RED) {
+            graph.addGentleRedRouter(id, bucketCapacity, tokenRate, in.readDouble(), in.readDouble(),
+                    in.readDouble(), in.readDouble());
+        } else if (kind == KIND_ADAPTIVE_RED) {
+            graph.addAdaptiveRedRouter(id, bucketCapacity, tokenRate, in.readDouble(), in.readDouble(),
+                    in.readDouble(), in.readDouble());
+        } else if (kind == KIND_CODEL) {
+            graph.addCodelRouter(id, bucketCapacity, tokenRate, in.readDouble(), in.readDouble());
+        } else if (kind == KIND_ROUTER) {
+            graph.addRouter(id, bucketCapacity, tokenRate);
+        } else {
+            throw in.error("Unknown router kind " + kind);
+        }
+    }
+
+    // Binary router record: id, token bucket and queue management parameters
+    static void writeRouter(ByteBuffer buffer, Router router) {
+        TokenBucket bucket = router.getTokenBucket();
+        buffer.putInt(router.getId()).putInt(bucket.getBucketCapacity()).putInt(bucket.getTokenRate());
+        if (router instanceof RedRouter) {
+            RedRouter red = (RedRouter) router;
+            byte kind = red instanceof AdaptiveRedRouter ? KIND_ADAPTIVE_RED
+                    : red.isGentle() ? KIND_GENTLE_RED : KIND_RED;
+            buffer.put(kind)
+                    .putDouble(red.getMinThreshold())
+                    .putDouble(red.getMaxThreshold())
+                    .putDouble(red.getDropProbability())
+                    .putDouble(red.getInitialAverageQueueSize());
+        } else if (router instanceof CodelRouter) {
+            CodelRouter codel = (CodelRouter) router;
+            buffer.put(KIND_CODEL).putDouble(codel.getTargetMillis()).putDouble(codel.getIntervalMillis());
+        } else {
+            buffer.put(KIND_ROUTER);
+        }
+    }
+
+    // Writes the graph in the binary topology format, which loads without any text parsing
+    // Links come from the compact view, so generated topologies need no Edge objects
+    public static void writeBinaryTopology(Graph graph, Path path) throws IOException {
+        CompactGraph compact = graph.getCompactGraph();
+        int n = compact.size();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            buffer.putInt(TOPOLOGY_MAGIC).putInt(TOPOLOGY_VERSION).putInt(n);
+            long linkCount = 0;
+            for (int i = 0; i < n; i++) {
+                Router router = graph.getRouterByIndex(i);
+                for (int e = compact.firstEdge(i), end = compact.endEdge(i); e < end; e++) {
+                    linkCount += compact.weight(e) != CompactGraph.NO_LINK ? 1 : 0;
+                }
+                flushIfFull(channel, buffer, ROUTER_RECORD_BYTES);
+                writeRouter(buffer, router);
+            }
+            flushIfFull(channel, buffer, 8);
+            buffer.putLong(linkCount);
+            for (int i = 0; i < n; i++) {
+                for (int e = compact.firstEdge(i), end = compact.endEdge(i); e < end; e++) {
+                    if (compact.weight(e) != CompactGraph.NO_LINK) {
+                        flushIfFull(channel, buffer, 4 * 3 + 8 + 4);
+                        buffer.putInt(compact.routerId(i))
+                                .putInt(compact.routerId(compact.target(e)))
+                                .putInt(compact.weight(e))
+                                .putLong(compact.bandwidth(e))
+                                .putInt(compact.delayMicros(e));
+                    }
+                }
+            }
+            flushIfFull(channel, buffer, buffer.capacity());
+        }
+    }
+
+    private static void flushIfFull(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Passes every packet of a traffic file to the sink, translating router ids to indices;
+    // returns the number of packets read
+    public static long loadTraffic(Path path, Graph graph, TrafficSink sink) throws IOException {
+        long count = 0;
+        try (MappedInput in = new MappedInput(path)) {
+            while (in.nextRecord()) {
+                long time = in.nextLong();
+                int source = routerIndex(in, graph, in.nextInt());
+                int destination = routerIndex(in, graph, in.nextInt());
+                int sizeBytes = in.nextInt();
+                int flowId = in.hasField() ? in.nextInt() : 0;
+                if (time < 0 || sizeBytes < 0) {
+                    throw in.error("Negative time or size");
+                }
+                in.endRecord();
+                sink.inject(source, destination, sizeBytes, flowId, time);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int routerIndex(MappedInput in, Graph graph, int id) throws IOException {
+        Router router = graph.getRouter(id);
+        if (router == null) {
+            throw in.error("Unknown router " + id);
+        }
+        return router.getIndex();
+    }
+}
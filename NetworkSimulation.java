@@ -1,23 +1,48 @@
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryUsage;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 // Router class 
+// Every link has an output queue of its own (see OutputPorts), so each link sends at its own
+// bandwidth. The queues share one buffer of getQueueCapacity() packets, QUEUE_CAPACITY unless set
+// otherwise, which is what admission, RED and CoDel look at.
 class Router {
     private int id;
-    private List<Edge> outgoingEdges;
-    private Queue<Packet> packetQueue;
+    private int index;
+    private ArrayList<Edge> outgoingEdges;
+    private OutputPorts ports;
+    // Packets buffered over all output queues
+    private int queueLength;
     protected static final int QUEUE_CAPACITY = 100;
+    private int queueCapacity = QUEUE_CAPACITY;
+    // Time to look up and switch a packet, spent on the output port before serialization
+    static final long PROCESSING_DELAY_MILLIS = 5;
     private long totalDelay;
     private int packetsForwarded;
     private int packetsDropped;
+    // Share of packetsDropped discarded early by active queue management (RED, CoDel); the rest
+    // found the queue full
+    private int earlyDrops;
     private TokenBucket tokenBucket;
+    private ForwardingTable forwardingTable;
+    // Explicit paths shared by all routers when k-shortest-paths routing is on, else null
+    private PathTable pathTable;
+    // Answers next-hop queries when routing is computed on demand instead of into forwardingTable
+    private OnDemandRouting onDemandRouting;
+    // Simulated per-hop latency (arrival to end of transmission, in simulator ticks) and queue
+    // length seen by arriving packets; created on first use so idle routers cost nothing
+    private Histogram latencyHistogram;
+    private Histogram queueHistogram;
+    protected TraceLog trace = TraceLog.DISABLED;
 
     public Router(int id, int bucketCapacity, int tokenRate) {
         this.id = id;
         this.outgoingEdges = new ArrayList<>();
-        this.packetQueue = new LinkedList<>();
         this.totalDelay = 0;
         this.packetsForwarded = 0;
         this.packetsDropped = 0;
@@ -28,6 +53,15 @@ class Router {
         return id;
     }
 
+    // Dense position of this router in the Graph's compact view
+    public int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
     public List<Edge> getOutgoingEdges() {
         return outgoingEdges;
     }
@@ -36,68 +70,249 @@ class Router {
         outgoingEdges.add(edge);
     }
 
+    void ensureEdgeCapacity(int edges) {
+        outgoingEdges.ensureCapacity(edges);
+    }
+
+    // Removes every link towards the destination and returns how many were removed
+    public int removeOutgoingEdges(Router destination) {
+        int before = outgoingEdges.size();
+        outgoingEdges.removeIf(edge -> edge.getDestination() == destination);
+        return before - outgoingEdges.size();
+    }
+
     //function for enquing packets
-    public boolean enqueuePacket(Packet packet) {
-        if (packetQueue.size() < QUEUE_CAPACITY) {
-            packetQueue.add(packet);
+    // Queues the packet on the port towards its next hop; a packet without a route is dropped,
+    // and one addressed to this router is not queued at all
+    public boolean enqueuePacket(PacketTable packets, int packet) {
+        int destination = packets.destination(packet);
+        if (destination == index) {
+            return false;
+        }
+        int port = outputPort(packets, packet);
+        if (port == OutputPorts.NO_PORT) {
+            if (trace.drops()) {
+                trace.record(TraceLog.DROP_NO_ROUTE, id, packets, packet, -1);
+            }
+            packetsDropped++;
+            return false;
+        }
+        return enqueuePacket(packets, packet, port);
+    }
+
+    // Queues the packet on one of this router's output ports unless the shared buffer is full
+    public boolean enqueuePacket(PacketTable packets, int packet, int port) {
+        if (queueLength < queueCapacity) {
+            ports.add(packets, port, packet);
+            queueLength++;
             return true;
         } else {
-            System.out.println("Queue at router " + id + " is full. Dropping packet: " + packet);
+            if (trace.drops()) {
+                trace.record(TraceLog.DROP_QUEUE_FULL, id, packets, packet, -1);
+            }
             packetsDropped++;
+            ports.countDrop(port);
             return false;
         }
     }
+    // Queues the packet without admission control, e.g. to set up a given queue length
+    void appendPacket(PacketTable packets, int packet, int port) {
+        ports.add(packets, port, packet);
+        queueLength++;
+    }
+
      //function for dequeing packets
-    public Packet dequeuePacket() {
-        return packetQueue.poll();
-    }
-
-    public Queue<Packet> getPacketQueue() {
-        return packetQueue;
-    }
-
-    //main function for processing packets
-    public void forwardPackets(Map<Router, Map<Router, Integer>> shortestPaths) {
-        List<Packet> forwardedPackets = new ArrayList<>();
-        for (Packet packet : packetQueue) {
-            if (tokenBucket.tryConsume(1)) { // Consume one token per packet
-                Router nextRouter = getNextRouter(packet.getDestination(), shortestPaths);
-                if (nextRouter != null) {
-                    System.out.println(
-                            "Forwarding " + packet + " from router " + id + " to router " + nextRouter.getId());
-                    if (nextRouter.enqueuePacket(packet)) {
-                        forwardedPackets.add(packet);
-                        packetsForwarded++;
-                        totalDelay += calculateDelay(packet);
-                    }
-                }
-            } else {
-                System.out.println("Insufficient tokens at router " + id + " for packet: " + packet);
-            }
+    public int dequeuePacket(PacketTable packets, int port) {
+        int packet = ports.poll(packets, port);
+        if (packet != PacketTable.NO_PACKET) {
+            queueLength--;
         }
-        packetQueue.removeAll(forwardedPackets);
+        return packet;
     }
-    //function for getting next router
-    private Router getNextRouter(Router destination, Map<Router, Map<Router, Integer>> shortestPaths) {
-        int minDist = Integer.MAX_VALUE;
-        Router nextRouter = null;
-        for (Edge edge : outgoingEdges) {
-            Router neighbor = edge.getDestination();
-            int dist = shortestPaths.get(this).get(destination);
-            if (dist < minDist) {
-                minDist = dist;
-                nextRouter = neighbor;
+
+    // Asked before the head packet of the port is transmitted, now in simulator ticks; true to drop
+    // it instead. Plain and RED routers decide on arrival, see CodelRouter for one that decides here.
+    public boolean dropAtHead(PacketTable packets, int packet, int port, long now) {
+        return false;
+    }
+
+    public int peekPacket(int port) {
+        return ports.peek(port);
+    }
+
+    // Port towards the next hop for the destination index, or OutputPorts.NO_PORT
+    public int outputPort(int destination) {
+        return portTo(nextHopIndex(destination));
+    }
+
+    // Port towards the packet's next hop, which under multipath routing depends on its flow
+    public int outputPort(PacketTable packets, int packet) {
+        return portTo(nextHopIndex(packets, packet));
+    }
+
+    private int portTo(int next) {
+        if (next == ForwardingTable.NO_ROUTE) {
+            return OutputPorts.NO_PORT;
+        }
+        if (ports == null) {
+            throw new IllegalStateException("Router " + id + " has no output ports; see Graph.getOutputPorts");
+        }
+        return ports.portTo(index, next);
+    }
+
+    public TokenBucket getTokenBucket() {
+        return tokenBucket;
+    }
+
+    public void setTraceLog(TraceLog trace) {
+        this.trace = trace;
+    }
+
+    public OutputPorts getOutputPorts() {
+        return ports;
+    }
+
+    // Routers that draw random numbers derive their generator from the run's seed and their id
+    void setRandomSeed(long seed) {
+    }
+
+    // Attaches the output queues built for the current topology; anything still queued on the
+    // previous ones is forgotten
+    void setOutputPorts(OutputPorts ports) {
+        this.ports = ports;
+        this.queueLength = 0;
+    }
+
+    // Packets buffered at this router, over all its output ports
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    // Size of the buffer shared by the output queues; set before packets arrive
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive, got " + queueCapacity);
+        }
+        this.queueCapacity = queueCapacity;
+        this.queueHistogram = null;
+    }
+
+    public ForwardingTable getForwardingTable() {
+        return forwardingTable;
+    }
+
+    public void setForwardingTable(ForwardingTable forwardingTable) {
+        this.forwardingTable = forwardingTable;
+    }
+
+    public PathTable getPathTable() {
+        return pathTable;
+    }
+
+    public void setPathTable(PathTable pathTable) {
+        this.pathTable = pathTable;
+    }
+
+    public OnDemandRouting getOnDemandRouting() {
+        return onDemandRouting;
+    }
+
+    public void setOnDemandRouting(OnDemandRouting onDemandRouting) {
+        this.onDemandRouting = onDemandRouting;
+    }
+
+    // Index of the next router towards the destination index, or ForwardingTable.NO_ROUTE
+    public int nextHopIndex(int destination) {
+        if (destination == index) {
+            return ForwardingTable.NO_ROUTE;
+        }
+        if (forwardingTable == null) {
+            return onDemandRouting != null ? onDemandRouting.nextHop(index, destination) : ForwardingTable.NO_ROUTE;
+        }
+        return forwardingTable.nextHop(destination);
+    }
+
+    // Same as nextHopIndex(int) for a packet in flight: a packet on an explicit path follows it,
+    // otherwise its flow hash picks among equal-cost next hops
+    public int nextHopIndex(PacketTable packets, int packet) {
+        int destination = packets.destination(packet);
+        if (destination == index) {
+            return ForwardingTable.NO_ROUTE;
+        }
+        if (forwardingTable == null) {
+            return onDemandRouting != null ? onDemandRouting.nextHop(index, destination) : ForwardingTable.NO_ROUTE;
+        }
+        if (pathTable != null) {
+            int next = pathTable.nextHop(packets.source(packet), destination, packets.flowHash(packet),
+                    packets.hopCount(packet), index);
+            if (next != ForwardingTable.NO_ROUTE) {
+                return next;
             }
         }
-        return nextRouter;
+        return forwardingTable.nextHop(destination, ForwardingTable.rehash(packets.flowHash(packet), index));
+    }
+
+    // Accounts a packet that finished transmission on one of this router's links, with the
+    // transmission and propagation time of that link
+    public void recordForward(long delayMillis) {
+        packetsForwarded++;
+        totalDelay += delayMillis;
+    }
+
+    // Same as recordForward(long), plus the ticks the packet spent at this router
+    public void recordForward(long delayMillis, long latencyTicks) {
+        recordForward(delayMillis);
+        if (latencyHistogram == null) {
+            latencyHistogram = newLatencyHistogram();
+        }
+        latencyHistogram.record(latencyTicks);
+    }
+
+    // Queue length seen by a packet arriving at this router
+    public void recordQueueLength(int length) {
+        if (queueHistogram == null) {
+            queueHistogram = new Histogram(queueCapacity, 7);
+        }
+        queueHistogram.record(length);
+    }
+
+    // Latencies in simulator ticks up to 2^40 (about 12 days) to within about 3%
+    static Histogram newLatencyHistogram() {
+        return new Histogram(1L << 40, 6);
+    }
+
+    // Null until a packet has been forwarded
+    public Histogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    // Null until a packet has arrived
+    public Histogram getQueueHistogram() {
+        return queueHistogram;
     }
 
     //metric calculations
-    private long calculateDelay(Packet packet) {
-        long propagationDelay = 10;
-        long transmissionDelay = packet.getData().length() * 2;
-        long processingDelay = 5;
-        return propagationDelay + transmissionDelay + processingDelay;
+    // Ticks the port is busy with a packet: processing plus putting its bits on the port's link
+    public long transmissionTicks(int port, int sizeBytes) {
+        return PROCESSING_DELAY_MILLIS * EventSimulator.TICKS_PER_MILLISECOND
+                + ports.serializationTicks(port, sizeBytes);
+    }
+
+    // Milliseconds the router is busy with a packet on a link of the default bandwidth
+    public long calculateTransmissionDelay(int sizeBytes) {
+        long transmissionDelay = sizeBytes * 8L * 1000 / Edge.DEFAULT_BANDWIDTH;
+        long processingDelay = PROCESSING_DELAY_MILLIS;
+        return transmissionDelay + processingDelay;
+    }
+
+    // Milliseconds of propagation on a link of the default delay
+    public long calculatePropagationDelay() {
+        long propagationDelay = Edge.DEFAULT_DELAY_MICROS / 1000;
+        return propagationDelay;
     }
 
     public double calculateUtilization() {
@@ -119,7 +334,7 @@ class Router {
     }
 
     public int calculateNetworkLoad() {
-        return packetQueue.size();
+        return queueLength;
     }
 
     public long getTotalDelay() {
@@ -133,139 +348,979 @@ class Router {
     public int getPacketsDropped() {
         return packetsDropped;
     }
+
+    public int getEarlyDrops() {
+        return earlyDrops;
+    }
+
+    // Drops because the queue was full, as opposed to early drops by RED or CoDel
+    public int getQueueFullDrops() {
+        return packetsDropped - earlyDrops;
+    }
+
+    protected void recordEarlyDrop() {
+        packetsDropped++;
+        earlyDrops++;
+    }
+
+    // Counters, token bucket and histograms, for a checkpoint; the queued packets belong to the
+    // OutputPorts. Subclasses add their queue management state.
+    void writeState(CheckpointOutput out) throws IOException {
+        out.writeInt(queueCapacity);
+        out.writeInt(queueLength);
+        out.writeLong(totalDelay);
+        out.writeInt(packetsForwarded);
+        out.writeInt(packetsDropped);
+        out.writeInt(earlyDrops);
+        tokenBucket.writeState(out);
+        writeHistogram(out, latencyHistogram);
+        writeHistogram(out, queueHistogram);
+    }
+
+    void readState(MappedInput in) throws IOException {
+        setQueueCapacity(in.readInt());
+        queueLength = in.readInt();
+        totalDelay = in.readLong();
+        packetsForwarded = in.readInt();
+        packetsDropped = in.readInt();
+        earlyDrops = in.readInt();
+        tokenBucket.readState(in);
+        latencyHistogram = readHistogram(in, newLatencyHistogram());
+        queueHistogram = readHistogram(in, new Histogram(queueCapacity, 7));
+    }
+
+    private static void writeHistogram(CheckpointOutput out, Histogram histogram) throws IOException {
+        out.writeByte((byte) (histogram != null ? 1 : 0));
+        if (histogram != null) {
+            histogram.writeState(out);
+        }
+    }
+
+    private static Histogram readHistogram(MappedInput in, Histogram empty) throws IOException {
+        if (in.readByte() == 0) {
+            return null;
+        }
+        empty.readState(in);
+        return empty;
+    }
 }
 
-// RedRouter class
+// RedRouter class: Random Early Detection (Floyd and Jacobson), optionally gentle
+// The average queue length is an EWMA updated on every arrival, avg += weight * (q - avg), and
+// after an idle period it decays as if idle / s packets had found the queue empty, s being the
+// time to send a typical packet. Between the thresholds (in packets) the drop probability pb rises
+// linearly to maxDropProbability, and drops are spread out by count, the arrivals accepted since
+// the last drop: pa = pb / (1 - count * pb). Above maxThreshold every arrival is dropped, or with
+// gentle RED pb keeps rising to 1 at twice maxThreshold.
+// A decision is a few multiply-adds with no division or allocation, and the random numbers come
+// from the router's own SplitMix64, keyed by the run's seed and the router id: only the thread
+// that owns the router draws from it, so it needs no synchronization and a run stays repeatable.
 class RedRouter extends Router {
-    private double minThreshold;
-    private double maxThreshold;
+    // Floyd and Jacobson's recommended weight
+    static final double DEFAULT_QUEUE_WEIGHT = 0.002;
+    // Packet size that turns idle time into missed arrivals
+    static final int TYPICAL_PACKET_BYTES = 64;
+    private static final long NOT_IDLE = Long.MIN_VALUE;
+
+    private final double minThreshold;
+    private final double maxThreshold;
+    private final double initialAverageQueueSize;
+    private final boolean gentle;
     private double dropProbability;
+    // pb per packet of average above minThreshold, and above maxThreshold for gentle RED
+    private double dropSlope;
+    private double gentleSlope;
+    private double queueWeight;
+    // ln(1 - queueWeight) per nanosecond the queue stays empty
+    private double idleDecayPerNano;
     private double averageQueueSize;
-    private Random random;
+    // Arrivals accepted since the last early drop, -1 while the average is below minThreshold
+    private int count = -1;
+    private long idleSince = NOT_IDLE;
+    private final SplitMix64 random;
 
     public RedRouter(int id, int bucketCapacity, int tokenRate, double minThreshold, double maxThreshold,
             double dropProbability, double averageQueueSize) {
+        this(id, bucketCapacity, tokenRate, minThreshold, maxThreshold, dropProbability, averageQueueSize, false);
+    }
+
+    // averageQueueSize is where the moving average starts
+    public RedRouter(int id, int bucketCapacity, int tokenRate, double minThreshold, double maxThreshold,
+            double dropProbability, double averageQueueSize, boolean gentle) {
         super(id, bucketCapacity, tokenRate);
+        if (minThreshold < 0 || maxThreshold <= minThreshold) {
+            throw new IllegalArgumentException("RED thresholds must satisfy 0 <= min < max, got " + minThreshold
+                    + " and " + maxThreshold);
+        }
         this.minThreshold = minThreshold;
         this.maxThreshold = maxThreshold;
-        this.dropProbability = dropProbability;
+        this.initialAverageQueueSize = averageQueueSize;
         this.averageQueueSize = averageQueueSize;
-        this.random = new Random();
+        this.gentle = gentle;
+        this.random = SplitMix64.forKey(0, id);
+        setDropProbability(dropProbability);
+        setQueueWeight(DEFAULT_QUEUE_WEIGHT);
     }
 
     @Override
-    public boolean enqueuePacket(Packet packet) {
-        if (getPacketQueue().size() < QUEUE_CAPACITY) {
-            getPacketQueue().add(packet);
-            return true;
+    public boolean enqueuePacket(PacketTable packets, int packet, int port) {
+        int length = getQueueLength();
+        if (length == 0 && idleSince != NOT_IDLE) {
+            long now = now();
+            long idle = now - idleSince;
+            // A clock switched to simulation time can run backwards; skip the decay then
+            if (idle > 0) {
+                averageQueueSize *= Math.exp(idle * idleDecayPerNano);
+            }
+            idleSince = now;
         } else {
-            double queueSize = getPacketQueue().size();
-            double dropProbability = calculateDropProbability(queueSize);
-            if (random.nextDouble() < dropProbability) {
-                System.out.println("Packet dropped due to RED at router " + getId() + ": " + packet);
-                return false;
-            } else {
-                return super.enqueuePacket(packet);
+            averageQueueSize += queueWeight * (length - averageQueueSize);
+        }
+        if (dropEarly()) {
+            if (trace.drops()) {
+                trace.record(TraceLog.DROP_RED, getId(), packets, packet, -1);
             }
+            recordEarlyDrop();
+            getOutputPorts().countDrop(port);
+            return false;
+        }
+        if (!super.enqueuePacket(packets, packet, port)) {
+            // A forced drop restarts the spacing like an early one
+            count = 0;
+            return false;
         }
+        idleSince = NOT_IDLE;
+        return true;
     }
 
-    private double calculateDropProbability(double currentQueueSize) {
-        if (currentQueueSize < minThreshold * averageQueueSize) {
-            return 0.0;
-        } else if (currentQueueSize < maxThreshold * averageQueueSize) {
-            return dropProbability * (currentQueueSize - minThreshold * averageQueueSize)
-                    / (averageQueueSize * (maxThreshold - minThreshold));
+    private boolean dropEarly() {
+        double average = averageQueueSize;
+        if (average < minThreshold) {
+            count = -1;
+            return false;
+        }
+        double probability;
+        if (average < maxThreshold) {
+            probability = (average - minThreshold) * dropSlope;
+        } else if (gentle && average < 2 * maxThreshold) {
+            probability = dropProbability + (average - maxThreshold) * gentleSlope;
         } else {
-            return dropProbability;
+            count = 0;
+            return true;
+        }
+        count++;
+        // random < pb / (1 - count * pb), multiplied out
+        double spacing = 1.0 - count * probability;
+        if (spacing <= 0.0 || random.nextDouble() * spacing < probability) {
+            count = 0;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int dequeuePacket(PacketTable packets, int port) {
+        int packet = super.dequeuePacket(packets, port);
+        if (getQueueLength() == 0) {
+            // An average of zero has nothing to decay, so the clock is left alone
+            idleSince = averageQueueSize > 0 ? now() : NOT_IDLE;
         }
+        return packet;
+    }
+
+    // Clock of the router's token bucket, which the event simulator drives in simulation time
+    protected long now() {
+        return getTokenBucket().getTimeSource().nanoTime();
+    }
+
+    // Nanoseconds to send a TYPICAL_PACKET_BYTES packet
+    protected long typicalPacketNanos() {
+        return calculateTransmissionDelay(TYPICAL_PACKET_BYTES) * 1_000_000L;
+    }
+
+    protected void setDropProbability(double dropProbability) {
+        if (dropProbability < 0 || dropProbability > 1) {
+            throw new IllegalArgumentException("RED drop probability must be within [0, 1], got " + dropProbability);
+        }
+        this.dropProbability = dropProbability;
+        this.dropSlope = dropProbability / (maxThreshold - minThreshold);
+        this.gentleSlope = (1.0 - dropProbability) / maxThreshold;
+    }
+
+    protected void setQueueWeight(double queueWeight) {
+        this.queueWeight = queueWeight;
+        this.idleDecayPerNano = Math.log1p(-queueWeight) / typicalPacketNanos();
+    }
+
+    public double getMinThreshold() {
+        return minThreshold;
+    }
+
+    public double getMaxThreshold() {
+        return maxThreshold;
+    }
+
+    // Current maximum drop probability (max_p), which Adaptive RED tunes while running
+    public double getDropProbability() {
+        return dropProbability;
+    }
+
+    // Current moving average of the queue length
+    public double getAverageQueueSize() {
+        return averageQueueSize;
+    }
+
+    public double getInitialAverageQueueSize() {
+        return initialAverageQueueSize;
+    }
+
+    public double getQueueWeight() {
+        return queueWeight;
+    }
+
+    public boolean isGentle() {
+        return gentle;
+    }
+
+    public SplitMix64 getRandom() {
+        return random;
+    }
+
+    @Override
+    void setRandomSeed(long seed) {
+        random.setState(SplitMix64.forKey(seed, getId()).getState());
+    }
+
+    @Override
+    void writeState(CheckpointOutput out) throws IOException {
+        super.writeState(out);
+        out.writeDouble(dropProbability);
+        out.writeDouble(averageQueueSize);
+        out.writeInt(count);
+        out.writeLong(idleSince);
+        out.writeLong(random.getState());
+    }
+
+    @Override
+    void readState(MappedInput in) throws IOException {
+        super.readState(in);
+        setDropProbability(in.readDouble());
+        averageQueueSize = in.readDouble();
+        count = in.readInt();
+        idleSince = in.readLong();
+        random.setState(in.readLong());
     }
 }
 
 // Graph class 
 class Graph {
     private Map<Integer, Router> routers;
+    private List<Router> routersByIndex;
+    private CompactGraph compactGraph;
+    private OutputPorts outputPorts;
+    private DynamicShortestPaths dynamicRoutes;
+    // Kept converged on link changes until other forwarding tables are installed
+    private DistanceVectorRouting distanceVectors;
+    private OnDemandRouting onDemandRoutes;
+    private AdaptiveRouting adaptiveRoutes;
+    // Given to links added without a bandwidth and delay of their own
+    private long defaultBandwidth = Edge.DEFAULT_BANDWIDTH;
+    private int defaultDelayMicros = Edge.DEFAULT_DELAY_MICROS;
+    // Set while the links exist only in compactGraph, e.g. after loadCompactTopology
+    private boolean linksPending;
+    private TraceLog trace = TraceLog.DISABLED;
+    // Seeds the random numbers of routers such as RED's
+    private long randomSeed;
+    // Routing computations and their wall-clock cost, read by SimulationMetrics from other threads
+    private volatile long routingRecomputes;
+    private volatile long lastRoutingNanos;
+    private volatile long totalRoutingNanos;
 
     public Graph() {
         this.routers = new HashMap<>();
+        this.routersByIndex = new ArrayList<>();
     }
 
     public void addRouter(int id, int bucketCapacity, int tokenRate) {
-        routers.put(id, new Router(id, bucketCapacity, tokenRate));
+        putRouter(new Router(id, bucketCapacity, tokenRate));
     }
 
     public void addRedRouter(int id, int bucketCapacity, int tokenRate, double minThreshold, double maxThreshold,
             double dropProbability, double averageQueueSize) {
-        routers.put(id, new RedRouter(id, bucketCapacity, tokenRate, minThreshold, maxThreshold, dropProbability,
+        putRouter(new RedRouter(id, bucketCapacity, tokenRate, minThreshold, maxThreshold, dropProbability,
+                averageQueueSize));
+    }
+
+    public void addGentleRedRouter(int id, int bucketCapacity, int tokenRate, double minThreshold,
+            double maxThreshold, double dropProbability, double averageQueueSize) {
+        putRouter(new RedRouter(id, bucketCapacity, tokenRate, minThreshold, maxThreshold, dropProbability,
+                averageQueueSize, true));
+    }
+
+    // dropProbability is only the starting max_p, see AdaptiveRedRouter
+    public void addAdaptiveRedRouter(int id, int bucketCapacity, int tokenRate, double minThreshold,
+            double maxThreshold, double dropProbability, double averageQueueSize) {
+        putRouter(new AdaptiveRedRouter(id, bucketCapacity, tokenRate, minThreshold, maxThreshold, dropProbability,
                 averageQueueSize));
     }
 
+    public void addCodelRouter(int id, int bucketCapacity, int tokenRate, double targetMillis, double intervalMillis) {
+        putRouter(new CodelRouter(id, bucketCapacity, tokenRate, targetMillis, intervalMillis));
+    }
+
+    // Creates routers with the compact graph's ids and adopts its links without creating Edge
+    // objects; they are only built if links are added or changed later. Used for large generated
+    // topologies, see TopologyGenerator.
+    public void loadCompactTopology(CompactGraph topology, int bucketCapacity, int tokenRate) {
+        if (!routersByIndex.isEmpty()) {
+            throw new IllegalStateException("A compact topology can only be loaded into an empty graph");
+        }
+        for (int i = 0; i < topology.size(); i++) {
+            addRouter(topology.routerId(i), bucketCapacity, tokenRate);
+        }
+        topology.setLinkProperties(defaultBandwidth, defaultDelayMicros);
+        adoptCompactLinks(topology);
+    }
+
+    // Gives routers that have no links yet the links of a compact graph as they are, failed links
+    // included, so link and output port indices stay those of the graph it was saved from; the
+    // routers must have been added in the graph's index order, e.g. by a Checkpoint. Nothing here
+    // writes to the compact graph, so graphs of the same routers can share one, see ParameterSweep.
+    void adoptCompactLinks(CompactGraph topology) {
+        if (topology.size() != routersByIndex.size()) {
+            throw new IllegalArgumentException("Topology has " + topology.size() + " routers, the graph "
+                    + routersByIndex.size());
+        }
+        for (int i = 0; i < topology.size(); i++) {
+            Router router = routersByIndex.get(i);
+            if (router.getId() != topology.routerId(i) || !router.getOutgoingEdges().isEmpty()) {
+                throw new IllegalStateException("Router " + router.getId() + " does not match the topology's index "
+                        + i + " or already has links");
+            }
+        }
+        compactGraph = topology;
+        linksPending = true;
+    }
+
+    // Builds the Edge objects of links that so far exist only in the compact view
+    private void materializeLinks() {
+        if (!linksPending) {
+            return;
+        }
+        linksPending = false;
+        CompactGraph compact = compactGraph;
+        for (int i = 0; i < compact.size(); i++) {
+            Router source = routersByIndex.get(i);
+            source.ensureEdgeCapacity(compact.endEdge(i) - compact.firstEdge(i));
+            for (int e = compact.firstEdge(i), end = compact.endEdge(i); e < end; e++) {
+                if (compact.weight(e) != CompactGraph.NO_LINK) {
+                    source.addOutgoingEdge(new Edge(source, routersByIndex.get(compact.target(e)), compact.weight(e),
+                            compact.bandwidth(e), compact.delayMicros(e)));
+                }
+            }
+        }
+    }
+
+    // Replacing a router keeps its dense index so the compact view stays contiguous
+    private void putRouter(Router router) {
+        materializeLinks();
+        router.setTraceLog(trace);
+        router.setRandomSeed(randomSeed);
+        Router previous = routers.put(router.getId(), router);
+        if (previous != null) {
+            router.setIndex(previous.getIndex());
+            routersByIndex.set(previous.getIndex(), router);
+        } else {
+            router.setIndex(routersByIndex.size());
+            routersByIndex.add(router);
+        }
+        compactGraph = null;
+        // Incremental routing covers a fixed router set
+        dynamicRoutes = null;
+        distanceVectors = null;
+        if (onDemandRoutes != null) {
+            router.setOnDemandRouting(onDemandRoutes);
+        }
+        invalidateLazyRoutes();
+    }
+
+    // Bandwidth (bits per second) and propagation delay of links added from now on without their own
+    public void setDefaultLinkProperties(long bandwidth, int delayMicros) {
+        Edge.checkLinkProperties(bandwidth, delayMicros);
+        this.defaultBandwidth = bandwidth;
+        this.defaultDelayMicros = delayMicros;
+    }
+
     public void addEdge(int sourceId, int destinationId, int weight) {
+        addEdge(sourceId, destinationId, weight, defaultBandwidth, defaultDelayMicros);
+    }
+
+    public void addEdge(int sourceId, int destinationId, int weight, long bandwidth, int delayMicros) {
         Router source = routers.get(sourceId);
         Router destination = routers.get(destinationId);
         if (source == null || destination == null) {
             throw new IllegalArgumentException("Source or Destination router does not exist.");
         }
-        Edge edge = new Edge(source, destination, weight);
+        checkIncrementalWeight(weight);
+        checkDistanceVectorWeight(weight);
+        materializeLinks();
+        // Only incremental routing needs the previous weight, and finding it scans the source's links
+        int oldWeight = dynamicRoutes != null ? linkWeight(source, destination) : CompactGraph.NO_LINK;
+        Edge edge = new Edge(source, destination, weight, bandwidth, delayMicros);
         source.addOutgoingEdge(edge);
+        int slot = compactGraph != null
+                ? findFailedSlot(source.getIndex(), destination.getIndex(), bandwidth, delayMicros) : -1;
+        if (slot >= 0) {
+            // A removed link keeps its CSR slot, so bringing it back needs no rebuild
+            compactGraph.setWeight(slot, weight);
+        } else {
+            compactGraph = null;
+            if (dynamicRoutes != null) {
+                dynamicRoutes.rebind(getCompactGraph());
+            }
+        }
+        if (dynamicRoutes != null) {
+            RoutingRecomputeEvent event = RoutingRecomputeEvent.start();
+            dynamicRoutes.linkChanged(source.getIndex(), destination.getIndex(), oldWeight);
+            routingComputed(event, "incremental");
+        }
+        if (distanceVectors != null && slot < 0) {
+            // The engine's vectors index the old CSR, so converge again on the rebuilt one
+            distanceVectors = null;
+            calculateDistanceVectors();
+        } else {
+            distanceVectorLinkChanged(source, destination);
+        }
+        invalidateLazyRoutes();
+    }
+
+    // Adds count links stored as (sourceId, destinationId, weight) triples, e.g. from a topology file.
+    // Routers are looked up once per link and each router's link list is sized up front.
+    public void addEdges(int[] links, int count) {
+        addEdges(links, count, null, null);
+    }
+
+    // Same as addEdges(int[], int) with the bandwidth and delay of each link; null arrays, or
+    // entries below zero, stand for the defaults
+    public void addEdges(int[] links, int count, long[] bandwidths, int[] delays) {
+        materializeLinks();
+        Router[] sources = new Router[count];
+        Router[] destinations = new Router[count];
+        int[] degrees = new int[routersByIndex.size()];
+        for (int i = 0; i < count; i++) {
+            sources[i] = routers.get(links[3 * i]);
+            destinations[i] = routers.get(links[3 * i + 1]);
+            if (sources[i] == null || destinations[i] == null) {
+                throw new IllegalArgumentException("Source or Destination router does not exist.");
+            }
+            degrees[sources[i].getIndex()]++;
+        }
+        for (int i = 0; i < degrees.length; i++) {
+            Router router = routersByIndex.get(i);
+            router.ensureEdgeCapacity(router.getOutgoingEdges().size() + degrees[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            long bandwidth = bandwidths != null && bandwidths[i] >= 0 ? bandwidths[i] : defaultBandwidth;
+            int delay = delays != null && delays[i] >= 0 ? delays[i] : defaultDelayMicros;
+            sources[i].addOutgoingEdge(new Edge(sources[i], destinations[i], links[3 * i + 2], bandwidth, delay));
+        }
+        compactGraph = null;
+        dynamicRoutes = null;
+        distanceVectors = null;
+        invalidateLazyRoutes();
+    }
+
+    // Changes the weight of every sourceId -> destinationId link and repairs routes if enabled
+    public void updateEdgeWeight(int sourceId, int destinationId, int weight) {
+        Router source = routers.get(sourceId);
+        Router destination = routers.get(destinationId);
+        if (source == null || destination == null) {
+            throw new IllegalArgumentException("Source or Destination router does not exist.");
+        }
+        checkIncrementalWeight(weight);
+        checkDistanceVectorWeight(weight);
+        materializeLinks();
+        int oldWeight = linkWeight(source, destination);
+        if (oldWeight == CompactGraph.NO_LINK) {
+            throw new IllegalArgumentException("No link from router " + sourceId + " to router " + destinationId);
+        }
+        for (Edge edge : source.getOutgoingEdges()) {
+            if (edge.getDestination() == destination) {
+                edge.setWeight(weight);
+            }
+        }
+        setCompactWeights(source.getIndex(), destination.getIndex(), weight);
+        if (dynamicRoutes != null) {
+            RoutingRecomputeEvent event = RoutingRecomputeEvent.start();
+            dynamicRoutes.linkChanged(source.getIndex(), destination.getIndex(), oldWeight);
+            routingComputed(event, "incremental");
+        }
+        distanceVectorLinkChanged(source, destination);
+        invalidateLazyRoutes();
+    }
+
+    // Removes every sourceId -> destinationId link, e.g. for a link failure
+    public void removeEdge(int sourceId, int destinationId) {
+        Router source = routers.get(sourceId);
+        Router destination = routers.get(destinationId);
+        if (source == null || destination == null) {
+            throw new IllegalArgumentException("Source or Destination router does not exist.");
+        }
+        materializeLinks();
+        int oldWeight = linkWeight(source, destination);
+        if (source.removeOutgoingEdges(destination) == 0) {
+            throw new IllegalArgumentException("No link from router " + sourceId + " to router " + destinationId);
+        }
+        setCompactWeights(source.getIndex(), destination.getIndex(), CompactGraph.NO_LINK);
+        if (dynamicRoutes != null) {
+            RoutingRecomputeEvent event = RoutingRecomputeEvent.start();
+            dynamicRoutes.linkChanged(source.getIndex(), destination.getIndex(), oldWeight);
+            routingComputed(event, "incremental");
+        }
+        distanceVectorLinkChanged(source, destination);
+        invalidateLazyRoutes();
+    }
+
+    // Rejects a weight incremental routing cannot repair before any link is touched
+    private void checkIncrementalWeight(int weight) {
+        if (dynamicRoutes != null && weight < 0) {
+            throw new IllegalArgumentException("Incremental routing requires non-negative link weights");
+        }
+    }
+
+    // Rejects a weight the distance-vector metric cannot hold before any link is touched
+    private void checkDistanceVectorWeight(int weight) {
+        if (distanceVectors != null && !distanceVectors.acceptsWeight(weight)) {
+            throw new IllegalArgumentException("Link weight " + weight + " exceeds the distance-vector metric range");
+        }
+    }
+
+    // Re-converges the installed distance vectors after the source -> destination links changed
+    private void distanceVectorLinkChanged(Router source, Router destination) {
+        if (distanceVectors == null) {
+            return;
+        }
+        RoutingRecomputeEvent event = RoutingRecomputeEvent.start();
+        distanceVectors.linkChanged(source.getIndex(), destination.getIndex());
+        routingComputed(event, "distance-vector");
+        if (distanceVectors.hasNegativeCycle()) {
+            distanceVectors = null;
+            throw new IllegalStateException("Negative cycle detected during distance-vector convergence after "
+                    + "changing the link from router " + source.getId() + " to router " + destination.getId());
+        }
+    }
+
+    // Cached on-demand routes and adaptive link costs may describe the old topology
+    private void invalidateLazyRoutes() {
+        if (onDemandRoutes != null) {
+            onDemandRoutes.invalidate();
+        }
+        if (adaptiveRoutes != null) {
+            adaptiveRoutes.topologyChanged();
+        }
+    }
+
+    // Cheapest current source -> destination weight, NO_LINK if there is no live link
+    private int linkWeight(Router source, Router destination) {
+        int best = CompactGraph.NO_LINK;
+        for (Edge edge : source.getOutgoingEdges()) {
+            if (edge.getDestination() == destination) {
+                best = Math.min(best, edge.getWeight());
+            }
+        }
+        return best;
+    }
+
+    private void setCompactWeights(int source, int destination, int weight) {
+        if (compactGraph == null) {
+            return;
+        }
+        for (int e = compactGraph.firstEdge(source), end = compactGraph.endEdge(source); e < end; e++) {
+            if (compactGraph.target(e) == destination) {
+                compactGraph.setWeight(e, weight);
+            }
+        }
+    }
+
+    private int findFailedSlot(int source, int destination, long bandwidth, int delayMicros) {
+        for (int e = compactGraph.firstEdge(source), end = compactGraph.endEdge(source); e < end; e++) {
+            if (compactGraph.target(e) == destination && compactGraph.weight(e) == CompactGraph.NO_LINK
+                    && compactGraph.bandwidth(e) == bandwidth && compactGraph.delayMicros(e) == delayMicros) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    public TraceLog getTraceLog() {
+        return trace;
+    }
+
+    public void setTraceLog(TraceLog trace) {
+        this.trace = trace;
+        for (Router router : routersByIndex) {
+            router.setTraceLog(trace);
+        }
+    }
+
+    // Reseeds the routers already added and those added later, so runs with different seeds see
+    // different early drops and a run with the same seed repeats them
+    public void setRandomSeed(long seed) {
+        this.randomSeed = seed;
+        for (Router router : routersByIndex) {
+            router.setRandomSeed(seed);
+        }
     }
 
     public Router getRouter(int id) {
         return routers.get(id);
     }
 
+    public Router getRouterByIndex(int index) {
+        return routersByIndex.get(index);
+    }
+
     public Collection<Router> getRouters() {
         return routers.values();
     }
 
+    // Frozen CSR view of the current topology, rebuilt after routers or edges are added
+    public CompactGraph getCompactGraph() {
+        if (compactGraph == null) {
+            compactGraph = CompactGraph.build(routersByIndex);
+        }
+        return compactGraph;
+    }
+
+    // Output queues of every link, attached to the routers; rebuilt, empty, once the topology
+    // has changed, so simulators take them when they are created
+    public OutputPorts getOutputPorts() {
+        CompactGraph compact = getCompactGraph();
+        if (outputPorts == null || outputPorts.getGraph() != compact) {
+            outputPorts = new OutputPorts(compact);
+            for (Router router : routersByIndex) {
+                router.setOutputPorts(outputPorts);
+            }
+        }
+        return outputPorts;
+    }
+
     // Method to calculate shortest paths using Dijkstra's algorithm
-    public Map<Router, Map<Router, Integer>> calculateShortestPaths() {
-        Map<Router, Map<Router, Integer>> shortestPaths = new HashMap<>();
-        for (Router router : routers.values()) {
-            shortestPaths.put(router, calculateShortestPathFrom(router));
+    // Each router receives the next-hop table of its own shortest-path tree.
+    public ForwardingTable[] calculateShortestPaths() {
+        return calculateShortestPaths(1);
+    }
+
+    // Splits the sources across a ForkJoinPool of the given size; results match the sequential run
+    public ForwardingTable[] calculateShortestPaths(int parallelism) {
+        RoutingRecomputeEvent event = RoutingRecomputeEvent.start();
+        ForwardingTable[] tables = computeShortestPaths(parallelism, false);
+        installForwardingTables(tables);
+        routingComputed(event, "dijkstra");
+        return tables;
+    }
+
+    // Equal-cost multipath: like calculateShortestPaths, plus every next hop on a shortest path
+    // to each destination, among which packets are spread by flow
+    public ForwardingTable[] calculateMultipathRoutes(int parallelism) {
+        RoutingRecomputeEvent event = RoutingRecomputeEvent.start();
+        ForwardingTable[] tables = computeShortestPaths(parallelism, true);
+        installForwardingTables(tables);
+        routingComputed(event, "ecmp");
+        return tables;
+    }
+
+    // Spreads flows over the k shortest loopless paths of each router pair (Yen's algorithm),
+    // with equal-cost multipath tables for anything that strays off its path
+    public PathTable calculateKShortestPaths(int k, int parallelism) {
+        RoutingRecomputeEvent event = RoutingRecomputeEvent.start();
+        ForwardingTable[] tables = computeShortestPaths(parallelism, true);
+        PathTable paths = PathTable.build(getCompactGraph(), k, parallelism);
+        installForwardingTables(tables);
+        for (Router router : routersByIndex) {
+            router.setPathTable(paths);
         }
-        return shortestPaths;
+        routingComputed(event, "k-shortest");
+        return paths;
     }
 
-    //implementation of dijkstra algo
-    private Map<Router, Integer> calculateShortestPathFrom(Router source) {
-        Map<Router, Integer> distances = new HashMap<>();
-        PriorityQueue<Router> queue = new PriorityQueue<>(Comparator.comparingInt(distances::get));
+    private ForwardingTable[] computeShortestPaths(int parallelism, boolean multipath) {
+        CompactGraph compact = getCompactGraph();
+        if (compact.minWeight() < 0) {
+            throw new IllegalArgumentException("Dijkstra needs non-negative link weights; route with Bellman-Ford "
+                    + "or distance vectors instead");
+        }
+        int n = compact.size();
+        ForwardingTable[] tables = new ForwardingTable[n];
+        if (parallelism <= 1 || n < 2 * ShortestPathTask.MIN_SOURCES_PER_TASK) {
+            ShortestPathTask.computeRange(compact, new Dijkstra(n), tables, 0, n, multipath);
+        } else {
+            ThreadLocal<Dijkstra> scratch = ThreadLocal.withInitial(() -> new Dijkstra(n));
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new ShortestPathTask(compact, scratch, tables, 0, n, multipath));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return tables;
+    }
 
-        for (Router router : routers.values()) {
-            distances.put(router, Integer.MAX_VALUE);
+    // Method to calculate shortest paths using queue-based Bellman-Ford (SPFA) from every source
+    public ForwardingTable[] calculateShortestPathsBellmanFord() {
+        RoutingRecomputeEvent event = RoutingRecomputeEvent.start();
+        CompactGraph compact = getCompactGraph();
+        int n = compact.size();
+        ForwardingTable[] tables = new ForwardingTable[n];
+        BellmanFord bellmanFord = new BellmanFord(n);
+        for (int source = 0; source < n; source++) {
+            bellmanFord.run(compact, source);
+            if (bellmanFord.hasNegativeCycle()) {
+                throw new IllegalStateException(describeNegativeCycle(compact, bellmanFord.negativeCycle())
+                        + " reachable from router " + compact.routerId(source));
+            }
+            tables[source] = new ForwardingTable(n);
+            bellmanFord.fillForwardingTable(source, tables[source]);
         }
-        distances.put(source, 0);
-        queue.add(source);
+        installForwardingTables(tables);
+        routingComputed(event, "bellman-ford");
+        return tables;
+    }
 
-        while (!queue.isEmpty()) {
-            Router current = queue.poll();
-            int currentDistance = distances.get(current);
+    // Method to converge distance-vector routing; updateEdgeWeight, removeEdge and addEdge then
+    // re-converge the installed tables incrementally until other tables are installed
+    public DistanceVectorRouting calculateDistanceVectors() {
+        RoutingRecomputeEvent event = RoutingRecomputeEvent.start();
+        DistanceVectorRouting routing = new DistanceVectorRouting(getCompactGraph());
+        routing.converge();
+        if (routing.hasNegativeCycle()) {
+            // The vectors only show that distances keep falling; Bellman-Ford finds the cycle itself
+            CompactGraph compact = getCompactGraph();
+            BellmanFord bellmanFord = new BellmanFord(compact.size());
+            for (int source = 0; source < compact.size() && !bellmanFord.hasNegativeCycle(); source++) {
+                bellmanFord.run(compact, source);
+            }
+            throw new IllegalStateException(describeNegativeCycle(compact, bellmanFord.negativeCycle())
+                    + " detected during distance-vector convergence");
+        }
+        installForwardingTables(routing.buildForwardingTables());
+        distanceVectors = routing;
+        routingComputed(event, "distance-vector");
+        return routing;
+    }
 
-            for (Edge edge : current.getOutgoingEdges()) {
-                Router neighbor = edge.getDestination();
-                int newDistance = currentDistance + edge.getWeight();
-                if (newDistance < distances.get(neighbor)) {
-                    distances.put(neighbor, newDistance);
-                    queue.add(neighbor);
-                }
+    // "Negative cycle 2 -> 3 -> 2" in router ids, or just "Negative cycle" if it could not be traced
+    private static String describeNegativeCycle(CompactGraph compact, int[] cycle) {
+        StringBuilder text = new StringBuilder("Negative cycle");
+        for (int i = 0; i < cycle.length; i++) {
+            text.append(i == 0 ? " " : " -> ").append(compact.routerId(cycle[i]));
+        }
+        if (cycle.length > 0) {
+            text.append(" -> ").append(compact.routerId(cycle[0]));
+        }
+        return text.toString();
+    }
+
+    // Leaves the forwarding tables empty and routes each (router, destination) pair the first time
+    // a packet needs it, see OnDemandRouting; topology changes clear the cached routes
+    public OnDemandRouting enableOnDemandRouting(int landmarks, int cacheEntries) {
+        RoutingRecomputeEvent event = RoutingRecomputeEvent.start();
+        OnDemandRouting routing = new OnDemandRouting(this, landmarks, cacheEntries);
+        routing.bind(getCompactGraph());
+        installForwardingTables(new ForwardingTable[routersByIndex.size()]);
+        for (Router router : routersByIndex) {
+            router.setOnDemandRouting(routing);
+        }
+        onDemandRoutes = routing;
+        routingComputed(event, "on-demand");
+        return routing;
+    }
+
+    public OnDemandRouting getOnDemandRouting() {
+        return onDemandRoutes;
+    }
+
+    // Starts from shortest paths over the configured weights, then lets simulators reroute around
+    // congested links every intervalMillis of virtual time, see AdaptiveRouting
+    public AdaptiveRouting enableAdaptiveRouting(double intervalMillis, double sensitivity) {
+        RoutingRecomputeEvent event = RoutingRecomputeEvent.start();
+        AdaptiveRouting routing = new AdaptiveRouting(this, intervalMillis, sensitivity);
+        installForwardingTables(routing.build());
+        adaptiveRoutes = routing;
+        routingComputed(event, "adaptive");
+        return routing;
+    }
+
+    public AdaptiveRouting getAdaptiveRouting() {
+        return adaptiveRoutes;
+    }
+
+    // Computes routes once and from then on repairs them in place on updateEdgeWeight/removeEdge/addEdge
+    public DynamicShortestPaths enableIncrementalRouting() {
+        RoutingRecomputeEvent event = RoutingRecomputeEvent.start();
+        CompactGraph compact = getCompactGraph();
+        ForwardingTable[] tables = new ForwardingTable[compact.size()];
+        for (int i = 0; i < tables.length; i++) {
+            tables[i] = new ForwardingTable(compact.size());
+        }
+        dynamicRoutes = new DynamicShortestPaths(compact, tables);
+        installForwardingTables(tables);
+        routingComputed(event, "incremental");
+        return dynamicRoutes;
+    }
+
+    // Counts a finished routing computation and commits its JFR event if a recording wants it
+    private void routingComputed(RoutingRecomputeEvent event, String algorithm) {
+        long nanos = System.nanoTime() - event.startNanos;
+        lastRoutingNanos = nanos;
+        totalRoutingNanos += nanos;
+        routingRecomputes++;
+        event.end();
+        if (event.shouldCommit()) {
+            event.algorithm = algorithm;
+            event.routers = routersByIndex.size();
+            event.links = compactGraph != null ? compactGraph.edgeCount() : 0;
+            event.commit();
+        }
+    }
+
+    // Full computations plus incremental repairs since the graph was created
+    public long getRoutingRecomputes() {
+        return routingRecomputes;
+    }
+
+    public long getLastRoutingNanos() {
+        return lastRoutingNanos;
+    }
+
+    public long getTotalRoutingNanos() {
+        return totalRoutingNanos;
+    }
+
+    public DynamicShortestPaths getIncrementalRouting() {
+        return dynamicRoutes;
+    }
+
+    public DistanceVectorRouting getDistanceVectorRouting() {
+        return distanceVectors;
+    }
+
+    // Also turns off explicit paths, on-demand, adaptive and distance-vector routing; calculateKShortestPaths,
+    // enableOnDemandRouting and enableAdaptiveRouting set theirs again afterwards
+    public void installForwardingTables(ForwardingTable[] tables) {
+        for (int i = 0; i < tables.length; i++) {
+            routersByIndex.get(i).setForwardingTable(tables[i]);
+            routersByIndex.get(i).setPathTable(null);
+            routersByIndex.get(i).setOnDemandRouting(null);
+        }
+        onDemandRoutes = null;
+        distanceVectors = null;
+        if (adaptiveRoutes != null) {
+            adaptiveRoutes.close();
+            adaptiveRoutes = null;
+        }
+    }
+
+    // Per-hop latencies of every router merged into one histogram, in simulator ticks
+    public Histogram mergeLatencyHistograms() {
+        Histogram merged = Router.newLatencyHistogram();
+        for (Router router : routersByIndex) {
+            if (router.getLatencyHistogram() != null) {
+                merged.add(router.getLatencyHistogram());
             }
         }
+        return merged;
+    }
 
-        return distances;
+    // Queue lengths seen on arrival at every router merged into one histogram
+    public Histogram mergeQueueHistograms() {
+        int capacity = Router.QUEUE_CAPACITY;
+        for (Router router : routersByIndex) {
+            capacity = Math.max(capacity, router.getQueueCapacity());
+        }
+        Histogram merged = new Histogram(capacity, 7);
+        for (Router router : routersByIndex) {
+            if (router.getQueueHistogram() != null) {
+                merged.add(router.getQueueHistogram());
+            }
+        }
+        return merged;
+    }
+
+    public ForwardingTable[] getForwardingTables() {
+        ForwardingTable[] tables = new ForwardingTable[routersByIndex.size()];
+        for (int i = 0; i < tables.length; i++) {
+            tables[i] = routersByIndex.get(i).getForwardingTable();
+        }
+        return tables;
+    }
+}
+
+// ShortestPathTask class: fork-join split of all-pairs routing over source ranges
+class ShortestPathTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    static final int MIN_SOURCES_PER_TASK = 64;
+
+    private final CompactGraph graph;
+    private final ThreadLocal<Dijkstra> scratch;
+    private final ForwardingTable[] tables;
+    private final int from;
+    private final int to;
+    private final boolean multipath;
+
+    ShortestPathTask(CompactGraph graph, ThreadLocal<Dijkstra> scratch, ForwardingTable[] tables, int from, int to,
+            boolean multipath) {
+        this.graph = graph;
+        this.scratch = scratch;
+        this.tables = tables;
+        this.from = from;
+        this.to = to;
+        this.multipath = multipath;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= MIN_SOURCES_PER_TASK) {
+            computeRange(graph, scratch.get(), tables, from, to, multipath);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new ShortestPathTask(graph, scratch, tables, from, mid, multipath),
+                new ShortestPathTask(graph, scratch, tables, mid, to, multipath));
+    }
+
+    static void computeRange(CompactGraph graph, Dijkstra dijkstra, ForwardingTable[] tables, int from, int to,
+            boolean multipath) {
+        int n = graph.size();
+        for (int source = from; source < to; source++) {
+            dijkstra.run(graph, source);
+            tables[source] = new ForwardingTable(n);
+            dijkstra.fillForwardingTable(source, tables[source]);
+            if (multipath) {
+                dijkstra.fillMultipathGroups(graph, source, tables[source]);
+            }
+        }
     }
 }
 
 // Packet class
+// Describes a packet to inject; once in a simulation it lives in a PacketTable as an int id
 class Packet {
     private Router source;
     private Router destination;
     private String data;
+    private int flowId;
 
     public Packet(Router source, Router destination, String data) {
+        this(source, destination, data, 0);
+    }
+
+    // Packets of one flow between the same routers follow the same path under multipath routing
+    public Packet(Router source, Router destination, String data, int flowId) {
         this.source = source;
         this.destination = destination;
         this.data = data;
+        this.flowId = flowId;
     }
 
     public Router getSource() {
@@ -280,6 +1335,14 @@ class Packet {
         return data;
     }
 
+    public int getSizeBytes() {
+        return data.length();
+    }
+
+    public int getFlowId() {
+        return flowId;
+    }
+
     @Override
     public String toString() {
         return "Packet{" +
@@ -291,15 +1354,36 @@ class Packet {
 }
 
 // Edge class representing connections between routers
+// Links default to the timing of the original model: 2 ms per byte and 10 ms of propagation
 class Edge {
+    static final long DEFAULT_BANDWIDTH = 4000;
+    static final int DEFAULT_DELAY_MICROS = 10_000;
+
     private Router source;
     private Router destination;
     private int weight;
+    // Bits per second, and propagation delay in microseconds
+    private long bandwidth;
+    private int delayMicros;
 
     public Edge(Router source, Router destination, int weight) {
+        this(source, destination, weight, DEFAULT_BANDWIDTH, DEFAULT_DELAY_MICROS);
+    }
+
+    public Edge(Router source, Router destination, int weight, long bandwidth, int delayMicros) {
+        checkLinkProperties(bandwidth, delayMicros);
         this.source = source;
         this.destination = destination;
         this.weight = weight;
+        this.bandwidth = bandwidth;
+        this.delayMicros = delayMicros;
+    }
+
+    static void checkLinkProperties(long bandwidth, int delayMicros) {
+        if (bandwidth <= 0 || delayMicros < 0) {
+            throw new IllegalArgumentException("Link bandwidth must be positive and delay non-negative, got "
+                    + bandwidth + " bit/s and " + delayMicros + " us");
+        }
     }
 
     public Router getSource() {
@@ -313,41 +1397,121 @@ class Edge {
     public int getWeight() {
         return weight;
     }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    public long getBandwidth() {
+        return bandwidth;
+    }
+
+    public int getDelayMicros() {
+        return delayMicros;
+    }
 }
 
 // TokenBucket class for token-based congestion control
+// The bucket is kept as a single "empty at" instant (GCRA form) in fixed-point nanoseconds:
+// the tokens available at time t are (t - emptyAt) / tokenCost, capped at the capacity. Time comes
+// from a pluggable TimeSource, fractional credit is never truncated, and consumers update the
+// state with a compare-and-set instead of taking a monitor. With 12 fraction bits a bucket covers
+// about 26 days of clock time.
 class TokenBucket {
+    private static final int FRACTION_BITS = 12;
+    private static final long MAX_WINDOW = Long.MAX_VALUE >> 2;
+
     private final int bucketCapacity;
     private final int tokenRate;
-    private int availableTokens;
-    private long lastUpdateTime;
+    private final long tokenCost;
+    private final long burstWindow;
+    private final AtomicLong emptyAt;
+    private TimeSource timeSource;
+    private long origin;
 
     public TokenBucket(int bucketCapacity, int tokenRate) {
+        this(bucketCapacity, tokenRate, TimeSource.SYSTEM);
+    }
+
+    public TokenBucket(int bucketCapacity, int tokenRate, TimeSource timeSource) {
         this.bucketCapacity = bucketCapacity;
         this.tokenRate = tokenRate;
-        this.availableTokens = bucketCapacity;
-        this.lastUpdateTime = System.currentTimeMillis();
+        // Without a refill rate time is frozen, so one unit per token is enough
+        this.tokenCost = tokenRate > 0 ? Math.max(1, (1_000_000_000L << FRACTION_BITS) / tokenRate) : 1;
+        this.burstWindow = cost(bucketCapacity);
+        this.emptyAt = new AtomicLong();
+        setTimeSource(timeSource);
+    }
+
+    // Switches clocks (e.g. to simulation time) and refills the bucket
+    public void setTimeSource(TimeSource timeSource) {
+        this.timeSource = timeSource;
+        this.origin = timeSource.nanoTime();
+        emptyAt.set(-burstWindow);
+    }
+
+    public TimeSource getTimeSource() {
+        return timeSource;
     }
 
     // Method to update token availability
-    public synchronized boolean tryConsume(int tokens) {
-        updateTokens();
-        if (tokens <= availableTokens) {
-            availableTokens -= tokens;
-            return true;
+    public boolean tryConsume(int tokens) {
+        long now = now();
+        long cost = cost(tokens);
+        while (true) {
+            long empty = emptyAt.get();
+            long next = Math.max(empty, now - burstWindow) + cost;
+            if (next > now) {
+                return false;
+            }
+            if (emptyAt.compareAndSet(empty, next)) {
+                return true;
+            }
         }
-        return false;
     }
 
-    // Method to refill tokens based on token rate and time elapsed
-    private synchronized void updateTokens() {
-        long now = System.currentTimeMillis();
-        long elapsedTime = now - lastUpdateTime;
-        int newTokens = (int) (elapsedTime / 1000.0 * tokenRate);
-        if (newTokens > 0) {
-            availableTokens = Math.min(bucketCapacity, availableTokens + newTokens);
-            lastUpdateTime = now;
+    // Nanoseconds until the tokens can be consumed, Long.MAX_VALUE if the bucket can never hold them
+    public long nanosUntilAvailable(int tokens) {
+        if (tokens > bucketCapacity || (tokenRate <= 0 && tokens > availableTokens())) {
+            return Long.MAX_VALUE;
         }
+        long now = now();
+        long next = Math.max(emptyAt.get(), now - burstWindow) + cost(tokens);
+        long wait = next - now;
+        return wait <= 0 ? 0 : ((wait - 1) >> FRACTION_BITS) + 1;
+    }
+
+    public double availableTokens() {
+        long now = now();
+        return (double) (now - Math.max(emptyAt.get(), now - burstWindow)) / tokenCost;
+    }
+
+    public int getBucketCapacity() {
+        return bucketCapacity;
+    }
+
+    public int getTokenRate() {
+        return tokenRate;
+    }
+
+    // Fixed-point cost of the tokens, saturated so sums with clock values cannot overflow
+    private long cost(int tokens) {
+        return tokens <= MAX_WINDOW / tokenCost ? tokens * tokenCost : MAX_WINDOW;
+    }
+
+    private long now() {
+        return tokenRate > 0 ? (timeSource.nanoTime() - origin) << FRACTION_BITS : 0;
+    }
+
+    // Fill level as of the clock it runs on; restore after switching to the restored clock
+    void writeState(CheckpointOutput out) throws IOException {
+        out.writeLong(origin);
+        out.writeLong(emptyAt.get());
+    }
+
+    void readState(MappedInput in) throws IOException {
+        origin = in.readLong();
+        emptyAt.set(in.readLong());
     }
 }
 
@@ -357,9 +1521,17 @@ public class NetworkSimulation {
     private static Graph graph;
     private static List<Packet> packets;
     private static long startTime;
+    // -Drouting.threads=N sets the threads routing uses, as --routing-threads does in batch mode
+    private static int routingParallelism = defaultRoutingParallelism();
+    // -Dsim.shards=N splits the event simulation across N worker threads
+    private static int simulationShards = Integer.getInteger("sim.shards", 1);
+    private static TraceLog trace;
+    private static Simulator simulator;
 
     public static void main(String[] args) {
+        trace = TraceLog.fromSystemProperties();
         graph = new Graph();
+        graph.setTraceLog(trace);
         packets = new ArrayList<>();
         System.out.println();
         printBoxedMessage("Welcome to World of Network Simulation");
@@ -385,6 +1557,7 @@ public class NetworkSimulation {
                     showStatistics();
                     break;
                 case 4:
+                    trace.close();
                     System.exit(0);
                 default:
                     System.out.println("Invalid choice. Please try again.");
@@ -438,6 +1611,9 @@ public class NetworkSimulation {
             System.out.println("Router " + i + ":");
             System.out.println("1. Simple Router");
             System.out.println("2. RED Router");
+            System.out.println("3. Gentle RED Router");
+            System.out.println("4. Adaptive RED Router");
+            System.out.println("5. CoDel Router");
             System.out.print("Choose router type: ");
             int routerTypeChoice = scanner.nextInt();
             
@@ -448,17 +1624,32 @@ public class NetworkSimulation {
             
             if (routerTypeChoice == 1) {
                 graph.addRouter(i, bucketCapacity, tokenRate);
-            } else if (routerTypeChoice == 2) {
-                System.out.print("Enter min threshold for RED at router " + i + ": ");
+            } else if (routerTypeChoice >= 2 && routerTypeChoice <= 4) {
+                System.out.print("Enter min threshold in packets for RED at router " + i + ": ");
                 double minThreshold = scanner.nextDouble();
-                System.out.print("Enter max threshold for RED at router " + i + ": ");
+                System.out.print("Enter max threshold in packets for RED at router " + i + ": ");
                 double maxThreshold = scanner.nextDouble();
                 System.out.print("Enter drop probability for RED at router " + i + ": ");
                 double dropProbability = scanner.nextDouble();
-                System.out.print("Enter average queue size for RED at router " + i + ": ");
+                System.out.print("Enter initial average queue size for RED at router " + i + ": ");
                 double averageQueueSize = scanner.nextDouble();
                 
-                graph.addRedRouter(i, bucketCapacity, tokenRate, minThreshold, maxThreshold, dropProbability, averageQueueSize);
+                if (routerTypeChoice == 2) {
+                    graph.addRedRouter(i, bucketCapacity, tokenRate, minThreshold, maxThreshold, dropProbability,
+                            averageQueueSize);
+                } else if (routerTypeChoice == 3) {
+                    graph.addGentleRedRouter(i, bucketCapacity, tokenRate, minThreshold, maxThreshold,
+                            dropProbability, averageQueueSize);
+                } else {
+                    graph.addAdaptiveRedRouter(i, bucketCapacity, tokenRate, minThreshold, maxThreshold,
+                            dropProbability, averageQueueSize);
+                }
+            } else if (routerTypeChoice == 5) {
+                System.out.print("Enter target delay in ms for CoDel at router " + i + ": ");
+                double targetMillis = scanner.nextDouble();
+                System.out.print("Enter interval in ms for CoDel at router " + i + ": ");
+                double intervalMillis = scanner.nextDouble();
+                graph.addCodelRouter(i, bucketCapacity, tokenRate, targetMillis, intervalMillis);
             } else {
                 System.out.println("Invalid router type choice. Defaulting to Simple Router.");
                 graph.addRouter(i, bucketCapacity, tokenRate); // Default to simple router
@@ -484,7 +1675,7 @@ public class NetworkSimulation {
             String data = scanner.next();
             Router source = graph.getRouter(sourceId);
             Router destination = graph.getRouter(destinationId);
-            packets.add(new Packet(source, destination, data));
+            packets.add(new Packet(source, destination, data, i));
         }
     }
     
@@ -514,19 +1705,19 @@ public class NetworkSimulation {
 
         switch (choice) {
             case 1:
-                createBusTopology(numRouters);
+                createBusTopology(graph, numRouters);
                 break;
             case 2:
-                createStarTopology(numRouters);
+                createStarTopology(graph, numRouters);
                 break;
             case 3:
-                createRingTopology(numRouters);
+                createRingTopology(graph, numRouters);
                 break;
             case 4:
-                createMeshTopology(numRouters);
+                createMeshTopology(graph, numRouters);
                 break;
             case 5:
-                createTreeTopology(numRouters);
+                createTreeTopology(graph, numRouters);
                 break;
             default:
                 System.out.println("Invalid choice. Please try again.");
@@ -540,65 +1731,137 @@ public class NetworkSimulation {
             String data = scanner.next();
             Router source = graph.getRouter(sourceId);
             Router destination = graph.getRouter(destinationId);
-            packets.add(new Packet(source, destination, data));
+            packets.add(new Packet(source, destination, data, i));
         }
     }
 
-    private static void createBusTopology(int numRouters) {
+    // Menu topologies over routers 1..numRouters, which must already exist; also used by the benchmarks
+    static void createBusTopology(Graph network, int numRouters) {
         for (int i = 1; i < numRouters; i++) {
-            graph.addEdge(i, i + 1, 1);
-            graph.addEdge(i + 1, i, 1);
+            network.addEdge(i, i + 1, 1);
+            network.addEdge(i + 1, i, 1);
         }
     }
 
-    private static void createStarTopology(int numRouters) {
+    static void createStarTopology(Graph network, int numRouters) {
         for (int i = 2; i <= numRouters; i++) {
-            graph.addEdge(1, i, 1);
-            graph.addEdge(i, 1, 1);
+            network.addEdge(1, i, 1);
+            network.addEdge(i, 1, 1);
         }
     }
 
-    private static void createRingTopology(int numRouters) {
+    static void createRingTopology(Graph network, int numRouters) {
         for (int i = 1; i < numRouters; i++) {
-            graph.addEdge(i, i + 1, 1);
-            graph.addEdge(i + 1, i, 1);
+            network.addEdge(i, i + 1, 1);
+            network.addEdge(i + 1, i, 1);
         }
-        graph.addEdge(numRouters, 1, 1);
-        graph.addEdge(1, numRouters, 1);
+        network.addEdge(numRouters, 1, 1);
+        network.addEdge(1, numRouters, 1);
     }
 
-    private static void createMeshTopology(int numRouters) {
+    static void createMeshTopology(Graph network, int numRouters) {
         for (int i = 1; i <= numRouters; i++) {
             for (int j = i + 1; j <= numRouters; j++) {
-                graph.addEdge(i, j, 1);
-                graph.addEdge(j, i, 1);
+                network.addEdge(i, j, 1);
+                network.addEdge(j, i, 1);
             }
         }
     }
 
-    private static void createTreeTopology(int numRouters) {
+    static void createTreeTopology(Graph network, int numRouters) {
         for (int i = 1; i <= numRouters / 2; i++) {
-            graph.addEdge(i, 2 * i, 1);
-            graph.addEdge(i, 2 * i + 1, 1);
+            network.addEdge(i, 2 * i, 1);
+            if (2 * i + 1 <= numRouters) {
+                network.addEdge(i, 2 * i + 1, 1);
+            }
         }
     }
 
     private static void simulateTraffic() {
         System.out.println("Simulating traffic...");
+        System.out.println("Routing algorithm:");
+        System.out.println("1. Dijkstra");
+        System.out.println("2. Bellman-Ford");
+        System.out.println("3. Distance vector (Bellman-Ford)");
+        System.out.println("4. Dijkstra with equal-cost multipath");
+        System.out.println("5. K shortest paths (Yen)");
+        System.out.println("6. On demand (A* with landmarks, cached)");
+        System.out.println("7. Adaptive (Dijkstra on congestion-aware link costs)");
+        System.out.print("Choose an option: ");
+        int algorithm = scanner.nextInt();
+        int k = 0;
+        if (algorithm == 5) {
+            System.out.print("Enter number of paths per router pair: ");
+            k = scanner.nextInt();
+            while (k <= 0) {
+                System.out.print("The number of paths must be positive. Enter number of paths per router pair: ");
+                k = scanner.nextInt();
+            }
+        }
         startTime = System.currentTimeMillis(); // Start time for execution time calculation
-        Map<Router, Map<Router, Integer>> shortestPaths = graph.calculateShortestPaths();
-        for (Packet packet : packets) {
-            Router source = packet.getSource();
-            if (!source.enqueuePacket(packet)) {
-                System.out.println("Packet dropped at source router " + source.getId() + ": " + packet);
+        ForwardingTable[] forwardingTables;
+        try {
+            if (algorithm == 2) {
+                forwardingTables = graph.calculateShortestPathsBellmanFord();
+            } else if (algorithm == 3) {
+                DistanceVectorRouting routing = graph.calculateDistanceVectors();
+                System.out.println(routing.describe());
+                forwardingTables = graph.getForwardingTables();
+            } else if (algorithm == 4) {
+                forwardingTables = graph.calculateMultipathRoutes(routingParallelism);
+            } else if (algorithm == 5) {
+                System.out.println(graph.calculateKShortestPaths(k, routingParallelism).describe());
+                forwardingTables = graph.getForwardingTables();
+            } else if (algorithm == 6) {
+                graph.enableOnDemandRouting(OnDemandRouting.DEFAULT_LANDMARKS, OnDemandRouting.DEFAULT_CACHE_ENTRIES);
+                forwardingTables = null;
+            } else if (algorithm == 7) {
+                graph.enableAdaptiveRouting(AdaptiveRouting.DEFAULT_INTERVAL_MILLIS,
+                        AdaptiveRouting.DEFAULT_SENSITIVITY);
+                forwardingTables = graph.getForwardingTables();
+            } else {
+                forwardingTables = graph.calculateShortestPaths(routingParallelism);
             }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // Negative link weights, which only Bellman-Ford and distance vectors accept, or a
+            // negative cycle, which they report instead of routing
+            System.out.println("Error: " + e.getMessage());
+            return;
         }
-        for (Router router : graph.getRouters()) {
-            router.forwardPackets(shortestPaths);
+        System.out.println(graph.getCompactGraph().describe());
+        if (forwardingTables != null) {
+            System.out.println(ForwardingTable.describe(forwardingTables));
+        }
+        simulator = createSimulator(graph, simulationShards);
+        for (Packet packet : packets) {
+            simulator.inject(packet, 0);
+        }
+        SimulationMetrics metrics = SimulationMetrics.fromSystemProperties(graph, simulator);
+        try {
+            simulator.run();
+        } finally {
+            metrics.close();
+        }
+        System.out.println(simulator.describe());
+        if (graph.getOnDemandRouting() != null) {
+            System.out.println(graph.getOnDemandRouting().describe());
         }
+        if (graph.getAdaptiveRouting() != null) {
+            System.out.println(graph.getAdaptiveRouting().describe());
+        }
+        trace.summary(simulator.describe());
         System.out.println("Traffic simulation completed.");
     }
 
+    // Routing threads unless told otherwise: -Drouting.threads, else all cores
+    static int defaultRoutingParallelism() {
+        return Integer.getInteger("routing.threads", Runtime.getRuntime().availableProcessors());
+    }
+
+    static Simulator createSimulator(Graph graph, int shards) {
+        return shards > 1 ? new ShardedSimulator(graph, shards) : new EventSimulator(graph);
+    }
+
     private static void showStatistics() {
         System.out.println("Show Statistics:");
         System.out.println("1. Router-wise Statistics");
@@ -625,10 +1888,25 @@ public class NetworkSimulation {
             System.out.println("Total delay: " + router.getTotalDelay());
             System.out.println("Packets forwarded: " + router.getPacketsForwarded());
             System.out.println("Packets dropped: " + router.getPacketsDropped());
+            if (router.getEarlyDrops() > 0) {
+                System.out.println("Early drops (RED/CoDel): " + router.getEarlyDrops());
+            }
+            if (router instanceof RedRouter) {
+                RedRouter red = (RedRouter) router;
+                System.out.println("Average queue size: " + String.format("%.2f", red.getAverageQueueSize())
+                        + ", max drop probability: " + String.format("%.3f", red.getDropProbability()));
+            }
             System.out.println("Utilization: " + router.calculateUtilization());
             System.out.println("Path efficiency: " + router.calculatePathEfficiency());
             System.out.println("Packet delivery ratio: " + router.calculatePacketDeliveryRatio());
             System.out.println("Network load: " + router.calculateNetworkLoad());
+            if (router.getLatencyHistogram() != null) {
+                System.out.println("Per-hop latency: "
+                        + router.getLatencyHistogram().describe(EventSimulator.TICKS_PER_MILLISECOND, "ms"));
+            }
+            if (router.getQueueHistogram() != null) {
+                System.out.println("Queue length on arrival: " + router.getQueueHistogram().describe(1, "packets"));
+            }
             System.out.println();
         }
     }
@@ -638,26 +1916,36 @@ public class NetworkSimulation {
         long totalExecutionTime = System.currentTimeMillis() - startTime;
         long totalMemoryUsage = getTotalMemoryUsage();
         int totalPacketsDropped = 0;
-        int totalPacketsForwarded = 0;
-        long totalDelay = 0;
 
         for (Router router : graph.getRouters()) {
             totalPacketsDropped += router.getPacketsDropped();
-            totalPacketsForwarded += router.getPacketsForwarded();
-            totalDelay += router.getTotalDelay();
         }
 
-        double throughput = (double) totalPacketsForwarded / totalExecutionTime;
-        double latency = (double) totalDelay / totalPacketsForwarded;
-
         System.out.println("Total execution time: " + totalExecutionTime + " ms");
         System.out.println("Total memory usage: " + totalMemoryUsage + " bytes");
-        System.out.println("Throughput: " + throughput + " packets/ms");
-        System.out.println("Latency: " + latency + " ms/packet");
+        // Throughput and latency are measured in virtual time, separately from the simulator's speed
+        if (simulator != null) {
+            System.out.println("Throughput: " + String.format("%.1f", simulator.getSimulatedThroughput())
+                    + " packets/s of simulated time");
+            System.out.println("End-to-end latency: "
+                    + simulator.getEndToEndLatency().describe(EventSimulator.TICKS_PER_MILLISECOND, "ms"));
+            System.out.println("Simulator speed: " + String.format("%.0f", simulator.getEventsPerSecond())
+                    + " events/s of wall-clock time");
+            OutputPorts ports = graph.getOutputPorts();
+            System.out.println("Link utilization: mean "
+                    + String.format("%.3f", ports.meanUtilization(simulator.getVirtualTime())) + ", max "
+                    + String.format("%.3f", ports.maxUtilization(simulator.getVirtualTime())));
+        }
+        if (graph.getOnDemandRouting() != null) {
+            System.out.println(graph.getOnDemandRouting().describe());
+        }
+        System.out.println("Per-hop latency: "
+                + graph.mergeLatencyHistograms().describe(EventSimulator.TICKS_PER_MILLISECOND, "ms"));
+        System.out.println("Queue length on arrival: " + graph.mergeQueueHistograms().describe(1, "packets"));
         System.out.println("Total packets dropped: " + totalPacketsDropped);
     }
 
-    private static long getTotalMemoryUsage() {
+    static long getTotalMemoryUsage() {
         MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
         MemoryUsage heapUsage = memoryBean.getHeapMemoryUsage();
         MemoryUsage nonHeapUsage = memoryBean.getNonHeapMemoryUsage();
@@ -0,0 +1,491 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+// OnDemandRouting class: next hops computed per (router, destination) query instead of for all pairs
+// A miss runs ALT, i.e. A* with landmark lower bounds, backwards from the destination towards the
+// querying router. The landmarks are picked far apart (farthest-point selection), and their
+// distances to and from every router are the only per-router state, so memory grows with
+// landmarks * routers instead of routers * routers.
+// The next hop of v is canonical: the lowest-index neighbour w with g(w) + weight(v, w) = g(v),
+// where g is the distance to the destination. The search keeps going until every router whose
+// A* key ties the querying router's distance is settled, which covers all shortest-path
+// neighbours of every router on the path, so one search fills the cache along the whole path and
+// the answer for a router never depends on which query reached it first. Zero-weight cycles can
+// defeat that rule; the path then comes from the search tree instead.
+// Link weights must be non-negative. Queries may come from several shards at once: each thread
+// searches with its own scratch arrays and the cache locks per set.
+class OnDemandRouting {
+    static final int DEFAULT_LANDMARKS = 8;
+    static final int DEFAULT_CACHE_ENTRIES = 1 << 20;
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private final Graph owner;
+    private final int landmarkCount;
+    private final RouteCache cache;
+    // Rebuilt by bind() after the topology changed; null until then
+    private volatile Landmarks landmarks;
+    private ThreadLocal<Search> scratch;
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder settled = new LongAdder();
+
+    // Landmark distances over one CompactGraph; replaced as a whole so queries never see a mix
+    private static final class Landmarks {
+        final CompactGraph graph;
+        final int[] routers;
+        // Router-major, so the bounds of one router share a cache line or two:
+        // distances[v * 2L + 2l] = dist(landmark l, v) and distances[v * 2L + 2l + 1] = dist(v, landmark l)
+        final int[] distances;
+
+        Landmarks(CompactGraph graph, int[] routers, int[] distances) {
+            this.graph = graph;
+            this.routers = routers;
+            this.distances = distances;
+        }
+    }
+
+    // Per-thread A* state; entries count only when their stamp matches the current search, so a
+    // query touches the routers it reaches rather than clearing arrays sized for the whole network
+    private static final class Search {
+        final int[] distances;
+        final int[] estimates;
+        final int[] parents;
+        final int[] reached;
+        final int[] settled;
+        final int[] path;
+        // Never cleared in full: every search ends with clearQueued()
+        final IndexedMinHeap heap;
+        int stamp;
+
+        Search(int n) {
+            distances = new int[n];
+            estimates = new int[n];
+            parents = new int[n];
+            reached = new int[n];
+            settled = new int[n];
+            path = new int[n];
+            heap = new IndexedMinHeap(n);
+        }
+    }
+
+    OnDemandRouting(Graph owner, int landmarkCount, int cacheEntries) {
+        if (landmarkCount < 0) {
+            throw new IllegalArgumentException("Landmark count must not be negative, got " + landmarkCount);
+        }
+        this.owner = owner;
+        this.landmarkCount = landmarkCount;
+        this.cache = new RouteCache(cacheEntries);
+    }
+
+    // Picks the landmarks of the graph's current topology and forgets every cached route
+    public synchronized void bind(CompactGraph graph) {
+        if (graph.minWeight() < 0) {
+            throw new IllegalArgumentException("On-demand routing needs non-negative link weights");
+        }
+        graph.buildReverseEdges();
+        int n = graph.size();
+        int count = Math.min(landmarkCount, n);
+        int[] routers = new int[count];
+        int[] distances = new int[2 * count * n];
+        IndexedMinHeap heap = new IndexedMinHeap(n);
+        // Farthest-point selection: each landmark is the router farthest from those chosen so far,
+        // starting from the one farthest from router 0
+        int[] nearest = new int[n];
+        Arrays.fill(nearest, Dijkstra.UNREACHABLE);
+        int next = n > 0 ? farthest(shortestDistances(graph, heap, 0, false)) : 0;
+        for (int l = 0; l < count; l++) {
+            routers[l] = next;
+            int[] from = shortestDistances(graph, heap, next, false);
+            int[] to = shortestDistances(graph, heap, next, true);
+            for (int v = 0; v < n; v++) {
+                distances[2 * (v * count + l)] = from[v];
+                distances[2 * (v * count + l) + 1] = to[v];
+                nearest[v] = Math.min(nearest[v], from[v]);
+            }
+            next = farthest(nearest);
+        }
+        cache.clear();
+        scratch = ThreadLocal.withInitial(() -> new Search(n));
+        landmarks = new Landmarks(graph, routers, distances);
+    }
+
+    // Forgets cached routes and landmark distances; the next query binds to the new topology
+    public synchronized void invalidate() {
+        if (landmarks == null) {
+            // Nothing can have been cached since the last invalidation
+            return;
+        }
+        landmarks = null;
+        cache.clear();
+    }
+
+    // Reachable router with the largest distance, lowest index on ties
+    private static int farthest(int[] distances) {
+        int best = 0;
+        int bestDistance = -1;
+        for (int v = 0; v < distances.length; v++) {
+            int distance = distances[v];
+            if (distance != Dijkstra.UNREACHABLE && distance > bestDistance) {
+                best = v;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    // Full Dijkstra from source, over in-edges when reverse so the result is dist(v, source)
+    private static int[] shortestDistances(CompactGraph graph, IndexedMinHeap heap, int source, boolean reverse) {
+        int[] distances = new int[graph.size()];
+        Arrays.fill(distances, Dijkstra.UNREACHABLE);
+        distances[source] = 0;
+        heap.insertOrDecrease(source, 0);
+        while (!heap.isEmpty()) {
+            int current = heap.pollMin();
+            int first = reverse ? graph.firstInEdge(current) : graph.firstEdge(current);
+            int end = reverse ? graph.endInEdge(current) : graph.endEdge(current);
+            for (int i = first; i < end; i++) {
+                int e = reverse ? graph.inEdge(i) : i;
+                int weight = graph.weight(e);
+                if (weight == CompactGraph.NO_LINK) {
+                    continue;
+                }
+                int neighbor = reverse ? graph.inSource(i) : graph.target(e);
+                int newDistance = distances[current] + weight;
+                if (newDistance < distances[neighbor]) {
+                    distances[neighbor] = newDistance;
+                    heap.insertOrDecrease(neighbor, newDistance);
+                }
+            }
+        }
+        return distances;
+    }
+
+    // Next router from router towards destination, or ForwardingTable.NO_ROUTE
+    public int nextHop(int router, int destination) {
+        int next = cache.get(router, destination);
+        if (next != RouteCache.MISS) {
+            return next;
+        }
+        Landmarks current = landmarks;
+        if (current == null) {
+            current = rebind();
+        }
+        return search(current, router, destination);
+    }
+
+    private synchronized Landmarks rebind() {
+        if (landmarks == null) {
+            bind(owner.getCompactGraph());
+        }
+        return landmarks;
+    }
+
+    // Lower bound on dist(source, v) from the triangle inequality at every landmark, or
+    // UNREACHABLE when a landmark proves source cannot reach v
+    private static int estimate(Landmarks landmarks, int source, int v) {
+        int[] distances = landmarks.distances;
+        int width = 2 * landmarks.routers.length;
+        int best = 0;
+        for (int s = source * width, i = v * width, end = i + width; i < end; i += 2, s += 2) {
+            if (distances[s] != Dijkstra.UNREACHABLE) {
+                if (distances[i] == Dijkstra.UNREACHABLE) {
+                    return Dijkstra.UNREACHABLE;
+                }
+                best = Math.max(best, distances[i] - distances[s]);
+            }
+            if (distances[s + 1] != Dijkstra.UNREACHABLE && distances[i + 1] != Dijkstra.UNREACHABLE) {
+                best = Math.max(best, distances[s + 1] - distances[i + 1]);
+            }
+        }
+        return best;
+    }
+
+    private int search(Landmarks landmarks, int source, int destination) {
+        CompactGraph graph = landmarks.graph;
+        Search s = scratch.get();
+        int stamp = ++s.stamp;
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(s.reached, 0);
+            Arrays.fill(s.settled, 0);
+            stamp = s.stamp = 1;
+        }
+        int[] distances = s.distances;
+        int[] estimates = s.estimates;
+        int[] parents = s.parents;
+        int[] reached = s.reached;
+        int[] settledAt = s.settled;
+        IndexedMinHeap heap = s.heap;
+        reached[destination] = stamp;
+        distances[destination] = 0;
+        estimates[destination] = estimate(landmarks, source, destination);
+        parents[destination] = -1;
+        if (estimates[destination] != Dijkstra.UNREACHABLE) {
+            heap.insertOrDecrease(destination, estimates[destination]);
+        }
+        long bound = Long.MAX_VALUE;
+        int settledCount = 0;
+        while (!heap.isEmpty()) {
+            int current = heap.pollMin();
+            if ((long) distances[current] + estimates[current] > bound) {
+                break;
+            }
+            settledAt[current] = stamp;
+            settledCount++;
+            if (current == source) {
+                bound = distances[current];
+            }
+            for (int i = graph.firstInEdge(current), end = graph.endInEdge(current); i < end; i++) {
+                int weight = graph.weight(graph.inEdge(i));
+                if (weight == CompactGraph.NO_LINK) {
+                    continue;
+                }
+                int neighbor = graph.inSource(i);
+                if (reached[neighbor] != stamp) {
+                    reached[neighbor] = stamp;
+                    distances[neighbor] = Dijkstra.UNREACHABLE;
+                    estimates[neighbor] = estimate(landmarks, source, neighbor);
+                }
+                if (estimates[neighbor] == Dijkstra.UNREACHABLE || settledAt[neighbor] == stamp) {
+                    continue;
+                }
+                int newDistance = distances[current] + weight;
+                if (newDistance < distances[neighbor]) {
+                    distances[neighbor] = newDistance;
+                    parents[neighbor] = current;
+                    heap.insertOrDecrease(neighbor, newDistance + estimates[neighbor]);
+                }
+            }
+        }
+        heap.clearQueued();
+        searches.increment();
+        settled.add(settledCount);
+        if (settledAt[source] != stamp) {
+            cache.put(source, destination, ForwardingTable.NO_ROUTE);
+            return ForwardingTable.NO_ROUTE;
+        }
+        int length = canonicalPath(graph, s, source, destination);
+        if (length < 0) {
+            for (int v = source; v != destination; v = parents[v]) {
+                cache.put(v, destination, parents[v]);
+            }
+            return parents[source];
+        }
+        int[] path = s.path;
+        for (int i = 0; i < length; i++) {
+            cache.put(path[i], destination, i + 1 < length ? path[i + 1] : destination);
+        }
+        return length > 1 ? path[1] : destination;
+    }
+
+    // Follows canonical next hops from source into s.path, every router but the destination;
+    // returns the number of routers, or -1 if it ran into a loop of zero-weight links
+    private static int canonicalPath(CompactGraph graph, Search s, int source, int destination) {
+        int stamp = s.stamp;
+        int length = 0;
+        for (int v = source; v != destination; ) {
+            int next = -1;
+            for (int e = graph.firstEdge(v), end = graph.endEdge(v); e < end; e++) {
+                int w = graph.target(e);
+                int weight = graph.weight(e);
+                if (weight != CompactGraph.NO_LINK && s.settled[w] == stamp
+                        && (long) s.distances[w] + weight == s.distances[v] && (next < 0 || w < next)) {
+                    next = w;
+                }
+            }
+            if (next < 0 || length == s.path.length) {
+                return -1;
+            }
+            s.path[length++] = v;
+            v = next;
+        }
+        return length;
+    }
+
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    // Routers settled per search, i.e. how much of the network an average miss explores
+    public double getAverageSettled() {
+        long count = searches.sum();
+        return count > 0 ? (double) settled.sum() / count : 0.0;
+    }
+
+    public RouteCache getCache() {
+        return cache;
+    }
+
+    public int getLandmarkCount() {
+        return landmarkCount;
+    }
+
+    // Landmark distances plus the cache; the per-thread search arrays come on top
+    public long memoryBytes() {
+        Landmarks current = landmarks;
+        long bytes = cache.memoryBytes();
+        if (current != null) {
+            bytes += ARRAY_HEADER_BYTES + 4L * current.distances.length;
+        }
+        return bytes;
+    }
+
+    public String describe() {
+        Landmarks current = landmarks;
+        return "On-demand routing: " + (current != null ? current.routers.length : 0) + " landmarks, "
+                + getSearches() + " searches settling " + String.format("%.1f", getAverageSettled())
+                + " routers each, " + cache.describe() + ", " + memoryBytes() + " bytes";
+    }
+}
+
+// RouteCache class: bounded (router, destination) -> next hop map with CLOCK eviction
+// The cache is set-associative: a key hashes to one set of WAYS slots, so a lookup reads at most
+// WAYS keys and needs no probing or tombstones. Each slot has a reference bit set on every hit;
+// when a set is full, its clock hand sweeps the slots, clearing bits, and evicts the first slot
+// found unreferenced, which approximates LRU without moving entries. Sets are guarded by striped
+// locks so shards can share one cache.
+class RouteCache {
+    static final int MISS = -2;
+    static final int WAYS = 8;
+    private static final long EMPTY = -1;
+    private static final int MAX_STRIPES = 64;
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private final long[] keys;
+    private final int[] nextHops;
+    private final boolean[] referenced;
+    private final byte[] hands;
+    private final int setShift;
+    private final Object[] locks;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Holds at least WAYS entries, rounded up to a power of two
+    RouteCache(int entries) {
+        if (entries <= 0) {
+            throw new IllegalArgumentException("Route cache size must be positive, got " + entries);
+        }
+        int capacity = Math.max(WAYS, Integer.highestOneBit(entries - 1) << 1);
+        int sets = capacity / WAYS;
+        this.keys = new long[capacity];
+        this.nextHops = new int[capacity];
+        this.referenced = new boolean[capacity];
+        this.hands = new byte[sets];
+        this.setShift = 64 - Integer.numberOfTrailingZeros(sets);
+        this.locks = new Object[Math.min(sets, MAX_STRIPES)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private static long key(int router, int destination) {
+        return (long) router << 32 | (destination & 0xFFFFFFFFL);
+    }
+
+    // Fibonacci hashing: the top bits of key * 2^64 / phi
+    private int set(long key) {
+        return setShift == 64 ? 0 : (int) ((key * 0x9E3779B97F4A7C15L) >>> setShift);
+    }
+
+    // Cached next hop, which may be ForwardingTable.NO_ROUTE, or MISS
+    public int get(int router, int destination) {
+        long key = key(router, destination);
+        int set = set(key);
+        synchronized (locks[set & (locks.length - 1)]) {
+            for (int slot = set * WAYS, end = slot + WAYS; slot < end; slot++) {
+                if (keys[slot] == key) {
+                    referenced[slot] = true;
+                    hits.increment();
+                    return nextHops[slot];
+                }
+            }
+        }
+        misses.increment();
+        return MISS;
+    }
+
+    public void put(int router, int destination, int nextHop) {
+        long key = key(router, destination);
+        int set = set(key);
+        int first = set * WAYS;
+        synchronized (locks[set & (locks.length - 1)]) {
+            int free = -1;
+            for (int slot = first; slot < first + WAYS; slot++) {
+                if (keys[slot] == key) {
+                    nextHops[slot] = nextHop;
+                    return;
+                }
+                if (free < 0 && keys[slot] == EMPTY) {
+                    free = slot;
+                }
+            }
+            if (free < 0) {
+                int hand = hands[set];
+                while (referenced[first + hand]) {
+                    referenced[first + hand] = false;
+                    hand = (hand + 1) % WAYS;
+                }
+                free = first + hand;
+                hands[set] = (byte) ((hand + 1) % WAYS);
+                evictions.increment();
+            }
+            keys[free] = key;
+            nextHops[free] = nextHop;
+            referenced[free] = false;
+        }
+    }
+
+    // Drops every entry, e.g. after a topology change; the counters keep running
+    public void clear() {
+        for (int stripe = 0; stripe < locks.length; stripe++) {
+            synchronized (locks[stripe]) {
+                for (int set = stripe; set < hands.length; set += locks.length) {
+                    Arrays.fill(keys, set * WAYS, set * WAYS + WAYS, EMPTY);
+                    Arrays.fill(referenced, set * WAYS, set * WAYS + WAYS, false);
+                    hands[set] = 0;
+                }
+            }
+        }
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public int size() {
+        int size = 0;
+        for (long key : keys) {
+            size += key != EMPTY ? 1 : 0;
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double hitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total > 0 ? (double) hit / total : 0.0;
+    }
+
+    public long memoryBytes() {
+        return 4L * ARRAY_HEADER_BYTES + 8L * keys.length + 4L * nextHops.length + referenced.length
+                + hands.length;
+    }
+
+    public String describe() {
+        return "route cache " + size() + "/" + capacity() + " entries, hit rate "
+                + String.format("%.2f%%", 100 * hitRate()) + " (" + getHits() + " hits, " + getMisses()
+                + " misses, " + getEvictions() + " evictions)";
+    }
+}
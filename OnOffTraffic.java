@@ -0,0 +1,60 @@
+import java.io.IOException;
+
+// OnOffTraffic class: bursts at a constant rate during exponentially long on periods, silence in between
+class OnOffTraffic extends TrafficGenerator {
+    private final double packetsPerSecond;
+    private final double meanOnMillis;
+    private final double meanOffMillis;
+    private final double interval;
+    private final double meanOn;
+    private final double meanOff;
+    private double onLeft;
+
+    public OnOffTraffic(int source, DestinationPicker destinations, int sizeBytes, long startTime, long endTime,
+            SplitMix64 rng, double packetsPerSecond, double meanOnMillis, double meanOffMillis) {
+        super(source, destinations, sizeBytes, startTime, endTime, rng);
+        this.packetsPerSecond = packetsPerSecond;
+        this.meanOnMillis = meanOnMillis;
+        this.meanOffMillis = meanOffMillis;
+        this.interval = TICKS_PER_SECOND / packetsPerSecond;
+        this.meanOn = meanOnMillis * EventSimulator.TICKS_PER_MILLISECOND;
+        this.meanOff = meanOffMillis * EventSimulator.TICKS_PER_MILLISECOND;
+        this.onLeft = rng.nextExponential(meanOn);
+    }
+
+    // Each on period starts with a packet and continues one per interval while it lasts
+    @Override
+    protected double nextGap() {
+        if (onLeft >= interval) {
+            onLeft -= interval;
+            return interval;
+        }
+        double gap = onLeft + rng.nextExponential(meanOff);
+        onLeft = rng.nextExponential(meanOn);
+        return gap;
+    }
+
+    public double getPacketsPerSecond() {
+        return packetsPerSecond;
+    }
+
+    public double getMeanOnMillis() {
+        return meanOnMillis;
+    }
+
+    public double getMeanOffMillis() {
+        return meanOffMillis;
+    }
+
+    @Override
+    void writeState(CheckpointOutput out) throws IOException {
+        super.writeState(out);
+        out.writeDouble(onLeft);
+    }
+
+    @Override
+    void readState(MappedInput in) throws IOException {
+        super.readState(in);
+        onLeft = in.readDouble();
+    }
+}
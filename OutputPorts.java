@@ -0,0 +1,297 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+// OutputPorts class: the output queue of every link, as parallel primitive arrays
+// Port p is edge p of the CompactGraph it was built for, so a router's ports are the range
+// [firstPort(u), endPort(u)). Each port is a FIFO linked through PacketTable.nextInQueue: the
+// port holds only its head, tail and length, and a packet is in at most one queue at a time.
+// A topology with a million links therefore keeps its port state in a few flat arrays instead
+// of a million queue objects. Each port is only touched by the thread that owns its router.
+class OutputPorts {
+    static final int NO_PORT = -1;
+    // Routers with more links than this find a port by binary search over sortedPorts
+    private static final int LINEAR_SCAN_DEGREE = 8;
+    private static final long TICKS_PER_SECOND = EventSimulator.TICKS_PER_MILLISECOND * 1000;
+
+    private final CompactGraph graph;
+    private final int[] owners;
+    private final int[] heads;
+    private final int[] tails;
+    private final int[] lengths;
+    // Ticks each port spent transmitting, for link utilization
+    private final long[] busyTicks;
+    // Packets each port has queued and dropped since it was built, for congestion-aware routing
+    private final long[] enqueued;
+    private final long[] drops;
+    // Every router's ports ordered by target router
+    private final int[] sortedPorts;
+    // Drop state of every port for CoDel routers, null until one is attached
+    private CodelState codel;
+
+    // CodelState class: CoDel's per-queue variables for every port, see CodelRouter
+    static final class CodelState {
+        // When the sojourn time will have been above target for an interval, 0 while it is below
+        final long[] firstAboveTime;
+        final long[] dropNext;
+        final int[] count;
+        final int[] lastCount;
+        final boolean[] dropping;
+
+        CodelState(int ports) {
+            this.firstAboveTime = new long[ports];
+            this.dropNext = new long[ports];
+            this.count = new int[ports];
+            this.lastCount = new int[ports];
+            this.dropping = new boolean[ports];
+        }
+    }
+
+    OutputPorts(CompactGraph graph) {
+        this.graph = graph;
+        int n = graph.size();
+        int ports = graph.edgeCount();
+        this.owners = new int[ports];
+        this.heads = new int[ports];
+        this.tails = new int[ports];
+        this.lengths = new int[ports];
+        this.busyTicks = new long[ports];
+        this.enqueued = new long[ports];
+        this.drops = new long[ports];
+        this.sortedPorts = new int[ports];
+        Arrays.fill(heads, PacketTable.NO_PACKET);
+        Arrays.fill(tails, PacketTable.NO_PACKET);
+        long[] packed = new long[0];
+        for (int u = 0; u < n; u++) {
+            int first = graph.firstEdge(u);
+            int degree = graph.endEdge(u) - first;
+            if (packed.length < degree) {
+                packed = new long[Math.max(degree, 2 * packed.length)];
+            }
+            for (int i = 0; i < degree; i++) {
+                owners[first + i] = u;
+                packed[i] = (long) graph.target(first + i) << 32 | (first + i);
+            }
+            Arrays.sort(packed, 0, degree);
+            for (int i = 0; i < degree; i++) {
+                sortedPorts[first + i] = (int) packed[i];
+            }
+        }
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public int size() {
+        return owners.length;
+    }
+
+    public int firstPort(int router) {
+        return graph.firstEdge(router);
+    }
+
+    public int endPort(int router) {
+        return graph.endEdge(router);
+    }
+
+    // Router the port belongs to
+    public int owner(int port) {
+        return owners[port];
+    }
+
+    // Allocates the CoDel state of every port; called while routers are attached, before any
+    // simulation thread runs
+    void enableCodel() {
+        if (codel == null) {
+            codel = new CodelState(owners.length);
+        }
+    }
+
+    // Null unless a CoDel router is attached
+    CodelState getCodelState() {
+        return codel;
+    }
+
+    // Router at the far end of the port's link
+    public int target(int port) {
+        return graph.target(port);
+    }
+
+    // Cheapest live port from router to neighbor, NO_PORT if they are not linked
+    public int portTo(int router, int neighbor) {
+        int from = graph.firstEdge(router);
+        int to = graph.endEdge(router);
+        if (to - from <= LINEAR_SCAN_DEGREE) {
+            int best = NO_PORT;
+            for (int e = from; e < to; e++) {
+                if (graph.target(e) == neighbor && graph.weight(e) != CompactGraph.NO_LINK
+                        && (best == NO_PORT || graph.weight(e) < graph.weight(best))) {
+                    best = e;
+                }
+            }
+            return best;
+        }
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (graph.target(sortedPorts[mid]) < neighbor) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int best = NO_PORT;
+        for (int i = low; i < to && graph.target(sortedPorts[i]) == neighbor; i++) {
+            int e = sortedPorts[i];
+            if (graph.weight(e) != CompactGraph.NO_LINK && (best == NO_PORT || graph.weight(e) < graph.weight(best))) {
+                best = e;
+            }
+        }
+        return best;
+    }
+
+    public boolean isEmpty(int port) {
+        return lengths[port] == 0;
+    }
+
+    public int length(int port) {
+        return lengths[port];
+    }
+
+    // Head packet id, or PacketTable.NO_PACKET when empty
+    public int peek(int port) {
+        return heads[port];
+    }
+
+    public void add(PacketTable packets, int port, int packet) {
+        packets.setNextInQueue(packet, PacketTable.NO_PACKET);
+        if (lengths[port] == 0) {
+            heads[port] = packet;
+        } else {
+            packets.setNextInQueue(tails[port], packet);
+        }
+        tails[port] = packet;
+        lengths[port]++;
+        enqueued[port]++;
+    }
+
+    public int poll(PacketTable packets, int port) {
+        int packet = heads[port];
+        if (packet == PacketTable.NO_PACKET) {
+            return PacketTable.NO_PACKET;
+        }
+        heads[port] = packets.nextInQueue(packet);
+        if (--lengths[port] == 0) {
+            tails[port] = PacketTable.NO_PACKET;
+        }
+        return packet;
+    }
+
+    // Bits per second of the port's link
+    public long bandwidth(int port) {
+        return graph.bandwidth(port);
+    }
+
+    // Ticks to put sizeBytes on the port's link, rounded up
+    public long serializationTicks(int port, int sizeBytes) {
+        long bandwidth = graph.bandwidth(port);
+        return (sizeBytes * 8L * TICKS_PER_SECOND + bandwidth - 1) / bandwidth;
+    }
+
+    // Ticks from the end of a transmission to the arrival at the far end
+    public long propagationTicks(int port) {
+        return graph.delayMicros(port) * EventSimulator.TICKS_PER_MILLISECOND / 1000;
+    }
+
+    public void addBusyTicks(int port, long ticks) {
+        busyTicks[port] += ticks;
+    }
+
+    // Counts a packet dropped on its way into, or at the head of, the port's queue
+    public void countDrop(int port) {
+        drops[port]++;
+    }
+
+    public long enqueued(int port) {
+        return enqueued[port];
+    }
+
+    public long drops(int port) {
+        return drops[port];
+    }
+
+    // Share of the elapsed virtual time the port spent transmitting
+    public double utilization(int port, long elapsedTicks) {
+        return elapsedTicks > 0 ? (double) busyTicks[port] / elapsedTicks : 0.0;
+    }
+
+    // Utilization averaged over the live links
+    public double meanUtilization(long elapsedTicks) {
+        double sum = 0;
+        int links = 0;
+        for (int port = 0; port < owners.length; port++) {
+            if (graph.weight(port) != CompactGraph.NO_LINK) {
+                sum += utilization(port, elapsedTicks);
+                links++;
+            }
+        }
+        return links > 0 ? sum / links : 0.0;
+    }
+
+    public double maxUtilization(long elapsedTicks) {
+        double max = 0;
+        for (int port = 0; port < owners.length; port++) {
+            max = Math.max(max, utilization(port, elapsedTicks));
+        }
+        return max;
+    }
+
+    // Queues and counters of every port, for a checkpoint; the targets and order come from the graph
+    void writeState(CheckpointOutput out) throws IOException {
+        int ports = owners.length;
+        out.writeInt(ports);
+        out.writeInts(heads, 0, ports);
+        out.writeInts(tails, 0, ports);
+        out.writeInts(lengths, 0, ports);
+        out.writeLongs(busyTicks, 0, ports);
+        out.writeLongs(enqueued, 0, ports);
+        out.writeLongs(drops, 0, ports);
+        out.writeByte((byte) (codel != null ? 1 : 0));
+        if (codel != null) {
+            out.writeLongs(codel.firstAboveTime, 0, ports);
+            out.writeLongs(codel.dropNext, 0, ports);
+            out.writeInts(codel.count, 0, ports);
+            out.writeInts(codel.lastCount, 0, ports);
+            out.writeBooleans(codel.dropping, 0, ports);
+        }
+    }
+
+    void readState(MappedInput in) throws IOException {
+        int ports = in.readInt();
+        if (ports != owners.length) {
+            throw in.error("Checkpoint has " + ports + " ports, the topology " + owners.length);
+        }
+        in.readInts(heads, 0, ports);
+        in.readInts(tails, 0, ports);
+        in.readInts(lengths, 0, ports);
+        in.readLongs(busyTicks, 0, ports);
+        in.readLongs(enqueued, 0, ports);
+        in.readLongs(drops, 0, ports);
+        if (in.readByte() != 0) {
+            if (codel == null) {
+                throw in.error("Checkpoint has CoDel state, the topology no CoDel routers");
+            }
+            in.readLongs(codel.firstAboveTime, 0, ports);
+            in.readLongs(codel.dropNext, 0, ports);
+            in.readInts(codel.count, 0, ports);
+            in.readInts(codel.lastCount, 0, ports);
+            in.readBooleans(codel.dropping, 0, ports);
+        }
+    }
+
+    // Exact size of the port arrays in bytes, not counting the links of PacketTable
+    public long memoryBytes() {
+        return (long) owners.length * (4 + 4 + 4 + 4 + 8 + 8 + 8 + 4 + (codel != null ? 8 + 8 + 4 + 4 + 1 : 0));
+    }
+}
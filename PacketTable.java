@@ -0,0 +1,319 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// PacketTable class: packets in flight stored as parallel primitive arrays, addressed by int id
+// Queues and events carry only the id. Ids of delivered or dropped packets go on a free list and
+// are handed out again, so the table grows to the peak number of packets in flight rather than
+// the number ever injected. Payload text is not kept; the trace writes it once, at injection.
+// The arrays are split into fixed pages that are never moved. Each simulation shard allocates
+// from its own free list and its own pages, so shards can add and release packets while running
+// without locks; the only shared step is claiming a new page. A packet delivered or dropped in
+// another shard than the one that added it is set aside by the releasing shard and handed back to
+// the owner of its page between windows, so a shard that only sends still reuses its ids.
+class PacketTable {
+    static final int NO_PACKET = -1;
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int MAX_PAGES = 1 << (31 - PAGE_BITS);
+
+    // One page of packet fields
+    private static final class Page {
+        final int[] sources = new int[PAGE_SIZE];
+        final int[] destinations = new int[PAGE_SIZE];
+        final int[] sizeBytes = new int[PAGE_SIZE];
+        final long[] createdAt = new long[PAGE_SIZE];
+        final long[] arrivedAt = new long[PAGE_SIZE];
+        final int[] hopCounts = new int[PAGE_SIZE];
+        final int[] nextInQueue = new int[PAGE_SIZE];
+        final int[] flowHashes = new int[PAGE_SIZE];
+    }
+
+    private final Router[] routers;
+    private final Page[] pages = new Page[MAX_PAGES];
+    private final AtomicInteger pageCount = new AtomicInteger();
+    // Partition that claimed each page; null with a single partition
+    private final int[] pageOwners;
+    // Per partition: free list, next unused id in the partition's current page, and counters
+    private final int[][] freeIds;
+    private final int[] freeCounts;
+    // Ids released by the partition but owned by another, until returnReleasedIds
+    private final int[][] foreignIds;
+    private final int[] foreignCounts;
+    private final int[] nextFresh;
+    private final long[] issued;
+    private final long[] injected;
+
+    // routers maps the dense indices stored here back to routers, e.g. for trace records
+    public PacketTable(Router[] routers) {
+        this(routers, 1);
+    }
+
+    public PacketTable(Router[] routers, int partitions) {
+        this.routers = routers;
+        this.freeIds = new int[partitions][16];
+        this.freeCounts = new int[partitions];
+        this.foreignIds = new int[partitions][16];
+        this.foreignCounts = new int[partitions];
+        this.pageOwners = partitions > 1 ? new int[MAX_PAGES] : null;
+        this.nextFresh = new int[partitions];
+        this.issued = new long[partitions];
+        this.injected = new long[partitions];
+        Arrays.fill(nextFresh, NO_PACKET);
+    }
+
+    // Takes a free id for a packet from source to destination (router indices); only the thread
+    // running the partition may call this
+    public int add(int partition, int source, int destination, int bytes, long time) {
+        return add(partition, source, destination, bytes, 0, time);
+    }
+
+    // Same as add(int, int, int, int, long) for a packet of the given flow between the two routers
+    public int add(int partition, int source, int destination, int bytes, int flowId, long time) {
+        int id;
+        if (freeCounts[partition] > 0) {
+            id = freeIds[partition][--freeCounts[partition]];
+        } else {
+            id = nextFresh[partition];
+            if (id == NO_PACKET || (id & PAGE_MASK) == 0) {
+                id = claimPage(partition);
+            }
+            nextFresh[partition] = id + 1;
+            issued[partition]++;
+        }
+        Page page = pages[id >>> PAGE_BITS];
+        int slot = id & PAGE_MASK;
+        page.sources[slot] = source;
+        page.destinations[slot] = destination;
+        page.sizeBytes[slot] = bytes;
+        page.createdAt[slot] = time;
+        page.hopCounts[slot] = 0;
+        page.flowHashes[slot] = ForwardingTable.flowHash(source, destination, flowId);
+        injected[partition]++;
+        return id;
+    }
+
+    public int add(int partition, Packet packet, long time) {
+        return add(partition, packet.getSource().getIndex(), packet.getDestination().getIndex(),
+                packet.getSizeBytes(), packet.getFlowId(), time);
+    }
+
+    // Other shards only learn a page's ids through mailboxes drained after a barrier, which
+    // also publishes the page itself
+    private int claimPage(int partition) {
+        int page = pageCount.getAndIncrement();
+        if (page >= MAX_PAGES) {
+            throw new IllegalStateException("More than " + ((long) MAX_PAGES << PAGE_BITS) + " packets in flight");
+        }
+        pages[page] = new Page();
+        if (pageOwners != null) {
+            pageOwners[page] = partition;
+        }
+        return page << PAGE_BITS;
+    }
+
+    // Returns the id of a packet that left the network to the partition's free list, or sets it
+    // aside for returnReleasedIds if another partition added it
+    public void release(int partition, int id) {
+        if (pageOwners == null || pageOwners[id >>> PAGE_BITS] == partition) {
+            freeCounts[partition] = push(freeIds, freeCounts[partition], partition, id);
+        } else {
+            foreignCounts[partition] = push(foreignIds, foreignCounts[partition], partition, id);
+        }
+    }
+
+    private static int push(int[][] lists, int count, int partition, int id) {
+        if (count == lists[partition].length) {
+            lists[partition] = Arrays.copyOf(lists[partition], count * 2);
+        }
+        lists[partition][count] = id;
+        return count + 1;
+    }
+
+    // Moves the ids set aside by release to the free lists of the partitions that added them;
+    // only while no partition is running, e.g. in ShardedSimulator's window barrier
+    void returnReleasedIds() {
+        for (int p = 0; p < foreignCounts.length; p++) {
+            int[] foreign = foreignIds[p];
+            for (int i = 0; i < foreignCounts[p]; i++) {
+                int owner = pageOwners[foreign[i] >>> PAGE_BITS];
+                freeCounts[owner] = push(freeIds, freeCounts[owner], owner, foreign[i]);
+            }
+            foreignCounts[p] = 0;
+        }
+    }
+
+    public int source(int id) {
+        return pages[id >>> PAGE_BITS].sources[id & PAGE_MASK];
+    }
+
+    public int destination(int id) {
+        return pages[id >>> PAGE_BITS].destinations[id & PAGE_MASK];
+    }
+
+    public int sourceId(int id) {
+        return routers[source(id)].getId();
+    }
+
+    public int destinationId(int id) {
+        return routers[destination(id)].getId();
+    }
+
+    public int sizeBytes(int id) {
+        return pages[id >>> PAGE_BITS].sizeBytes[id & PAGE_MASK];
+    }
+
+    public long createdAt(int id) {
+        return pages[id >>> PAGE_BITS].createdAt[id & PAGE_MASK];
+    }
+
+    // Time the packet was queued at its current router
+    public long arrivedAt(int id) {
+        return pages[id >>> PAGE_BITS].arrivedAt[id & PAGE_MASK];
+    }
+
+    public void setArrivedAt(int id, long time) {
+        pages[id >>> PAGE_BITS].arrivedAt[id & PAGE_MASK] = time;
+    }
+
+    // Next packet in the same output queue, see OutputPorts
+    public int nextInQueue(int id) {
+        return pages[id >>> PAGE_BITS].nextInQueue[id & PAGE_MASK];
+    }
+
+    public void setNextInQueue(int id, int next) {
+        pages[id >>> PAGE_BITS].nextInQueue[id & PAGE_MASK] = next;
+    }
+
+    // ForwardingTable.flowHash of the packet's source, destination and flow
+    public int flowHash(int id) {
+        return pages[id >>> PAGE_BITS].flowHashes[id & PAGE_MASK];
+    }
+
+    public int hopCount(int id) {
+        return pages[id >>> PAGE_BITS].hopCounts[id & PAGE_MASK];
+    }
+
+    public void addHop(int id) {
+        pages[id >>> PAGE_BITS].hopCounts[id & PAGE_MASK]++;
+    }
+
+    // Packets currently in flight; only exact while no shard is running
+    public long live() {
+        long live = 0;
+        for (int p = 0; p < freeCounts.length; p++) {
+            live += issued[p] - freeCounts[p] - foreignCounts[p];
+        }
+        return live;
+    }
+
+    // Packets in flight that were added by one partition; exact for the thread running it as of
+    // the last returnReleasedIds
+    public long live(int partition) {
+        return issued[partition] - freeCounts[partition] - foreignCounts[partition];
+    }
+
+    public long injected(int partition) {
+        return injected[partition];
+    }
+
+    // Packets added over the table's lifetime
+    public long injected() {
+        long total = 0;
+        for (long count : injected) {
+            total += count;
+        }
+        return total;
+    }
+
+    // Every page and free list as they are, so packet ids stay valid across a checkpoint; only
+    // while no partition is running
+    void writeState(CheckpointOutput out) throws IOException {
+        returnReleasedIds();
+        int partitions = freeCounts.length;
+        out.writeInt(partitions);
+        for (int p = 0; p < partitions; p++) {
+            out.writeInt(freeCounts[p]);
+            out.writeInts(freeIds[p], 0, freeCounts[p]);
+            out.writeInt(nextFresh[p]);
+            out.writeLong(issued[p]);
+            out.writeLong(injected[p]);
+        }
+        int count = pageCount.get();
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            Page page = pages[i];
+            out.writeInts(page.sources, 0, PAGE_SIZE);
+            out.writeInts(page.destinations, 0, PAGE_SIZE);
+            out.writeInts(page.sizeBytes, 0, PAGE_SIZE);
+            out.writeLongs(page.createdAt, 0, PAGE_SIZE);
+            out.writeLongs(page.arrivedAt, 0, PAGE_SIZE);
+            out.writeInts(page.hopCounts, 0, PAGE_SIZE);
+            out.writeInts(page.nextInQueue, 0, PAGE_SIZE);
+            out.writeInts(page.flowHashes, 0, PAGE_SIZE);
+        }
+        if (pageOwners != null) {
+            out.writeInts(pageOwners, 0, count);
+        }
+    }
+
+    // Replaces the contents of an unused table with the same number of partitions
+    void readState(MappedInput in) throws IOException {
+        int partitions = in.readInt();
+        if (partitions != freeCounts.length) {
+            throw in.error("Checkpoint has " + partitions + " packet partitions, the simulator " + freeCounts.length);
+        }
+        for (int p = 0; p < partitions; p++) {
+            int free = in.readInt();
+            freeIds[p] = new int[Math.max(16, free)];
+            in.readInts(freeIds[p], 0, free);
+            freeCounts[p] = free;
+            nextFresh[p] = in.readInt();
+            issued[p] = in.readLong();
+            injected[p] = in.readLong();
+        }
+        int count = in.readInt();
+        if (count < 0 || count > MAX_PAGES) {
+            throw in.error("Invalid packet page count " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            Page page = new Page();
+            in.readInts(page.sources, 0, PAGE_SIZE);
+            in.readInts(page.destinations, 0, PAGE_SIZE);
+            in.readInts(page.sizeBytes, 0, PAGE_SIZE);
+            in.readLongs(page.createdAt, 0, PAGE_SIZE);
+            in.readLongs(page.arrivedAt, 0, PAGE_SIZE);
+            in.readInts(page.hopCounts, 0, PAGE_SIZE);
+            in.readInts(page.nextInQueue, 0, PAGE_SIZE);
+            in.readInts(page.flowHashes, 0, PAGE_SIZE);
+            pages[i] = page;
+        }
+        if (pageOwners != null) {
+            in.readInts(pageOwners, 0, count);
+            for (int i = 0; i < count; i++) {
+                if (pageOwners[i] < 0 || pageOwners[i] >= partitions) {
+                    throw in.error("Invalid owner of packet page " + i);
+                }
+            }
+        }
+        Arrays.fill(foreignCounts, 0);
+        if (pageCount.get() > count) {
+            Arrays.fill(pages, count, pageCount.get(), null);
+        }
+        pageCount.set(count);
+    }
+
+    public long capacity() {
+        return (long) pageCount.get() * PAGE_SIZE;
+    }
+
+    public long memoryBytes() {
+        long bytes = capacity() * (4 + 4 + 4 + 8 + 8 + 4 + 4 + 4) + 4L * MAX_PAGES
+                + (pageOwners != null ? 4L * MAX_PAGES : 0);
+        for (int p = 0; p < freeIds.length; p++) {
+            bytes += 4L * (freeIds[p].length + foreignIds[p].length);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,492 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// ParameterSweep class: one simulation per point of a grid of congestion-control parameters
+// The grid is every combination of the listed token bucket capacities, token rates, RED minimum
+// and maximum thresholds and queue capacities; a dimension left out keeps the topology's values.
+// The topology and its routes are built once and shared read-only: each run creates routers of
+// its own with the point's parameters, which adopt the same CompactGraph, forwarding tables and
+// path table, and gets its own output queues, packet table, traffic generators and
+// single-threaded simulator. Runs share no mutable state, so they go to a fixed thread pool, and
+// each run's row is appended to the results table as soon as it finishes. All runs see the same
+// seeded traffic, so a row depends only on its parameters, not on the thread count or the order
+// in which runs finish; the run column gives the point's place in the grid.
+// Usage: java ParameterSweep --topology <file> | --generate-topology <spec> [grid options] [options]
+public class ParameterSweep {
+    private static final String[] COLUMNS = {"run", "bucketCapacity", "tokenRate", "redMin", "redMax",
+            "queueCapacity", "packetsInjected", "packetsDelivered", "packetsDropped", "earlyDrops", "tokenMisses",
+            "deliveryRatio", "throughputPacketsPerSecond", "endToEndP50Ms", "endToEndP99Ms", "executionTimeMs"};
+
+    // One grid point; 0 or NaN leaves a parameter as the topology has it
+    static final class Point {
+        final int run;
+        final int bucketCapacity;
+        final int tokenRate;
+        final double redMin;
+        final double redMax;
+        final int queueCapacity;
+
+        Point(int run, int bucketCapacity, int tokenRate, double redMin, double redMax, int queueCapacity) {
+            this.run = run;
+            this.bucketCapacity = bucketCapacity;
+            this.tokenRate = tokenRate;
+            this.redMin = redMin;
+            this.redMax = redMax;
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    // Traffic every run gets, see BatchSimulation.createGenerators
+    static final class Traffic {
+        String model = "poisson";
+        double packetsPerSecond = 100;
+        double durationMillis = 1000;
+        int packetSize = 64;
+        long seed = 1;
+        int flows = TrafficGenerator.DEFAULT_FLOWS;
+        double onMillis = 10;
+        double offMillis = 90;
+        double paretoShape = 1.5;
+    }
+
+    private final Graph template;
+    private final ForwardingTable[] tables;
+    private final PathTable paths;
+    private final Traffic traffic;
+    private final Writer results;
+
+    // template must have its routes computed; its routers are only read
+    ParameterSweep(Graph template, Traffic traffic, Writer results) {
+        if (template.getOnDemandRouting() != null || template.getAdaptiveRouting() != null) {
+            throw new IllegalArgumentException(
+                    "A sweep needs routes computed up front, not on-demand or adaptive ones");
+        }
+        this.template = template;
+        this.tables = template.getForwardingTables();
+        this.paths = template.getRouterByIndex(0).getPathTable();
+        this.traffic = traffic;
+        this.results = results;
+    }
+
+    // Every combination of the given values, in row-major order with the last dimension varying
+    // fastest. Points whose RED minimum would not lie below the maximum at every RED router of
+    // the template are left out.
+    List<Point> grid(int[] bucketCapacities, int[] tokenRates, double[] redMins, double[] redMaxes,
+            int[] queueCapacities) {
+        List<RedRouter> redRouters = new ArrayList<>();
+        for (int i = 0; i < template.getCompactGraph().size(); i++) {
+            if (template.getRouterByIndex(i) instanceof RedRouter) {
+                redRouters.add((RedRouter) template.getRouterByIndex(i));
+            }
+        }
+        if (redRouters.isEmpty() && (!Double.isNaN(redMins[0]) || !Double.isNaN(redMaxes[0]))) {
+            throw new IllegalArgumentException("The topology has no RED routers to sweep thresholds on");
+        }
+        List<Point> points = new ArrayList<>();
+        for (int capacity : bucketCapacities) {
+            for (int rate : tokenRates) {
+                for (double min : redMins) {
+                    for (double max : redMaxes) {
+                        if (!thresholdsValid(redRouters, min, max)) {
+                            continue;
+                        }
+                        for (int queue : queueCapacities) {
+                            points.add(new Point(points.size(), capacity, rate, min, max, queue));
+                        }
+                    }
+                }
+            }
+        }
+        return points;
+    }
+
+    private static boolean thresholdsValid(List<RedRouter> redRouters, double min, double max) {
+        for (RedRouter red : redRouters) {
+            double effectiveMin = Double.isNaN(min) ? red.getMinThreshold() : min;
+            double effectiveMax = Double.isNaN(max) ? red.getMaxThreshold() : max;
+            if (effectiveMin < 0 || effectiveMax <= effectiveMin) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Runs every point on a pool of the given size, writing rows as runs finish; the first run to
+    // fail stops the sweep
+    void run(List<Point> points, int threads) throws IOException {
+        results.write(String.join(",", COLUMNS));
+        results.write(System.lineSeparator());
+        results.flush();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "sweep-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> runs = new ArrayList<>(points.size());
+            for (Point point : points) {
+                runs.add(pool.submit(() -> {
+                    writeRow(simulate(point));
+                    return null;
+                }));
+            }
+            for (Future<?> run : runs) {
+                run.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sweeping", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Sweep run failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Simulates one point in a graph of its own and returns its row
+    String[] simulate(Point point) {
+        long start = System.currentTimeMillis();
+        Graph graph = instantiate(point);
+        Simulator simulator = new EventSimulator(graph);
+        long endTime = (long) (traffic.durationMillis * EventSimulator.TICKS_PER_MILLISECOND);
+        for (TrafficGenerator generator : BatchSimulation.createGenerators(traffic.model, graph.getCompactGraph(),
+                traffic.packetsPerSecond, traffic.packetSize, 0, endTime, traffic.seed, traffic.onMillis,
+                traffic.offMillis, traffic.paretoShape)) {
+            if (generator != null) {
+                generator.setFlows(traffic.flows);
+                simulator.addGenerator(generator);
+            }
+        }
+        simulator.run();
+
+        long dropped = 0;
+        long earlyDrops = 0;
+        for (Router router : graph.getRouters()) {
+            dropped += router.getPacketsDropped();
+            earlyDrops += router.getEarlyDrops();
+        }
+        long injected = simulator.getPacketTable().injected();
+        Histogram latency = simulator.getEndToEndLatency();
+        boolean delivered = latency.getTotalCount() > 0;
+        double ticks = EventSimulator.TICKS_PER_MILLISECOND;
+        return new String[] {Integer.toString(point.run), swept(point.bucketCapacity), swept(point.tokenRate),
+                StatisticsWriter.number(point.redMin), StatisticsWriter.number(point.redMax),
+                swept(point.queueCapacity), Long.toString(injected), Long.toString(simulator.getPacketsDelivered()),
+                Long.toString(dropped), Long.toString(earlyDrops), Long.toString(simulator.getTokenMisses()),
+                StatisticsWriter.number(injected > 0
+                        ? (double) simulator.getPacketsDelivered() / injected : Double.NaN),
+                StatisticsWriter.number(simulator.getSimulatedThroughput()),
+                delivered ? StatisticsWriter.number(latency.valueAtPercentile(50) / ticks) : "",
+                delivered ? StatisticsWriter.number(latency.valueAtPercentile(99) / ticks) : "",
+                Long.toString(System.currentTimeMillis() - start)};
+    }
+
+    // Empty for a parameter the sweep leaves as the topology has it
+    private static String swept(int value) {
+        return value > 0 ? Integer.toString(value) : "";
+    }
+
+    // Routers like the template's with the point's parameters, on the template's links and routes
+    Graph instantiate(Point point) {
+        Graph graph = new Graph();
+        graph.setRandomSeed(traffic.seed);
+        int n = template.getCompactGraph().size();
+        for (int i = 0; i < n; i++) {
+            addRouter(graph, template.getRouterByIndex(i), point);
+        }
+        graph.adoptCompactLinks(template.getCompactGraph());
+        graph.installForwardingTables(tables);
+        if (paths != null) {
+            for (int i = 0; i < n; i++) {
+                graph.getRouterByIndex(i).setPathTable(paths);
+            }
+        }
+        return graph;
+    }
+
+    private static void addRouter(Graph graph, Router router, Point point) {
+        int id = router.getId();
+        TokenBucket bucket = router.getTokenBucket();
+        int capacity = point.bucketCapacity > 0 ? point.bucketCapacity : bucket.getBucketCapacity();
+        int rate = point.tokenRate > 0 ? point.tokenRate : bucket.getTokenRate();
+        if (router instanceof RedRouter) {
+            RedRouter red = (RedRouter) router;
+            double min = Double.isNaN(point.redMin) ? red.getMinThreshold() : point.redMin;
+            double max = Double.isNaN(point.redMax) ? red.getMaxThreshold() : point.redMax;
+            if (red instanceof AdaptiveRedRouter) {
+                graph.addAdaptiveRedRouter(id, capacity, rate, min, max, red.getDropProbability(),
+                        red.getInitialAverageQueueSize());
+            } else if (red.isGentle()) {
+                graph.addGentleRedRouter(id, capacity, rate, min, max, red.getDropProbability(),
+                        red.getInitialAverageQueueSize());
+            } else {
+                graph.addRedRouter(id, capacity, rate, min, max, red.getDropProbability(),
+                        red.getInitialAverageQueueSize());
+            }
+        } else if (router instanceof CodelRouter) {
+            CodelRouter codel = (CodelRouter) router;
+            graph.addCodelRouter(id, capacity, rate, codel.getTargetMillis(), codel.getIntervalMillis());
+        } else {
+            graph.addRouter(id, capacity, rate);
+        }
+        graph.getRouter(id).setQueueCapacity(point.queueCapacity > 0 ? point.queueCapacity
+                : router.getQueueCapacity());
+    }
+
+    private void writeRow(String[] row) throws IOException {
+        synchronized (results) {
+            results.write(String.join(",", row));
+            results.write(System.lineSeparator());
+            results.flush();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path topologyFile = null;
+        TopologyGenerator topologyGenerator = null;
+        WeightDistribution linkWeights = WeightDistribution.constant(1);
+        Path resultsFile = null;
+        String routing = "dijkstra";
+        int paths = 4;
+        int parallelism = NetworkSimulation.defaultRoutingParallelism();
+        int threads = Runtime.getRuntime().availableProcessors();
+        long linkBandwidth = Edge.DEFAULT_BANDWIDTH;
+        int linkDelayMicros = Edge.DEFAULT_DELAY_MICROS;
+        int[] bucketCapacities = {0};
+        int[] tokenRates = {0};
+        double[] redMins = {Double.NaN};
+        double[] redMaxes = {Double.NaN};
+        int[] queueCapacities = {0};
+        Traffic traffic = new Traffic();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+                String value = args[++i];
+                switch (option) {
+                    case "--topology":
+                        topologyFile = Paths.get(value);
+                        break;
+                    case "--generate-topology":
+                        topologyGenerator = TopologyGenerator.parse(value);
+                        break;
+                    case "--weights":
+                        linkWeights = WeightDistribution.parse(value);
+                        break;
+                    case "--results":
+                        resultsFile = Paths.get(value);
+                        break;
+                    case "--routing":
+                        routing = value;
+                        break;
+                    case "--paths":
+                        paths = Integer.parseInt(value);
+                        break;
+                    case "--routing-threads":
+                        parallelism = Integer.parseInt(value);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    case "--link-bandwidth":
+                        linkBandwidth = Math.round(Double.parseDouble(value) * 1e6);
+                        break;
+                    case "--link-delay":
+                        linkDelayMicros = (int) Math.round(Double.parseDouble(value) * 1000);
+                        break;
+                    case "--bucket-capacity":
+                        bucketCapacities = parsePositiveInts(option, value);
+                        break;
+                    case "--token-rate":
+                        tokenRates = parsePositiveInts(option, value);
+                        break;
+                    case "--red-min":
+                        redMins = parseDoubles(option, value);
+                        break;
+                    case "--red-max":
+                        redMaxes = parseDoubles(option, value);
+                        break;
+                    case "--queue-capacity":
+                        queueCapacities = parsePositiveInts(option, value);
+                        break;
+                    case "--generator":
+                        traffic.model = value;
+                        break;
+                    case "--rate":
+                        traffic.packetsPerSecond = Double.parseDouble(value);
+                        break;
+                    case "--duration":
+                        traffic.durationMillis = Double.parseDouble(value);
+                        break;
+                    case "--packet-size":
+                        traffic.packetSize = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        traffic.seed = Long.parseLong(value);
+                        break;
+                    case "--flows":
+                        traffic.flows = Integer.parseInt(value);
+                        break;
+                    case "--on-time":
+                        traffic.onMillis = Double.parseDouble(value);
+                        break;
+                    case "--off-time":
+                        traffic.offMillis = Double.parseDouble(value);
+                        break;
+                    case "--pareto-shape":
+                        traffic.paretoShape = Double.parseDouble(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + option);
+                }
+            }
+            if ((topologyFile != null) == (topologyGenerator != null)) {
+                throw new IllegalArgumentException("Exactly one of --topology and --generate-topology is required");
+            }
+            if (threads <= 0) {
+                throw new IllegalArgumentException("Number of threads must be positive, got " + threads);
+            }
+            Edge.checkLinkProperties(linkBandwidth, linkDelayMicros);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            usage();
+            System.exit(2);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Graph graph = new Graph();
+        graph.setDefaultLinkProperties(linkBandwidth, linkDelayMicros);
+        if (topologyFile != null) {
+            NetworkFiles.loadTopology(topologyFile, graph, 100, 1000);
+        } else {
+            graph.loadCompactTopology(topologyGenerator.generate(traffic.seed, linkWeights, parallelism), 100, 1000);
+        }
+        switch (routing) {
+            case "dijkstra":
+                graph.calculateShortestPaths(parallelism);
+                break;
+            case "ecmp":
+                graph.calculateMultipathRoutes(parallelism);
+                break;
+            case "k-shortest":
+                graph.calculateKShortestPaths(paths, parallelism);
+                break;
+            default:
+                System.err.println("A sweep routes with dijkstra, ecmp or k-shortest, not " + routing);
+                usage();
+                System.exit(2);
+                return;
+        }
+        CompactGraph compact = graph.getCompactGraph();
+        System.out.println("Topology of " + compact.size() + " routers and " + compact.edgeCount()
+                + " links routed with " + routing + " in " + (System.currentTimeMillis() - start) + " ms");
+
+        Writer results = resultsFile != null ? Files.newBufferedWriter(resultsFile, StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try {
+            ParameterSweep sweep = new ParameterSweep(graph, traffic, results);
+            List<Point> points;
+            try {
+                // An unknown traffic model fails here rather than in every run
+                BatchSimulation.createGenerators(traffic.model, compact, traffic.packetsPerSecond, traffic.packetSize,
+                        0, 0, traffic.seed, traffic.onMillis, traffic.offMillis, traffic.paretoShape);
+                points = sweep.grid(bucketCapacities, tokenRates, redMins, redMaxes, queueCapacities);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                usage();
+                System.exit(2);
+                return;
+            }
+            int combinations = bucketCapacities.length * tokenRates.length * redMins.length * redMaxes.length
+                    * queueCapacities.length;
+            System.out.println("Sweeping " + points.size() + " points on " + threads + " threads"
+                    + (points.size() < combinations ? ", skipping " + (combinations - points.size())
+                            + " whose RED minimum is not below the maximum" : ""));
+            long sweepStart = System.currentTimeMillis();
+            sweep.run(points, threads);
+            long elapsed = System.currentTimeMillis() - sweepStart;
+            System.out.println("Swept " + points.size() + " points in " + elapsed + " ms ("
+                    + String.format("%.1f", points.size() * 1000.0 / Math.max(1, elapsed)) + " runs/s)"
+                    + (resultsFile != null ? ", results in " + resultsFile : ""));
+        } finally {
+            if (resultsFile != null) {
+                results.close();
+            } else {
+                results.flush();
+            }
+        }
+    }
+
+    // Comma-separated list of values to sweep, e.g. 50,100,200
+    private static int[] parsePositiveInts(String option, String value) {
+        String[] parts = value.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+            if (values[i] <= 0) {
+                throw new IllegalArgumentException(option + " values must be positive, got " + values[i]);
+            }
+        }
+        return values;
+    }
+
+    private static double[] parseDoubles(String option, String value) {
+        String[] parts = value.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i].trim());
+            if (!(values[i] >= 0)) {
+                throw new IllegalArgumentException(option + " values must not be negative, got " + values[i]);
+            }
+        }
+        return values;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: java ParameterSweep --topology <file> | --generate-topology <spec>");
+        System.out.println("            [grid options] [options]");
+        System.out.println("Grid options, each a comma-separated list; one left out keeps the topology's values:");
+        System.out.println("  --bucket-capacity <n,...> token bucket capacities of every router");
+        System.out.println("  --token-rate <n,...>      tokens per second of every router");
+        System.out.println("  --red-min <n,...>         RED minimum thresholds of the topology's RED routers,");
+        System.out.println("                            in packets");
+        System.out.println("  --red-max <n,...>         RED maximum thresholds; points with min >= max are skipped");
+        System.out.println("  --queue-capacity <n,...>  packets each router can buffer (default 100)");
+        System.out.println("Options:");
+        System.out.println("  --results <file>          CSV results table, one row per run as it finishes");
+        System.out.println("                            (default: standard output)");
+        System.out.println("  --threads <n>             simulations run at once (default: all cores)");
+        System.out.println("  --routing <algorithm>     dijkstra, ecmp or k-shortest, computed once for all runs");
+        System.out.println("                            (default dijkstra)");
+        System.out.println("  --paths <k>               paths per router pair for k-shortest (default 4)");
+        System.out.println("  --routing-threads <n>     threads for routing and topology generation");
+        System.out.println("                            (default: -Drouting.threads, else all cores)");
+        System.out.println("  --weights <distribution>  generated link weights, as for BatchSimulation");
+        System.out.println("                            (default constant:1)");
+        System.out.println("  --link-bandwidth <Mbit/s> for links without their own bandwidth (default 0.004)");
+        System.out.println("  --link-delay <ms>         propagation delay of those links (default 10)");
+        System.out.println("  --generator <model>       poisson, onoff, pareto or gravity traffic from every router");
+        System.out.println("                            (default poisson)");
+        System.out.println("  --rate, --duration, --packet-size, --seed, --flows,");
+        System.out.println("  --on-time, --off-time, --pareto-shape");
+        System.out.println("                            as for BatchSimulation; every run gets the same traffic");
+    }
+}
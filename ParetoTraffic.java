@@ -0,0 +1,30 @@
+// ParetoTraffic class: heavy-tailed Pareto gaps with the given mean rate; shape must exceed 1
+class ParetoTraffic extends TrafficGenerator {
+    private final double packetsPerSecond;
+    private final double scale;
+    private final double shape;
+
+    public ParetoTraffic(int source, DestinationPicker destinations, int sizeBytes, long startTime, long endTime,
+            SplitMix64 rng, double packetsPerSecond, double shape) {
+        super(source, destinations, sizeBytes, startTime, endTime, rng);
+        if (shape <= 1.0) {
+            throw new IllegalArgumentException("Pareto shape must be greater than 1 for a finite mean");
+        }
+        this.packetsPerSecond = packetsPerSecond;
+        this.shape = shape;
+        this.scale = TICKS_PER_SECOND / packetsPerSecond * (shape - 1.0) / shape;
+    }
+
+    @Override
+    protected double nextGap() {
+        return rng.nextPareto(scale, shape);
+    }
+
+    public double getPacketsPerSecond() {
+        return packetsPerSecond;
+    }
+
+    public double getShape() {
+        return shape;
+    }
+}
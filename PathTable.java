@@ -0,0 +1,230 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// PathTable class: up to k explicit paths for every router pair, shared read-only by all routers
+// The paths of pair (s, d) are p in [pairOffsets[s * n + d], pairOffsets[s * n + d + 1]), and path
+// p visits hops[pathOffsets[p] .. pathOffsets[p + 1]) from s to d. A flow takes path p when its
+// hash falls below thresholds[p], so each path carries a share of the flows inversely
+// proportional to its cost. Paths costing more than MAX_STRETCH times the shortest are left out,
+// since a long detour loads more links than it relieves. The flow hash and hop count travel with
+// the packet, which lets every router on the way look up the same path without any per-flow state.
+class PathTable {
+    private static final long HASH_SPACE = 1L << 32;
+    static final int MAX_STRETCH = 2;
+
+    private final int size;
+    private final int[] pairOffsets;
+    private final int[] pathOffsets;
+    private final long[] thresholds;
+    private final int[] hops;
+
+    private PathTable(int size, int[] pairOffsets, int[] pathOffsets, long[] thresholds, int[] hops) {
+        this.size = size;
+        this.pairOffsets = pairOffsets;
+        this.pathOffsets = pathOffsets;
+        this.thresholds = thresholds;
+        this.hops = hops;
+    }
+
+    // Runs Yen's algorithm for every ordered pair; n * n * k Dijkstra runs at most, meant for
+    // the networks traffic engineering is done on rather than generated giants. Sources are split
+    // across a ForkJoinPool of the given size; the table is the same as from a sequential build.
+    public static PathTable build(CompactGraph graph, int k, int parallelism) {
+        int n = graph.size();
+        if ((long) n * n >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many routers for a path table: " + n);
+        }
+        if (k <= 0) {
+            throw new IllegalArgumentException("Number of paths must be positive, got " + k);
+        }
+        SourcePaths[] bySource = new SourcePaths[n];
+        if (parallelism <= 1 || n < 2 * PathSearchTask.MIN_SOURCES_PER_TASK) {
+            PathSearchTask.searchRange(graph, new KShortestPaths(graph), k, bySource, 0, n);
+        } else {
+            ThreadLocal<KShortestPaths> scratch = ThreadLocal.withInitial(() -> new KShortestPaths(graph));
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new PathSearchTask(graph, scratch, k, bySource, 0, n));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        int pathCount = 0;
+        int hopCount = 0;
+        for (SourcePaths source : bySource) {
+            pathCount += source.thresholds.length;
+            hopCount += source.hops.length;
+        }
+        int[] pairOffsets = new int[n * n + 1];
+        int[] pathOffsets = new int[pathCount + 1];
+        long[] thresholds = new long[pathCount];
+        int[] hops = new int[hopCount];
+        int path = 0;
+        int hop = 0;
+        for (int s = 0; s < n; s++) {
+            SourcePaths source = bySource[s];
+            for (int d = 0, p = 0; d < n; d++) {
+                pairOffsets[s * n + d] = path + p;
+                p += source.pathCounts[d];
+            }
+            for (int p = 0; p < source.thresholds.length; p++) {
+                pathOffsets[path + p] = hop + source.pathOffsets[p];
+            }
+            System.arraycopy(source.thresholds, 0, thresholds, path, source.thresholds.length);
+            System.arraycopy(source.hops, 0, hops, hop, source.hops.length);
+            path += source.thresholds.length;
+            hop += source.hops.length;
+        }
+        pairOffsets[n * n] = pathCount;
+        pathOffsets[pathCount] = hopCount;
+        return new PathTable(n, pairOffsets, pathOffsets, thresholds, hops);
+    }
+
+    // Paths from one source to every destination, laid out like the table's own arrays
+    static final class SourcePaths {
+        final int[] pathCounts;
+        final int[] pathOffsets;
+        final long[] thresholds;
+        final int[] hops;
+
+        SourcePaths(int[] pathCounts, int[] pathOffsets, long[] thresholds, int[] hops) {
+            this.pathCounts = pathCounts;
+            this.pathOffsets = pathOffsets;
+            this.thresholds = thresholds;
+            this.hops = hops;
+        }
+
+        static SourcePaths search(KShortestPaths search, int n, int s, int k) {
+            int[] pathCounts = new int[n];
+            int[] pathOffsets = new int[16];
+            long[] thresholds = new long[16];
+            int[] hops = new int[64];
+            int pathCount = 0;
+            int hopCount = 0;
+            double[] shares = new double[k];
+            for (int d = 0; d < n; d++) {
+                List<int[]> paths = search.find(s, d, k);
+                long limit = paths.isEmpty() ? 0 : MAX_STRETCH * Math.max(1, search.cost(paths.get(0)));
+                while (paths.size() > 1 && search.cost(paths.get(paths.size() - 1)) > limit) {
+                    paths.remove(paths.size() - 1);
+                }
+                double total = 0;
+                for (int i = 0; i < paths.size(); i++) {
+                    shares[i] = 1.0 / Math.max(1, search.cost(paths.get(i)));
+                    total += shares[i];
+                }
+                double cumulative = 0;
+                for (int i = 0; i < paths.size(); i++) {
+                    int[] path = paths.get(i);
+                    if (pathCount == pathOffsets.length) {
+                        pathOffsets = Arrays.copyOf(pathOffsets, 2 * pathOffsets.length);
+                        thresholds = Arrays.copyOf(thresholds, 2 * thresholds.length);
+                    }
+                    if (hopCount + path.length > hops.length) {
+                        hops = Arrays.copyOf(hops, Math.max(2 * hops.length, hopCount + path.length));
+                    }
+                    cumulative += shares[i];
+                    pathOffsets[pathCount] = hopCount;
+                    thresholds[pathCount] = i + 1 == paths.size() ? HASH_SPACE
+                            : (long) (cumulative / total * HASH_SPACE);
+                    System.arraycopy(path, 0, hops, hopCount, path.length);
+                    hopCount += path.length;
+                    pathCount++;
+                }
+                pathCounts[d] = paths.size();
+            }
+            return new SourcePaths(pathCounts, Arrays.copyOf(pathOffsets, pathCount),
+                    Arrays.copyOf(thresholds, pathCount), Arrays.copyOf(hops, hopCount));
+        }
+    }
+
+    // Router after the given hop on the flow's path from source to destination, or
+    // ForwardingTable.NO_ROUTE when the pair has no paths or the packet is not where its path
+    // says it should be, e.g. after being rerouted
+    public int nextHop(int source, int destination, int flowHash, int hop, int router) {
+        int pair = source * size + destination;
+        int p = pairOffsets[pair];
+        int end = pairOffsets[pair + 1];
+        if (p == end) {
+            return ForwardingTable.NO_ROUTE;
+        }
+        long point = flowHash & 0xFFFFFFFFL;
+        while (p + 1 < end && point >= thresholds[p]) {
+            p++;
+        }
+        int at = pathOffsets[p] + hop;
+        if (at + 1 >= pathOffsets[p + 1] || hops[at] != router) {
+            return ForwardingTable.NO_ROUTE;
+        }
+        return hops[at + 1];
+    }
+
+    public int pathCount(int source, int destination) {
+        int pair = source * size + destination;
+        return pairOffsets[pair + 1] - pairOffsets[pair];
+    }
+
+    // Router indices of path i between the pair
+    public int[] path(int source, int destination, int i) {
+        int p = pairOffsets[source * size + destination] + i;
+        return Arrays.copyOfRange(hops, pathOffsets[p], pathOffsets[p + 1]);
+    }
+
+    public long memoryBytes() {
+        return 4L * (pairOffsets.length + pathOffsets.length + hops.length) + 8L * thresholds.length;
+    }
+
+    public String describe() {
+        int pairs = 0;
+        for (int pair = 0; pair < size * size; pair++) {
+            pairs += pairOffsets[pair + 1] > pairOffsets[pair] ? 1 : 0;
+        }
+        return "Path table: " + thresholds.length + " paths for " + pairs + " pairs ("
+                + String.format("%.2f", pairs > 0 ? (double) thresholds.length / pairs : 0.0) + " per pair), "
+                + memoryBytes() + " bytes";
+    }
+}
+
+// PathSearchTask class: fork-join split of the path table's per-source searches over source ranges
+class PathSearchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    // Each source runs up to n * k Dijkstra searches, so ranges stay much shorter than ShortestPathTask's
+    static final int MIN_SOURCES_PER_TASK = 4;
+
+    private final CompactGraph graph;
+    private final ThreadLocal<KShortestPaths> scratch;
+    private final int k;
+    private final PathTable.SourcePaths[] bySource;
+    private final int from;
+    private final int to;
+
+    PathSearchTask(CompactGraph graph, ThreadLocal<KShortestPaths> scratch, int k, PathTable.SourcePaths[] bySource,
+            int from, int to) {
+        this.graph = graph;
+        this.scratch = scratch;
+        this.k = k;
+        this.bySource = bySource;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= MIN_SOURCES_PER_TASK) {
+            searchRange(graph, scratch.get(), k, bySource, from, to);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new PathSearchTask(graph, scratch, k, bySource, from, mid),
+                new PathSearchTask(graph, scratch, k, bySource, mid, to));
+    }
+
+    static void searchRange(CompactGraph graph, KShortestPaths search, int k, PathTable.SourcePaths[] bySource,
+            int from, int to) {
+        for (int source = from; source < to; source++) {
+            bySource[source] = PathTable.SourcePaths.search(search, graph.size(), source, k);
+        }
+    }
+}
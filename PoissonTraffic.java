@@ -0,0 +1,21 @@
+// PoissonTraffic class: exponentially distributed gaps, i.e. independent arrivals at a fixed rate
+class PoissonTraffic extends TrafficGenerator {
+    private final double packetsPerSecond;
+    private final double meanGap;
+
+    public PoissonTraffic(int source, DestinationPicker destinations, int sizeBytes, long startTime, long endTime,
+            SplitMix64 rng, double packetsPerSecond) {
+        super(source, destinations, sizeBytes, startTime, endTime, rng);
+        this.packetsPerSecond = packetsPerSecond;
+        this.meanGap = TICKS_PER_SECOND / packetsPerSecond;
+    }
+
+    public double getPacketsPerSecond() {
+        return packetsPerSecond;
+    }
+
+    @Override
+    protected double nextGap() {
+        return rng.nextExponential(meanGap);
+    }
+}
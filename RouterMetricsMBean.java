@@ -0,0 +1,12 @@
+// RouterMetricsMBean interface: JMX attributes of one router, see SimulationMetrics
+public interface RouterMetricsMBean {
+    int getId();
+
+    int getQueueDepth();
+
+    int getPacketsForwarded();
+
+    int getQueueFullDrops();
+
+    int getEarlyDrops();
+}
@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// RoutingRecomputeEvent class: JFR event spanning one routing computation in Graph
+@Name("networksimulation.RoutingRecompute")
+@Label("Routing Recompute")
+@Category("Network Simulation")
+@StackTrace(false)
+class RoutingRecomputeEvent extends Event {
+    @Label("Algorithm")
+    String algorithm;
+
+    @Label("Routers")
+    int routers;
+
+    @Label("Links")
+    int links;
+
+    // Also timed outside JFR for Graph's own counters; transient fields are not recorded
+    transient long startNanos;
+
+    static RoutingRecomputeEvent start() {
+        RoutingRecomputeEvent event = new RoutingRecomputeEvent();
+        event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+}
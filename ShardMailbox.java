@@ -0,0 +1,43 @@
+import java.util.Arrays;
+
+// ShardMailbox class: single-producer/single-consumer buffer of arrivals crossing shard boundaries
+// The sending shard appends during a window and the receiving shard drains it after the window
+// barrier, which also publishes the writes, so neither side needs locks or atomics.
+class ShardMailbox {
+    private long[] times = new long[256];
+    private int[] routers = new int[256];
+    private int[] packets = new int[256];
+    private int size;
+
+    public void add(long time, int router, int packet) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            routers = Arrays.copyOf(routers, size * 2);
+            packets = Arrays.copyOf(packets, size * 2);
+        }
+        times[size] = time;
+        routers[size] = router;
+        packets[size] = packet;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long time(int i) {
+        return times[i];
+    }
+
+    public int router(int i) {
+        return routers[i];
+    }
+
+    public int packet(int i) {
+        return packets[i];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
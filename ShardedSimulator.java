@@ -0,0 +1,355 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+// ShardedSimulator class: the event simulation split across worker threads by router range
+// Synchronization is conservative (YAWNS): every shard processes the window [T, T + lookahead),
+// where T is the earliest pending event anywhere and lookahead is the smallest propagation delay
+// of a link that crosses shards, so nothing sent during a window can land inside it. Packets
+// crossing shards go through per-pair mailboxes that are drained, in shard order, after the
+// window barrier. For a given shard count the results do not depend on thread timing.
+class ShardedSimulator implements Simulator {
+    private final Router[] routers;
+    private final int[] shardOf;
+    private final PacketTable packets;
+    private final SimulationShard[] shards;
+    private final ShardMailbox[][] mailboxes;
+    private final TraceLog trace;
+    private final long lookahead;
+    private final CyclicBarrier windowBarrier;
+    private final CyclicBarrier exchangeBarrier;
+    private final boolean[] transmitting;
+    private final boolean[] refillPending;
+    // Routes that follow congestion are updated between windows, which never straddle an update
+    private final AdaptiveRouting adaptive;
+    // Lets the shared trace stamp each record with the virtual time of the shard that wrote it;
+    // other threads see the driver clock, which tracks injections and the end of the run
+    private final ThreadLocal<VirtualClock> workerClock;
+    private final VirtualClock driverClock;
+    private long windowEnd;
+    // Windows stop short of this virtual time, see runUntil
+    private long runEnd;
+    private boolean finished;
+    private long windows;
+    private long runNanos;
+    private volatile Throwable failure;
+
+    public ShardedSimulator(Graph graph, int shardCount) {
+        CompactGraph compact = graph.getCompactGraph();
+        int n = compact.size();
+        int count = Math.max(1, Math.min(shardCount, n));
+        this.routers = new Router[n];
+        this.shardOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            routers[i] = graph.getRouterByIndex(i);
+            shardOf[i] = (int) ((long) i * count / n);
+        }
+        this.packets = new PacketTable(routers, count);
+        this.trace = graph.getTraceLog();
+        this.mailboxes = new ShardMailbox[count][count];
+        this.shards = new SimulationShard[count];
+        OutputPorts ports = graph.getOutputPorts();
+        this.transmitting = new boolean[ports.size()];
+        this.refillPending = new boolean[n];
+        for (int s = 0; s < count; s++) {
+            for (int t = 0; t < count; t++) {
+                if (s != t) {
+                    mailboxes[s][t] = new ShardMailbox();
+                }
+            }
+            shards[s] = new SimulationShard(s, routers, shardOf, packets, ports, mailboxes[s], transmitting,
+                    refillPending, trace);
+        }
+        this.lookahead = computeLookahead(compact, ports);
+        this.adaptive = graph.getAdaptiveRouting();
+        if (adaptive != null) {
+            adaptive.attach(ports, 0);
+        }
+        this.driverClock = new VirtualClock();
+        this.workerClock = ThreadLocal.withInitial(() -> driverClock);
+        trace.setTimeSource(() -> workerClock.get().nanoTime());
+        this.windowBarrier = new CyclicBarrier(count, this::nextWindow);
+        this.exchangeBarrier = new CyclicBarrier(count);
+    }
+
+    // Smallest delay between a transmit finishing in one shard and the arrival it causes in another
+    private long computeLookahead(CompactGraph compact, OutputPorts ports) {
+        long min = Long.MAX_VALUE;
+        for (int u = 0; u < compact.size(); u++) {
+            for (int e = compact.firstEdge(u), end = compact.endEdge(u); e < end; e++) {
+                if (shardOf[compact.target(e)] != shardOf[u] && compact.weight(e) != CompactGraph.NO_LINK) {
+                    min = Math.min(min, ports.propagationTicks(e));
+                }
+            }
+        }
+        if (min <= 0) {
+            throw new IllegalStateException(
+                    "Sharded simulation needs a positive propagation delay on cross-shard links");
+        }
+        return min;
+    }
+
+    // Schedules the packet to arrive at its source router at the given virtual time
+    @Override
+    public void inject(Packet packet, long time) {
+        int source = packet.getSource().getIndex();
+        int id = packets.add(shardOf[source], packet, time);
+        if (trace.packets()) {
+            driverClock.setNanoTime(time * EventSimulator.NANOS_PER_TICK);
+            trace.inject(packet.getSource().getId(), id, packet.getData());
+        }
+        shards[shardOf[source]].scheduleArrival(time, source, id);
+    }
+
+    // Same as inject(Packet, long) for a payload-less packet of a flow between router indices
+    @Override
+    public void inject(int source, int destination, int sizeBytes, int flowId, long time) {
+        int shard = shardOf[source];
+        shards[shard].scheduleArrival(time, source,
+                packets.add(shard, source, destination, sizeBytes, flowId, time));
+    }
+
+    @Override
+    public void addGenerator(TrafficGenerator generator) {
+        shards[shardOf[generator.getSource()]].addGenerator(generator);
+    }
+
+    @Override
+    public PacketTable getPacketTable() {
+        return packets;
+    }
+
+    // Runs one worker thread per shard until every shard's queue drains
+    @Override
+    public void run() {
+        runUntil(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void runUntil(long end) {
+        long start = System.nanoTime();
+        runEnd = end;
+        finished = false;
+        Thread[] workers = new Thread[shards.length];
+        for (int s = 0; s < shards.length; s++) {
+            SimulationShard shard = shards[s];
+            workers[s] = new Thread(() -> work(shard), "shard-" + s);
+            workers[s].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for shard workers", e);
+            }
+        }
+        if (adaptive != null) {
+            adaptive.close();
+        }
+        runNanos += System.nanoTime() - start;
+        driverClock.setNanoTime(getVirtualTime() * EventSimulator.NANOS_PER_TICK);
+        if (failure != null) {
+            throw new IllegalStateException("Shard worker failed", failure);
+        }
+    }
+
+    // A worker whose shard fails keeps arriving at both barriers, so the others are never left
+    // waiting for it, and the next window barrier ends the run
+    private void work(SimulationShard shard) {
+        workerClock.set(shard.getClock());
+        try {
+            while (true) {
+                windowBarrier.await();
+                if (finished) {
+                    return;
+                }
+                try {
+                    shard.processUntil(windowEnd);
+                } catch (RuntimeException | Error e) {
+                    fail(e);
+                }
+                exchangeBarrier.await();
+                if (failure == null) {
+                    try {
+                        shard.drainInboxes(mailboxes);
+                    } catch (RuntimeException | Error e) {
+                        fail(e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        } catch (BrokenBarrierException e) {
+            // An interrupted worker or a failed barrier action broke the barrier and recorded the cause
+        } catch (RuntimeException | Error e) {
+            // Thrown by the barrier action, which breaks the barrier for the other workers
+            fail(e);
+        }
+    }
+
+    private synchronized void fail(Throwable cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+    }
+
+    // Barrier action: all workers are parked, so every shard's queue can be read safely
+    private void nextWindow() {
+        packets.returnReleasedIds();
+        long earliest = Long.MAX_VALUE;
+        for (SimulationShard shard : shards) {
+            earliest = Math.min(earliest, shard.nextEventTime());
+        }
+        if (earliest >= runEnd || failure != null) {
+            finished = true;
+            return;
+        }
+        windows++;
+        windowEnd = Math.min(runEnd, earliest > Long.MAX_VALUE - lookahead ? Long.MAX_VALUE : earliest + lookahead);
+        if (adaptive != null) {
+            while (adaptive.nextUpdateTime() <= earliest) {
+                adaptive.update();
+            }
+            windowEnd = Math.min(windowEnd, adaptive.nextUpdateTime());
+        }
+    }
+
+    // Mailboxes are empty between runs: every window ends with the shards draining them
+    @Override
+    public void writeState(CheckpointOutput out) throws IOException {
+        out.writeInt(shards.length);
+        out.writeLong(windows);
+        out.writeBooleans(transmitting, 0, transmitting.length);
+        out.writeBooleans(refillPending, 0, refillPending.length);
+        Map<DestinationPicker, Integer> pickers = new IdentityHashMap<>();
+        for (SimulationShard shard : shards) {
+            shard.writeState(out, pickers);
+        }
+    }
+
+    @Override
+    public void readState(MappedInput in) throws IOException {
+        int count = in.readInt();
+        if (count != shards.length) {
+            throw in.error("Checkpoint of " + count + " shards cannot be restored into " + shards.length);
+        }
+        windows = in.readLong();
+        in.readBooleans(transmitting, 0, transmitting.length);
+        in.readBooleans(refillPending, 0, refillPending.length);
+        List<DestinationPicker> pickers = new ArrayList<>();
+        for (SimulationShard shard : shards) {
+            shard.readState(in, pickers);
+        }
+        if (adaptive != null) {
+            adaptive.attach(shards[0].getPorts(), getVirtualTime());
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public long getLookahead() {
+        return lookahead;
+    }
+
+    public long getWindows() {
+        return windows;
+    }
+
+    @Override
+    public long getEventsProcessed() {
+        long total = 0;
+        for (SimulationShard shard : shards) {
+            total += shard.getEventsProcessed();
+        }
+        return total;
+    }
+
+    @Override
+    public long getPacketsDelivered() {
+        long total = 0;
+        for (SimulationShard shard : shards) {
+            total += shard.getPacketsDelivered();
+        }
+        return total;
+    }
+
+    @Override
+    public long getPacketsUnroutable() {
+        long total = 0;
+        for (SimulationShard shard : shards) {
+            total += shard.getPacketsUnroutable();
+        }
+        return total;
+    }
+
+    @Override
+    public long getVirtualTime() {
+        long latest = 0;
+        for (SimulationShard shard : shards) {
+            latest = Math.max(latest, shard.getVirtualTime());
+        }
+        return latest;
+    }
+
+    @Override
+    public long getTokenMisses() {
+        long total = 0;
+        for (SimulationShard shard : shards) {
+            total += shard.getTokenMisses();
+        }
+        return total;
+    }
+
+    @Override
+    public long getLiveCount(int counter) {
+        long result = 0;
+        for (SimulationShard shard : shards) {
+            long value = shard.getPublished(counter);
+            result = counter == SimulationShard.VIRTUAL_TIME ? Math.max(result, value) : result + value;
+        }
+        return result;
+    }
+
+    @Override
+    public double getAverageEndToEndDelayMillis() {
+        return getEndToEndLatency().getMean() / EventSimulator.TICKS_PER_MILLISECOND;
+    }
+
+    // Merges the shards' histograms into a new one
+    @Override
+    public Histogram getEndToEndLatency() {
+        Histogram merged = Router.newLatencyHistogram();
+        for (SimulationShard shard : shards) {
+            merged.add(shard.getEndToEndLatency());
+        }
+        return merged;
+    }
+
+    @Override
+    public double getSimulatedThroughput() {
+        return EventSimulator.simulatedThroughput(getPacketsDelivered(), getVirtualTime());
+    }
+
+    @Override
+    public double getEventsPerSecond() {
+        return runNanos > 0 ? getEventsProcessed() * 1e9 / runNanos : 0.0;
+    }
+
+    @Override
+    public String describe() {
+        return EventSimulator.describe(packets.injected(), getPacketsDelivered(), getPacketsUnroutable(),
+                getEndToEndLatency(), getVirtualTime(), getEventsProcessed(), getEventsPerSecond())
+                + ", " + shards.length + " shards, " + windows + " windows"
+                + (lookahead == Long.MAX_VALUE ? ""
+                        : " of " + String.format("%.3f", (double) lookahead / EventSimulator.TICKS_PER_MILLISECOND)
+                                + " ms");
+    }
+}
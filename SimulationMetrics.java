@@ -0,0 +1,466 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+// SimulationMetrics class: live view of a running simulation for JMX, JFR and a snapshot file
+// Nothing is added to the event loop beyond what the shards already publish every few thousand
+// events (SimulationShard.getPublished) and the routers' own counters, which are read here without
+// synchronization and may lag by a few events. Work happens only when something asks: a JMX
+// read, a JFR recording that enables SimulationProgressEvent, or the snapshot file's timer.
+// Created after the simulator and closed after run(), when the last snapshot is exact.
+class SimulationMetrics implements SimulationMetricsMBean, AutoCloseable {
+    static final String DOMAIN = "networksimulation";
+    // JMX reads within this long of the last sample reuse it instead of walking every router again
+    private static final long MIN_SAMPLE_NANOS = 100_000_000L;
+    private static final AtomicInteger runs = new AtomicInteger();
+
+    private final Simulator simulator;
+    private final Graph graph;
+    private final Router[] routers;
+    private final Map<Integer, Router> routersById = new HashMap<>();
+    private final long startNanos = System.nanoTime();
+    private final List<ObjectName> beans = new ArrayList<>();
+    private final Runnable progressHook = this::emitProgressEvent;
+    private MetricsSnapshot latest;
+    private ScheduledExecutorService timer;
+    private MetricsSnapshotWriter writer;
+
+    // Starts the outputs selected by -Dmetrics.jmx=true, -Dmetrics.file=<path> (.json for JSON
+    // lines, anything else CSV) and -Dmetrics.interval=<ms> (default 1000)
+    public static SimulationMetrics fromSystemProperties(Graph graph, Simulator simulator) {
+        String file = System.getProperty("metrics.file");
+        return start(graph, simulator, Boolean.getBoolean("metrics.jmx"), file != null ? Paths.get(file) : null,
+                Long.getLong("metrics.interval", 1000));
+    }
+
+    // The JFR events are always available; file may be null
+    public static SimulationMetrics start(Graph graph, Simulator simulator, boolean jmx, Path file,
+            long intervalMillis) {
+        SimulationMetrics metrics = new SimulationMetrics(graph, simulator);
+        try {
+            if (jmx) {
+                metrics.registerBeans(Integer.getInteger("metrics.routerBeans", 64));
+            }
+            if (file != null) {
+                metrics.startWriter(file, intervalMillis);
+            }
+        } catch (IOException e) {
+            metrics.close();
+            throw new UncheckedIOException("Cannot open metrics file", e);
+        }
+        FlightRecorder.addPeriodicEvent(SimulationProgressEvent.class, metrics.progressHook);
+        return metrics;
+    }
+
+    private SimulationMetrics(Graph graph, Simulator simulator) {
+        this.graph = graph;
+        this.simulator = simulator;
+        CompactGraph compact = graph.getCompactGraph();
+        this.routers = new Router[compact.size()];
+        for (int i = 0; i < routers.length; i++) {
+            routers[i] = graph.getRouterByIndex(i);
+            routersById.put(routers[i].getId(), routers[i]);
+        }
+    }
+
+    // One simulation MBean, plus one per router for the first routerBeans routers; every run
+    // gets its own "run" key so simulations in the same JVM do not collide
+    private void registerBeans(int routerBeans) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String run = Integer.toString(runs.incrementAndGet());
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=Simulation,run=" + run);
+            server.registerMBean(this, name);
+            beans.add(name);
+            for (int i = 0; i < Math.min(routerBeans, routers.length); i++) {
+                name = new ObjectName(DOMAIN + ":type=Router,run=" + run + ",id=" + routers[i].getId());
+                server.registerMBean(new RouterMetrics(routers[i]), name);
+                beans.add(name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register simulation MBeans", e);
+        }
+    }
+
+    private void startWriter(Path file, long intervalMillis) throws IOException {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Metrics interval must be positive");
+        }
+        writer = new MetricsSnapshotWriter(file);
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::writeSnapshot, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void writeSnapshot() {
+        try {
+            writer.write(sample());
+        } catch (IOException e) {
+            // An exception would silently cancel the task, so stop it on purpose and say why
+            System.err.println("Metrics snapshots stopped: " + e.getMessage());
+            timer.shutdown();
+        }
+    }
+
+    // Reads every counter now; the rate is measured against the previous sample
+    public synchronized MetricsSnapshot sample() {
+        long queued = 0;
+        int maxDepth = 0;
+        long queueFull = 0;
+        long early = 0;
+        for (Router router : routers) {
+            int depth = router.getQueueLength();
+            queued += depth;
+            maxDepth = Math.max(maxDepth, depth);
+            queueFull += router.getQueueFullDrops();
+            early += router.getEarlyDrops();
+        }
+        long now = System.nanoTime();
+        long events = simulator.getLiveCount(SimulationShard.EVENTS);
+        double rate = 0.0;
+        if (latest != null && now > latest.sampledAtNanos) {
+            rate = (events - latest.eventsProcessed) * 1e9 / (now - latest.sampledAtNanos);
+        }
+        latest = new MetricsSnapshot(now, (now - startNanos) / 1_000_000, events, rate,
+                simulator.getLiveCount(SimulationShard.INJECTED), simulator.getLiveCount(SimulationShard.DELIVERED),
+                simulator.getLiveCount(SimulationShard.IN_FLIGHT), simulator.getLiveCount(SimulationShard.UNROUTABLE),
+                queueFull, early, simulator.getLiveCount(SimulationShard.TOKEN_MISSES), queued, maxDepth,
+                (double) simulator.getLiveCount(SimulationShard.VIRTUAL_TIME) / EventSimulator.TICKS_PER_MILLISECOND,
+                graph.getRoutingRecomputes(), graph.getLastRoutingNanos() / 1e6, graph.getTotalRoutingNanos() / 1e6);
+        return latest;
+    }
+
+    // Latest sample if it is recent enough, so one JMX client reading every attribute costs one sample
+    private synchronized MetricsSnapshot current() {
+        if (latest == null || System.nanoTime() - latest.sampledAtNanos >= MIN_SAMPLE_NANOS) {
+            return sample();
+        }
+        return latest;
+    }
+
+    private void emitProgressEvent() {
+        MetricsSnapshot snapshot = sample();
+        SimulationProgressEvent event = new SimulationProgressEvent();
+        event.eventsProcessed = snapshot.eventsProcessed;
+        event.eventsPerSecond = snapshot.eventsPerSecond;
+        event.packetsInFlight = snapshot.packetsInFlight;
+        event.packetsDelivered = snapshot.packetsDelivered;
+        event.packetsUnroutable = snapshot.packetsUnroutable;
+        event.queueFullDrops = snapshot.queueFullDrops;
+        event.earlyDrops = snapshot.earlyDrops;
+        event.tokenMisses = snapshot.tokenMisses;
+        event.queuedPackets = snapshot.queuedPackets;
+        event.maxQueueDepth = snapshot.maxQueueDepth;
+        event.virtualTimeMillis = snapshot.virtualTimeMillis;
+        event.commit();
+    }
+
+    // Stops the timer, writes a final snapshot and withdraws the MBeans and the JFR hook
+    @Override
+    public void close() {
+        FlightRecorder.removePeriodicEvent(progressHook);
+        if (timer != null) {
+            timer.shutdown();
+            try {
+                timer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (writer != null) {
+            try {
+                writer.write(sample());
+                writer.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write metrics file", e);
+            }
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : beans) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // Already gone, e.g. unregistered by a management client
+            }
+        }
+        beans.clear();
+    }
+
+    @Override
+    public long getEventsProcessed() {
+        return current().eventsProcessed;
+    }
+
+    @Override
+    public double getEventsPerSecond() {
+        return current().eventsPerSecond;
+    }
+
+    @Override
+    public long getPacketsInjected() {
+        return current().packetsInjected;
+    }
+
+    @Override
+    public long getPacketsDelivered() {
+        return current().packetsDelivered;
+    }
+
+    @Override
+    public long getPacketsInFlight() {
+        return current().packetsInFlight;
+    }
+
+    @Override
+    public long getPacketsUnroutable() {
+        return current().packetsUnroutable;
+    }
+
+    @Override
+    public long getQueueFullDrops() {
+        return current().queueFullDrops;
+    }
+
+    @Override
+    public long getEarlyDrops() {
+        return current().earlyDrops;
+    }
+
+    @Override
+    public long getTokenMisses() {
+        return current().tokenMisses;
+    }
+
+    @Override
+    public long getQueuedPackets() {
+        return current().queuedPackets;
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        return current().maxQueueDepth;
+    }
+
+    @Override
+    public double getVirtualTimeMillis() {
+        return current().virtualTimeMillis;
+    }
+
+    @Override
+    public long getRoutingRecomputes() {
+        return current().routingRecomputes;
+    }
+
+    @Override
+    public double getLastRoutingRecomputeMillis() {
+        return current().lastRoutingMillis;
+    }
+
+    @Override
+    public double getTotalRoutingRecomputeMillis() {
+        return current().totalRoutingMillis;
+    }
+
+    @Override
+    public int queueDepth(int routerId) {
+        Router router = routersById.get(routerId);
+        return router != null ? router.getQueueLength() : -1;
+    }
+}
+
+// MetricsSnapshot class: the counters of SimulationMetrics at one moment
+class MetricsSnapshot {
+    final long sampledAtNanos;
+    final long wallMillis;
+    final long eventsProcessed;
+    final double eventsPerSecond;
+    final long packetsInjected;
+    final long packetsDelivered;
+    final long packetsInFlight;
+    final long packetsUnroutable;
+    final long queueFullDrops;
+    final long earlyDrops;
+    final long tokenMisses;
+    final long queuedPackets;
+    final int maxQueueDepth;
+    final double virtualTimeMillis;
+    final long routingRecomputes;
+    final double lastRoutingMillis;
+    final double totalRoutingMillis;
+
+    MetricsSnapshot(long sampledAtNanos, long wallMillis, long eventsProcessed, double eventsPerSecond,
+            long packetsInjected, long packetsDelivered, long packetsInFlight, long packetsUnroutable,
+            long queueFullDrops, long earlyDrops, long tokenMisses, long queuedPackets, int maxQueueDepth,
+            double virtualTimeMillis, long routingRecomputes, double lastRoutingMillis, double totalRoutingMillis) {
+        this.sampledAtNanos = sampledAtNanos;
+        this.wallMillis = wallMillis;
+        this.eventsProcessed = eventsProcessed;
+        this.eventsPerSecond = eventsPerSecond;
+        this.packetsInjected = packetsInjected;
+        this.packetsDelivered = packetsDelivered;
+        this.packetsInFlight = packetsInFlight;
+        this.packetsUnroutable = packetsUnroutable;
+        this.queueFullDrops = queueFullDrops;
+        this.earlyDrops = earlyDrops;
+        this.tokenMisses = tokenMisses;
+        this.queuedPackets = queuedPackets;
+        this.maxQueueDepth = maxQueueDepth;
+        this.virtualTimeMillis = virtualTimeMillis;
+        this.routingRecomputes = routingRecomputes;
+        this.lastRoutingMillis = lastRoutingMillis;
+        this.totalRoutingMillis = totalRoutingMillis;
+    }
+
+    static String[] names() {
+        return new String[] {"wallTimeMs", "virtualTimeMs", "events", "eventsPerSecond", "packetsInjected",
+                "packetsDelivered", "packetsInFlight", "packetsUnroutable", "queueFullDrops", "earlyDrops",
+                "tokenMisses", "queuedPackets", "maxQueueDepth", "routingRecomputes", "lastRoutingMs",
+                "totalRoutingMs"};
+    }
+
+    String[] values() {
+        return new String[] {Long.toString(wallMillis), StatisticsWriter.number(virtualTimeMillis),
+                Long.toString(eventsProcessed), StatisticsWriter.number(eventsPerSecond),
+                Long.toString(packetsInjected), Long.toString(packetsDelivered), Long.toString(packetsInFlight),
+                Long.toString(packetsUnroutable), Long.toString(queueFullDrops), Long.toString(earlyDrops),
+                Long.toString(tokenMisses), Long.toString(queuedPackets), Integer.toString(maxQueueDepth),
+                Long.toString(routingRecomputes), StatisticsWriter.number(lastRoutingMillis),
+                StatisticsWriter.number(totalRoutingMillis)};
+    }
+}
+
+// MetricsSnapshotWriter class: appends snapshots to a file as they are taken
+// A path ending in .json gets one JSON object per line (JSON Lines), anything else CSV with a
+// header row. Each snapshot is flushed so the file can be followed while the run goes on.
+class MetricsSnapshotWriter {
+    private final BufferedWriter out;
+    private final boolean json;
+
+    MetricsSnapshotWriter(Path path) throws IOException {
+        this.out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        this.json = path.toString().endsWith(".json");
+        if (!json) {
+            out.write(String.join(",", MetricsSnapshot.names()));
+            out.newLine();
+            out.flush();
+        }
+    }
+
+    public synchronized void write(MetricsSnapshot snapshot) throws IOException {
+        if (json) {
+            StatisticsWriter.writeObject(out, MetricsSnapshot.names(), snapshot.values());
+        } else {
+            out.write(String.join(",", snapshot.values()));
+        }
+        out.newLine();
+        out.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
+
+// RouterMetrics class: JMX view of one router's queue and drop counters
+class RouterMetrics implements RouterMetricsMBean {
+    private final Router router;
+
+    RouterMetrics(Router router) {
+        this.router = router;
+    }
+
+    @Override
+    public int getId() {
+        return router.getId();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return router.getQueueLength();
+    }
+
+    @Override
+    public int getPacketsForwarded() {
+        return router.getPacketsForwarded();
+    }
+
+    @Override
+    public int getQueueFullDrops() {
+        return router.getQueueFullDrops();
+    }
+
+    @Override
+    public int getEarlyDrops() {
+        return router.getEarlyDrops();
+    }
+}
+
+// SimulationProgressEvent class: JFR event with the counters of SimulationMetrics
+// Emitted once per period while a recording enables it; costs nothing otherwise.
+@Name("networksimulation.SimulationProgress")
+@Label("Simulation Progress")
+@Category("Network Simulation")
+@Description("Counters of a running simulation")
+@Period("1 s")
+@StackTrace(false)
+class SimulationProgressEvent extends Event {
+    @Label("Events Processed")
+    long eventsProcessed;
+
+    @Label("Events per Second")
+    double eventsPerSecond;
+
+    @Label("Packets in Flight")
+    long packetsInFlight;
+
+    @Label("Packets Delivered")
+    long packetsDelivered;
+
+    @Label("Packets Unroutable")
+    long packetsUnroutable;
+
+    @Label("Queue-Full Drops")
+    long queueFullDrops;
+
+    @Label("Early Drops")
+    long earlyDrops;
+
+    @Label("Token Misses")
+    long tokenMisses;
+
+    @Label("Queued Packets")
+    long queuedPackets;
+
+    @Label("Max Queue Depth")
+    int maxQueueDepth;
+
+    @Label("Virtual Time (ms)")
+    double virtualTimeMillis;
+}
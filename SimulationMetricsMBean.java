@@ -0,0 +1,37 @@
+// SimulationMetricsMBean interface: JMX attributes of a running simulation, see SimulationMetrics
+// JMX only accepts public standard MBean interfaces, hence the separate file.
+public interface SimulationMetricsMBean {
+    long getEventsProcessed();
+
+    // Rate between the two most recent samples
+    double getEventsPerSecond();
+
+    long getPacketsInjected();
+
+    long getPacketsDelivered();
+
+    long getPacketsInFlight();
+
+    long getPacketsUnroutable();
+
+    long getQueueFullDrops();
+
+    long getEarlyDrops();
+
+    long getTokenMisses();
+
+    long getQueuedPackets();
+
+    int getMaxQueueDepth();
+
+    double getVirtualTimeMillis();
+
+    long getRoutingRecomputes();
+
+    double getLastRoutingRecomputeMillis();
+
+    double getTotalRoutingRecomputeMillis();
+
+    // Current queue length of one router, -1 if there is no such router
+    int queueDepth(int routerId);
+}
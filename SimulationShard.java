@@ -0,0 +1,328 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// SimulationShard class: event loop for the routers of one partition
+// Packets travel hop by hop: an ARRIVAL queues the packet on the router's output port towards its
+// next hop, each port transmits its head packet at the link's bandwidth when the router holds a
+// token, TRANSMIT_COMPLETE (whose router field is the port) hands the packet to the next hop after
+// the link's propagation delay, and TOKEN_REFILL wakes the ports of a router that ran out of tokens.
+// GENERATE asks a TrafficGenerator for its next packet and schedules the one after.
+// Arrivals at routers owned by another shard are posted to that shard's mailbox instead.
+class SimulationShard {
+    static final int ARRIVAL = 0;
+    static final int TRANSMIT_COMPLETE = 1;
+    static final int TOKEN_REFILL = 2;
+    static final int GENERATE = 3;
+
+    // Counters published for readers on other threads, see getPublished()
+    static final int EVENTS = 0;
+    static final int DELIVERED = 1;
+    static final int UNROUTABLE = 2;
+    static final int TOKEN_MISSES = 3;
+    static final int INJECTED = 4;
+    static final int IN_FLIGHT = 5;
+    static final int VIRTUAL_TIME = 6;
+    static final int PUBLISHED_COUNTERS = 7;
+    // Publishing every 4096 events keeps the cost per event to one test of eventsProcessed
+    private static final long PUBLISH_MASK = (1 << 12) - 1;
+
+    private final int shardId;
+    private final Router[] routers;
+    private final int[] shardOf;
+    private final PacketTable packets;
+    private final OutputPorts ports;
+    private final ShardMailbox[] outboxes;
+    private final EventScheduler scheduler;
+    private final VirtualClock clock;
+    private final TraceLog trace;
+    private final boolean[] transmitting;
+    private final boolean[] refillPending;
+    private final List<TrafficGenerator> generators = new ArrayList<>();
+    private long eventsProcessed;
+    private long packetsDelivered;
+    private long packetsUnroutable;
+    private long tokenMisses;
+    private final AtomicLongArray published = new AtomicLongArray(PUBLISHED_COUNTERS);
+    private final Histogram endToEndLatency = Router.newLatencyHistogram();
+
+    // transmitting is indexed by port and refillPending by router, and both may be shared; each
+    // slot is only touched by the shard that owns the router
+    SimulationShard(int shardId, Router[] routers, int[] shardOf, PacketTable packets, OutputPorts ports,
+            ShardMailbox[] outboxes, boolean[] transmitting, boolean[] refillPending, TraceLog trace) {
+        this.shardId = shardId;
+        this.routers = routers;
+        this.shardOf = shardOf;
+        this.packets = packets;
+        this.ports = ports;
+        this.outboxes = outboxes;
+        this.scheduler = new EventScheduler();
+        this.clock = new VirtualClock();
+        this.trace = trace;
+        this.transmitting = transmitting;
+        this.refillPending = refillPending;
+        for (int i = 0; i < routers.length; i++) {
+            if (owns(i)) {
+                routers[i].getTokenBucket().setTimeSource(clock);
+            }
+        }
+    }
+
+    public boolean owns(int router) {
+        return shardOf == null || shardOf[router] == shardId;
+    }
+
+    public OutputPorts getPorts() {
+        return ports;
+    }
+
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    public void scheduleArrival(long time, int router, int packet) {
+        scheduler.schedule(time, ARRIVAL, router, packet);
+    }
+
+    // Starts a generator whose source router this shard owns
+    public void addGenerator(TrafficGenerator generator) {
+        long first = generator.nextTime();
+        if (first != TrafficGenerator.NONE) {
+            generators.add(generator);
+            scheduler.schedule(first, GENERATE, generator.getSource(), generators.size() - 1);
+        }
+    }
+
+    public long nextEventTime() {
+        return scheduler.peekTime();
+    }
+
+    // Processes every event with a timestamp before the given virtual time
+    public void processUntil(long end) {
+        while (scheduler.peekTime() < end) {
+            int event = scheduler.poll();
+            long now = scheduler.time(event);
+            clock.setNanoTime(now * EventSimulator.NANOS_PER_TICK);
+            if ((++eventsProcessed & PUBLISH_MASK) == 0) {
+                publish();
+            }
+            int router = scheduler.router(event);
+            switch (scheduler.type(event)) {
+                case ARRIVAL:
+                    onArrival(router, scheduler.payload(event), now);
+                    break;
+                case TRANSMIT_COMPLETE:
+                    onTransmitComplete(router, scheduler.payload(event), now);
+                    break;
+                case TOKEN_REFILL:
+                    refillPending[router] = false;
+                    for (int port = ports.firstPort(router), last = ports.endPort(router); port < last; port++) {
+                        tryTransmit(port, now);
+                    }
+                    break;
+                case GENERATE:
+                    onGenerate(router, scheduler.payload(event), now);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown event type " + scheduler.type(event));
+            }
+        }
+        publish();
+    }
+
+    // Copies the counters where monitoring threads can read them, see SimulationMetrics; only the
+    // thread running the shard writes them, so ordered stores are enough
+    private void publish() {
+        published.lazySet(EVENTS, eventsProcessed);
+        published.lazySet(DELIVERED, packetsDelivered);
+        published.lazySet(UNROUTABLE, packetsUnroutable);
+        published.lazySet(TOKEN_MISSES, tokenMisses);
+        published.lazySet(INJECTED, packets.injected(shardId));
+        published.lazySet(IN_FLIGHT, packets.live(shardId));
+        published.lazySet(VIRTUAL_TIME, scheduler.currentTime());
+    }
+
+    // Moves arrivals posted by other shards into this shard's queue, in a fixed sender order
+    public void drainInboxes(ShardMailbox[][] mailboxes) {
+        for (ShardMailbox[] senderOutboxes : mailboxes) {
+            ShardMailbox inbox = senderOutboxes[shardId];
+            if (inbox == null) {
+                continue;
+            }
+            for (int i = 0; i < inbox.size(); i++) {
+                scheduleArrival(inbox.time(i), inbox.router(i), inbox.packet(i));
+            }
+            inbox.clear();
+        }
+    }
+
+    private void onGenerate(int index, int generatorIndex, long now) {
+        TrafficGenerator generator = generators.get(generatorIndex);
+        int destination = generator.nextDestination();
+        int packet = packets.add(shardId, index, destination, generator.getSizeBytes(), generator.flowId(), now);
+        long next = generator.nextTime();
+        if (next != TrafficGenerator.NONE) {
+            scheduler.schedule(next, GENERATE, index, generatorIndex);
+        }
+        if (trace.packets()) {
+            trace.inject(routers[index].getId(), packet, "");
+        }
+        onArrival(index, packet, now);
+    }
+
+    private void onArrival(int index, int packet, long now) {
+        Router router = routers[index];
+        if (packets.destination(packet) == index) {
+            if (trace.packets()) {
+                trace.record(TraceLog.DELIVER, router.getId(), packets, packet, -1);
+            }
+            packetsDelivered++;
+            endToEndLatency.record(now - packets.createdAt(packet));
+            packets.release(shardId, packet);
+            return;
+        }
+        router.recordQueueLength(router.getQueueLength());
+        int port = router.outputPort(packets, packet);
+        if (port == OutputPorts.NO_PORT) {
+            if (trace.drops()) {
+                trace.record(TraceLog.DROP_NO_ROUTE, router.getId(), packets, packet, -1);
+            }
+            packets.release(shardId, packet);
+            packetsUnroutable++;
+            return;
+        }
+        if (!router.enqueuePacket(packets, packet, port)) {
+            packets.release(shardId, packet);
+            return;
+        }
+        packets.setArrivedAt(packet, now);
+        tryTransmit(port, now);
+    }
+
+    // Starts sending the port's head-of-line packet if the port is idle and the router holds a token
+    private void tryTransmit(int port, long now) {
+        int index = ports.owner(port);
+        Router router = routers[index];
+        while (!transmitting[port]) {
+            int packet = router.peekPacket(port);
+            if (packet == PacketTable.NO_PACKET) {
+                return;
+            }
+            if (router.dropAtHead(packets, packet, port, now)) {
+                router.dequeuePacket(packets, port);
+                ports.countDrop(port);
+                packets.release(shardId, packet);
+                continue;
+            }
+            TokenBucket bucket = router.getTokenBucket();
+            if (!bucket.tryConsume(1)) {
+                tokenMisses++;
+                if (trace.packets()) {
+                    trace.record(TraceLog.TOKEN_MISS, router.getId(), packets, packet, -1);
+                }
+                long wait = bucket.nanosUntilAvailable(1);
+                if (!refillPending[index] && wait != Long.MAX_VALUE) {
+                    refillPending[index] = true;
+                    long ticks = Math.max(1,
+                            (wait + EventSimulator.NANOS_PER_TICK - 1) / EventSimulator.NANOS_PER_TICK);
+                    scheduler.schedule(now + ticks, TOKEN_REFILL, index, 0);
+                }
+                return;
+            }
+            transmitting[port] = true;
+            long transmissionTime = router.transmissionTicks(port, packets.sizeBytes(packet));
+            ports.addBusyTicks(port, transmissionTime);
+            scheduler.schedule(now + transmissionTime, TRANSMIT_COMPLETE, port, packet);
+        }
+    }
+
+    private void onTransmitComplete(int port, int packet, long now) {
+        Router router = routers[ports.owner(port)];
+        router.dequeuePacket(packets, port);
+        long propagation = ports.propagationTicks(port);
+        router.recordForward((now - packets.arrivedAt(packet) + propagation) / EventSimulator.TICKS_PER_MILLISECOND,
+                now - packets.arrivedAt(packet));
+        packets.addHop(packet);
+        int nextHop = ports.target(port);
+        if (trace.packets()) {
+            trace.record(TraceLog.FORWARD, router.getId(), packets, packet, routers[nextHop].getId());
+        }
+        long arrival = now + propagation;
+        if (owns(nextHop)) {
+            scheduler.schedule(arrival, ARRIVAL, nextHop, packet);
+        } else {
+            outboxes[shardOf[nextHop]].add(arrival, nextHop, packet);
+        }
+        transmitting[port] = false;
+        tryTransmit(port, now);
+    }
+
+    public long getEventsProcessed() {
+        return eventsProcessed;
+    }
+
+    public long getPacketsDelivered() {
+        return packetsDelivered;
+    }
+
+    public long getPacketsUnroutable() {
+        return packetsUnroutable;
+    }
+
+    // Times a queued packet had to wait for the token bucket to refill
+    public long getTokenMisses() {
+        return tokenMisses;
+    }
+
+    // Counter as of the shard's last publish: at most 4096 events old while it runs, exact once
+    // processUntil() returns. Safe to call from any thread.
+    public long getPublished(int counter) {
+        return published.get(counter);
+    }
+
+    // Ticks from injection to delivery of every delivered packet
+    public Histogram getEndToEndLatency() {
+        return endToEndLatency;
+    }
+
+    public long getVirtualTime() {
+        return scheduler.currentTime();
+    }
+
+    // Pending events, generators, counters and clock, for a checkpoint taken between runs; the
+    // routers, ports and packets are written separately. pickers is shared by all shards, see
+    // TrafficGenerator.write.
+    void writeState(CheckpointOutput out, Map<DestinationPicker, Integer> pickers) throws IOException {
+        out.writeLong(clock.nanoTime());
+        out.writeLong(eventsProcessed);
+        out.writeLong(packetsDelivered);
+        out.writeLong(packetsUnroutable);
+        out.writeLong(tokenMisses);
+        endToEndLatency.writeState(out);
+        out.writeInt(generators.size());
+        for (TrafficGenerator generator : generators) {
+            TrafficGenerator.write(out, generator, pickers);
+        }
+        scheduler.writeState(out);
+    }
+
+    // Replaces the state of a shard that has not run; generators keep their place in the list,
+    // which their pending events refer to
+    void readState(MappedInput in, List<DestinationPicker> pickers) throws IOException {
+        clock.setNanoTime(in.readLong());
+        eventsProcessed = in.readLong();
+        packetsDelivered = in.readLong();
+        packetsUnroutable = in.readLong();
+        tokenMisses = in.readLong();
+        endToEndLatency.readState(in);
+        int count = in.readInt();
+        generators.clear();
+        for (int i = 0; i < count; i++) {
+            generators.add(TrafficGenerator.read(in, pickers));
+        }
+        scheduler.readState(in);
+        publish();
+    }
+}
@@ -0,0 +1,61 @@
+import java.io.IOException;
+
+// Simulator interface: packet-level simulation run by EventSimulator or ShardedSimulator
+interface Simulator {
+    // Schedules the packet to arrive at its source router at the given virtual time
+    void inject(Packet packet, long time);
+
+    // Same as inject(Packet, long) for a payload-less packet between router indices
+    default void inject(int source, int destination, int sizeBytes, long time) {
+        inject(source, destination, sizeBytes, 0, time);
+    }
+
+    // Same, for a packet of the given flow; see ForwardingTable.flowHash
+    void inject(int source, int destination, int sizeBytes, int flowId, long time);
+
+    // Attaches a generator that produces packets at its source router while the simulation runs
+    void addGenerator(TrafficGenerator generator);
+
+    // Processes events until every queue drains
+    void run();
+
+    // Processes every event before the given virtual time and stops; run() carries on from there
+    void runUntil(long end);
+
+    // Pending events, generators and shard counters while no run is in progress; the routers,
+    // ports and packets are written by Checkpoint. readState replaces them in a simulator that
+    // has not run and was built with the same number of shards.
+    void writeState(CheckpointOutput out) throws IOException;
+
+    void readState(MappedInput in) throws IOException;
+
+    PacketTable getPacketTable();
+
+    long getEventsProcessed();
+
+    long getPacketsDelivered();
+
+    long getPacketsUnroutable();
+
+    long getVirtualTime();
+
+    // Times a queued packet had to wait for its router's token bucket to refill
+    long getTokenMisses();
+
+    // A SimulationShard counter (EVENTS, IN_FLIGHT, ...) summed over the shards, or the latest
+    // VIRTUAL_TIME, as last published; safe to read from other threads while run() is in progress
+    long getLiveCount(int counter);
+
+    double getAverageEndToEndDelayMillis();
+
+    // Injection-to-delivery time of every delivered packet, in ticks
+    Histogram getEndToEndLatency();
+
+    // Delivered packets per second of virtual time, i.e. the simulated network's throughput
+    double getSimulatedThroughput();
+
+    // Events per second of wall-clock time, i.e. the simulator's own speed
+    double getEventsPerSecond();
+
+    String describe();
+}
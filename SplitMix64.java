@@ -0,0 +1,74 @@
+// SplitMix64 class: small, fast, seedable random number generator
+// Same algorithm as java.util.SplittableRandom, but the state is a plain long that can be read
+// and restored. split() derives an independent generator, so every traffic source gets its own
+// stream and a run is reproducible from one seed no matter how sources are spread over threads.
+class SplitMix64 {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+    private long state;
+
+    public SplitMix64(long seed) {
+        this.state = seed;
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    public long nextLong() {
+        return mix(state += GOLDEN_GAMMA);
+    }
+
+    // Scrambles a value into a well-distributed 64-bit hash
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Generator for one item of a keyed family, e.g. one router's links, independent of the others
+    public static SplitMix64 forKey(long seed, long key) {
+        return new SplitMix64(mix(seed ^ mix(key + GOLDEN_GAMMA)));
+    }
+
+    // Uniform in [0, 1)
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    // Uniform in [0, bound) without modulo bias
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        long r = (nextLong() >>> 33) * bound;
+        int low = (int) r & 0x7FFFFFFF;
+        if (low < bound) {
+            long threshold = (0x80000000L - bound) % bound;
+            while (low < threshold) {
+                r = (nextLong() >>> 33) * bound;
+                low = (int) r & 0x7FFFFFFF;
+            }
+        }
+        return (int) (r >>> 31);
+    }
+
+    // Exponentially distributed with the given mean
+    public double nextExponential(double mean) {
+        return -mean * Math.log(1.0 - nextDouble());
+    }
+
+    // Pareto distributed with the given scale (minimum) and shape
+    public double nextPareto(double scale, double shape) {
+        return scale / Math.pow(1.0 - nextDouble(), 1.0 / shape);
+    }
+
+    public SplitMix64 split() {
+        return new SplitMix64(nextLong());
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// StatisticsWriter class: writes the network-wide and router-wise statistics of a run to a file
+// The statistics are the ones NetworkSimulation shows interactively, plus the simulator's
+// summary. Throughput and latencies are in simulated time; only executionTimeMs and
+// eventsPerSecond describe the simulator itself. A path ending in .json gets a JSON document;
+// anything else gets CSV with one row per router and the network-wide figures as leading
+// "# name,value" lines.
+class StatisticsWriter {
+    private StatisticsWriter() {
+    }
+
+    public static void write(Path path, Graph graph, Simulator simulator, long executionMillis, long memoryBytes)
+            throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            if (path.toString().endsWith(".json")) {
+                writeJson(out, graph, simulator, executionMillis, memoryBytes);
+            } else {
+                writeCsv(out, graph, simulator, executionMillis, memoryBytes);
+            }
+        }
+    }
+
+    private static String[] networkNames() {
+        return new String[] {"routers", "links", "executionTimeMs", "memoryBytes", "throughputPacketsPerSecond",
+                "packetsDropped", "packetsInjected", "packetsDelivered", "packetsUnroutable", "averageEndToEndDelayMs",
+                "endToEndP50Ms", "endToEndP99Ms", "endToEndP999Ms", "endToEndMaxMs", "hopLatencyP50Ms",
+                "hopLatencyP99Ms", "hopLatencyP999Ms", "hopLatencyMaxMs", "queueLengthP50", "queueLengthP99",
+                "queueLengthP999", "queueLengthMax", "linkUtilizationMean", "linkUtilizationMax", "routeCacheHitRate",
+                "routeCacheMemoryBytes", "virtualTimeMs", "events", "eventsPerSecond"};
+    }
+
+    // Same totals as NetworkSimulation.showNetworkStatistics, followed by the simulator's; the
+    // route cache figures stay empty unless routing is on demand
+    private static String[] networkValues(Graph graph, Simulator simulator, long executionMillis, long memoryBytes) {
+        CompactGraph compact = graph.getCompactGraph();
+        OutputPorts ports = graph.getOutputPorts();
+        OnDemandRouting onDemand = graph.getOnDemandRouting();
+        long dropped = 0;
+        for (int i = 0; i < compact.size(); i++) {
+            dropped += graph.getRouterByIndex(i).getPacketsDropped();
+        }
+        String[] values = {Integer.toString(compact.size()), Integer.toString(compact.edgeCount()),
+                Long.toString(executionMillis), Long.toString(memoryBytes), number(simulator.getSimulatedThroughput()),
+                Long.toString(dropped), Long.toString(simulator.getPacketTable().injected()),
+                Long.toString(simulator.getPacketsDelivered()), Long.toString(simulator.getPacketsUnroutable()),
+                number(simulator.getAverageEndToEndDelayMillis())};
+        return concat(values, percentiles(simulator.getEndToEndLatency(), EventSimulator.TICKS_PER_MILLISECOND),
+                percentiles(graph.mergeLatencyHistograms(), EventSimulator.TICKS_PER_MILLISECOND),
+                percentiles(graph.mergeQueueHistograms(), 1),
+                new String[] {number(ports.meanUtilization(simulator.getVirtualTime())),
+                        number(ports.maxUtilization(simulator.getVirtualTime())),
+                        onDemand != null ? number(onDemand.getCache().hitRate()) : "",
+                        onDemand != null ? Long.toString(onDemand.memoryBytes()) : "",
+                        number((double) simulator.getVirtualTime() / EventSimulator.TICKS_PER_MILLISECOND),
+                        Long.toString(simulator.getEventsProcessed()), number(simulator.getEventsPerSecond())});
+    }
+
+    // p50, p99, p99.9 and max divided by scale; empty for a router that never saw a packet
+    private static String[] percentiles(Histogram histogram, double scale) {
+        if (histogram == null || histogram.getTotalCount() == 0) {
+            return new String[] {"", "", "", ""};
+        }
+        return new String[] {number(histogram.valueAtPercentile(50) / scale),
+                number(histogram.valueAtPercentile(99) / scale), number(histogram.valueAtPercentile(99.9) / scale),
+                number(histogram.getMax() / scale)};
+    }
+
+    private static String[] concat(String[]... parts) {
+        int length = 0;
+        for (String[] part : parts) {
+            length += part.length;
+        }
+        String[] all = new String[length];
+        int i = 0;
+        for (String[] part : parts) {
+            System.arraycopy(part, 0, all, i, part.length);
+            i += part.length;
+        }
+        return all;
+    }
+
+    private static String[] routerNames() {
+        return new String[] {"id", "totalDelay", "packetsForwarded", "packetsDropped", "earlyDrops", "utilization",
+                "pathEfficiency", "packetDeliveryRatio", "networkLoad", "latencyP50Ms", "latencyP99Ms",
+                "latencyP999Ms", "latencyMaxMs", "queueLengthP50", "queueLengthP99", "queueLengthP999",
+                "queueLengthMax"};
+    }
+
+    // Path efficiency is Router.calculatePathEfficiency taken from the compact view, which also
+    // covers generated topologies whose routers hold no Edge objects
+    private static String[] routerValues(CompactGraph compact, Router router) {
+        double totalWeight = 0;
+        for (int e = compact.firstEdge(router.getIndex()), end = compact.endEdge(router.getIndex()); e < end; e++) {
+            if (compact.weight(e) != CompactGraph.NO_LINK) {
+                totalWeight += compact.weight(e);
+            }
+        }
+        String[] values = {Integer.toString(router.getId()), Long.toString(router.getTotalDelay()),
+                Integer.toString(router.getPacketsForwarded()), Integer.toString(router.getPacketsDropped()),
+                Integer.toString(router.getEarlyDrops()), number(router.calculateUtilization()),
+                number(totalWeight > 0 ? 1 / totalWeight : 0.0),
+                number(router.calculatePacketDeliveryRatio()), Integer.toString(router.calculateNetworkLoad())};
+        return concat(values, percentiles(router.getLatencyHistogram(), EventSimulator.TICKS_PER_MILLISECOND),
+                percentiles(router.getQueueHistogram(), 1));
+    }
+
+    // Ratios over zero counts are left empty rather than written as NaN
+    static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "" : Double.toString(value);
+    }
+
+    private static void writeCsv(BufferedWriter out, Graph graph, Simulator simulator, long executionMillis,
+            long memoryBytes) throws IOException {
+        String[] names = networkNames();
+        String[] values = networkValues(graph, simulator, executionMillis, memoryBytes);
+        for (int i = 0; i < names.length; i++) {
+            out.write("# " + names[i] + "," + values[i]);
+            out.newLine();
+        }
+        out.write(String.join(",", routerNames()));
+        out.newLine();
+        CompactGraph compact = graph.getCompactGraph();
+        for (int i = 0; i < compact.size(); i++) {
+            out.write(String.join(",", routerValues(compact, graph.getRouterByIndex(i))));
+            out.newLine();
+        }
+    }
+
+    private static void writeJson(BufferedWriter out, Graph graph, Simulator simulator, long executionMillis,
+            long memoryBytes) throws IOException {
+        out.write("{\n  \"network\": ");
+        writeObject(out, networkNames(), networkValues(graph, simulator, executionMillis, memoryBytes));
+        out.write(",\n  \"routers\": [");
+        String[] names = routerNames();
+        CompactGraph compact = graph.getCompactGraph();
+        int n = compact.size();
+        for (int i = 0; i < n; i++) {
+            out.write(i == 0 ? "\n    " : ",\n    ");
+            writeObject(out, names, routerValues(compact, graph.getRouterByIndex(i)));
+        }
+        out.write(n > 0 ? "\n  ]\n}\n" : "]\n}\n");
+    }
+
+    static void writeObject(BufferedWriter out, String[] names, String[] values) throws IOException {
+        out.write('{');
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                out.write(", ");
+            }
+            out.write('"' + names[i] + "\": " + (values[i].isEmpty() ? "null" : values[i]));
+        }
+        out.write('}');
+    }
+}
@@ -0,0 +1,6 @@
+// TimeSource interface: clock read by token buckets, in nanoseconds
+interface TimeSource {
+    TimeSource SYSTEM = System::nanoTime;
+
+    long nanoTime();
+}
@@ -0,0 +1,487 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// TopologyGenerator class: builds large synthetic topologies straight into a CompactGraph
+// Every router emits the undirected links it owns from its own SplitMix64.forKey stream, so rows
+// can be generated in any order on any thread and the result depends only on the seed. generate()
+// runs the rows twice in parallel, first counting degrees and then filling the CSR arrays in
+// place, and finally sorts each row so the layout does not depend on thread timing. No Edge or
+// Router objects are created; Graph.loadCompactTopology adopts the result.
+abstract class TopologyGenerator {
+    static final int MIN_ROWS_PER_TASK = 1024;
+
+    // Receives one undirected link; both directions end up in the graph
+    interface LinkSink {
+        void link(int a, int b, int weight);
+    }
+
+    public abstract int size();
+
+    // Emits the links owned by router u, deterministically for a given seed
+    protected abstract void emitLinks(int u, long seed, WeightDistribution weights, LinkSink sink);
+
+    // Per-run setup, e.g. node positions, before any row is emitted
+    protected void prepare(long seed) {
+    }
+
+    public abstract String describe();
+
+    // Generates the topology with router ids 1..size() at indices 0..size()-1
+    public CompactGraph generate(long seed, WeightDistribution weights, int parallelism) {
+        prepare(seed);
+        int n = size();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            AtomicIntegerArray degrees = new AtomicIntegerArray(n);
+            pool.invoke(new RowTask(0, n, u -> emitLinks(u, seed, weights, (a, b, weight) -> {
+                degrees.incrementAndGet(a);
+                degrees.incrementAndGet(b);
+            })));
+
+            int[] offsets = new int[n + 1];
+            long total = 0;
+            for (int i = 0; i < n; i++) {
+                total += degrees.get(i);
+                if (total > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Topology has more than " + (Integer.MAX_VALUE - 8) + " links");
+                }
+                offsets[i + 1] = (int) total;
+            }
+            int[] targets = new int[(int) total];
+            int[] linkWeights = new int[(int) total];
+            // Reuse the degree counters as per-row fill cursors
+            for (int i = 0; i < n; i++) {
+                degrees.set(i, offsets[i]);
+            }
+            pool.invoke(new RowTask(0, n, u -> emitLinks(u, seed, weights, (a, b, weight) -> {
+                int e = degrees.getAndIncrement(a);
+                targets[e] = b;
+                linkWeights[e] = weight;
+                e = degrees.getAndIncrement(b);
+                targets[e] = a;
+                linkWeights[e] = weight;
+            })));
+
+            ThreadLocal<long[]> scratch = ThreadLocal.withInitial(() -> new long[16]);
+            pool.invoke(new RowTask(0, n, u -> sortRow(offsets[u], offsets[u + 1], targets, linkWeights, scratch)));
+
+            int[] routerIds = new int[n];
+            for (int i = 0; i < n; i++) {
+                routerIds[i] = i + 1;
+            }
+            return new CompactGraph(routerIds, offsets, targets, linkWeights);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Orders a row by target, then weight; weights are positive so a packed long sorts correctly
+    private static void sortRow(int from, int to, int[] targets, int[] weights, ThreadLocal<long[]> scratch) {
+        int length = to - from;
+        if (length < 2) {
+            return;
+        }
+        long[] packed = scratch.get();
+        if (packed.length < length) {
+            packed = new long[Math.max(length, packed.length * 2)];
+            scratch.set(packed);
+        }
+        for (int i = 0; i < length; i++) {
+            packed[i] = (long) targets[from + i] << 32 | weights[from + i];
+        }
+        Arrays.sort(packed, 0, length);
+        for (int i = 0; i < length; i++) {
+            targets[from + i] = (int) (packed[i] >>> 32);
+            weights[from + i] = (int) packed[i];
+        }
+    }
+
+    // Parses a generator spec such as erdos-renyi:100000:8 or fat-tree:16; see Readme.md
+    public static TopologyGenerator parse(String spec) {
+        String[] parts = spec.split(":");
+        try {
+            switch (parts[0]) {
+                case "erdos-renyi":
+                    expectParts(parts, 3, spec);
+                    return new ErdosRenyiTopology(Integer.parseInt(parts[1]), Double.parseDouble(parts[2]));
+                case "barabasi-albert":
+                    expectParts(parts, 3, spec);
+                    return new BarabasiAlbertTopology(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                case "waxman":
+                    expectParts(parts, 4, spec);
+                    return new WaxmanTopology(Integer.parseInt(parts[1]), Double.parseDouble(parts[2]),
+                            Double.parseDouble(parts[3]));
+                case "fat-tree":
+                    expectParts(parts, 2, spec);
+                    return new FatTreeTopology(Integer.parseInt(parts[1]));
+                case "torus":
+                    expectParts(parts, 3, spec);
+                    return new TorusTopology(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                default:
+                    throw new IllegalArgumentException("Unknown topology generator " + parts[0]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number in topology spec " + spec);
+        }
+    }
+
+    private static void expectParts(String[] parts, int count, String spec) {
+        if (parts.length != count) {
+            throw new IllegalArgumentException("Topology spec " + spec + " needs " + (count - 1) + " parameters");
+        }
+    }
+
+    // Row body run by RowTask
+    interface RowAction {
+        void run(int u);
+    }
+
+    // RowTask class: fork-join split of a row range, in the style of ShortestPathTask
+    static class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final RowAction action;
+
+        RowTask(int from, int to, RowAction action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_ROWS_PER_TASK) {
+                for (int u = from; u < to; u++) {
+                    action.run(u);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RowTask(from, mid, action), new RowTask(mid, to, action));
+        }
+    }
+}
+
+// ErdosRenyiTopology class: G(n, p) with p chosen for the given average degree
+// Each router links to higher-numbered routers only, skipping ahead by geometrically distributed
+// gaps, so the work is proportional to the number of links rather than n^2.
+class ErdosRenyiTopology extends TopologyGenerator {
+    private final int n;
+    private final double p;
+
+    public ErdosRenyiTopology(int n, double averageDegree) {
+        if (n < 2 || averageDegree <= 0 || averageDegree > n - 1) {
+            throw new IllegalArgumentException("Erdos-Renyi needs n >= 2 and 0 < average degree <= n - 1");
+        }
+        this.n = n;
+        this.p = averageDegree / (n - 1);
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    protected void emitLinks(int u, long seed, WeightDistribution weights, LinkSink sink) {
+        SplitMix64 rng = SplitMix64.forKey(seed, u);
+        if (p >= 1.0) {
+            for (int v = u + 1; v < n; v++) {
+                sink.link(u, v, weights.sample(rng));
+            }
+            return;
+        }
+        double logMiss = Math.log1p(-p);
+        long v = u;
+        while (true) {
+            v += 1 + (long) (Math.log1p(-rng.nextDouble()) / logMiss);
+            if (v >= n) {
+                return;
+            }
+            sink.link(u, (int) v, weights.sample(rng));
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "Erdos-Renyi n=" + n + " p=" + p;
+    }
+}
+
+// BarabasiAlbertTopology class: preferential attachment, m links per new router
+// Uses the copy model of Sanders and Schulz: link k (the (k mod m)-th link of router k / m) picks
+// a uniformly random earlier endpoint slot, and a slot holding a target is resolved by following
+// that earlier link. Every link is a pure function of (seed, k), so routers are generated in
+// parallel with degree-proportional attachment and no shared state. Self-links are dropped.
+class BarabasiAlbertTopology extends TopologyGenerator {
+    private final int n;
+    private final int m;
+
+    public BarabasiAlbertTopology(int n, int m) {
+        if (m < 1 || n <= m) {
+            throw new IllegalArgumentException("Barabasi-Albert needs m >= 1 and n > m");
+        }
+        if ((long) n * m > Integer.MAX_VALUE / 2) {
+            throw new IllegalArgumentException("Barabasi-Albert with n * m above " + Integer.MAX_VALUE / 2);
+        }
+        this.n = n;
+        this.m = m;
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    protected void emitLinks(int u, long seed, WeightDistribution weights, LinkSink sink) {
+        SplitMix64 rng = SplitMix64.forKey(seed, u);
+        for (long k = (long) u * m, end = k + m; k < end; k++) {
+            int target = target(seed, k);
+            if (target != u) {
+                sink.link(u, target, weights.sample(rng));
+            }
+        }
+    }
+
+    // Endpoint slots are 2k (source of link k, i.e. k / m) and 2k + 1 (its target)
+    private int target(long seed, long k) {
+        while (k > 0) {
+            long slot = Long.remainderUnsigned(SplitMix64.mix(seed ^ SplitMix64.mix(~k)), 2 * k);
+            if ((slot & 1) == 0) {
+                return (int) ((slot >>> 1) / m);
+            }
+            k = slot >>> 1;
+        }
+        return 0;
+    }
+
+    @Override
+    public String describe() {
+        return "Barabasi-Albert n=" + n + " m=" + m;
+    }
+}
+
+// WaxmanTopology class: routers at random points in the unit square, linked with probability
+// beta * exp(-d / (alpha * L)), L being the largest possible distance
+// Pairs farther apart than the distance where the probability has fallen to CUTOFF * beta are
+// never considered, which loses about 0.1% of the expected links. Routers are bucketed into a
+// grid of cells about half that distance wide, so each router only looks at nearby cells, and a
+// router owns the links into later cells (column-major) and to higher indices in its own cell.
+class WaxmanTopology extends TopologyGenerator {
+    private static final double CUTOFF = 1e-4;
+    private static final double MAX_DISTANCE = Math.sqrt(2.0);
+
+    private final int n;
+    private final double alpha;
+    private final double beta;
+    private final double reach;
+    private final int cellsPerSide;
+    // Cells to scan in each direction
+    private final int cellReach;
+    private double[] xs;
+    private double[] ys;
+    // Routers of cell c are cellMembers[cellStarts[c] .. cellStarts[c + 1]), in index order, with
+    // their positions copied alongside so neighboring cells are scanned sequentially
+    private int[] cellStarts;
+    private int[] cellMembers;
+    private double[] cellXs;
+    private double[] cellYs;
+
+    public WaxmanTopology(int n, double alpha, double beta) {
+        if (n < 2 || alpha <= 0 || beta <= 0 || beta > 1) {
+            throw new IllegalArgumentException("Waxman needs n >= 2, alpha > 0 and 0 < beta <= 1");
+        }
+        this.n = n;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.reach = alpha * MAX_DISTANCE * Math.log(1.0 / CUTOFF);
+        int cells = (int) Math.min(Math.sqrt(n), 2.0 / reach);
+        this.cellsPerSide = Math.max(1, cells);
+        this.cellReach = (int) Math.min(cellsPerSide, Math.ceil(reach * cellsPerSide));
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    protected void prepare(long seed) {
+        xs = new double[n];
+        ys = new double[n];
+        int cellCount = cellsPerSide * cellsPerSide;
+        int[] cells = new int[n];
+        cellStarts = new int[cellCount + 1];
+        for (int u = 0; u < n; u++) {
+            // Negative keys keep positions independent of the per-router link streams
+            SplitMix64 rng = SplitMix64.forKey(seed, -1L - u);
+            xs[u] = rng.nextDouble();
+            ys[u] = rng.nextDouble();
+            cells[u] = cellOf(xs[u]) * cellsPerSide + cellOf(ys[u]);
+            cellStarts[cells[u] + 1]++;
+        }
+        for (int c = 0; c < cellCount; c++) {
+            cellStarts[c + 1] += cellStarts[c];
+        }
+        cellMembers = new int[n];
+        cellXs = new double[n];
+        cellYs = new double[n];
+        int[] fill = Arrays.copyOf(cellStarts, cellCount);
+        for (int u = 0; u < n; u++) {
+            int slot = fill[cells[u]]++;
+            cellMembers[slot] = u;
+            cellXs[slot] = xs[u];
+            cellYs[slot] = ys[u];
+        }
+    }
+
+    private int cellOf(double coordinate) {
+        return Math.min(cellsPerSide - 1, (int) (coordinate * cellsPerSide));
+    }
+
+    @Override
+    protected void emitLinks(int u, long seed, WeightDistribution weights, LinkSink sink) {
+        SplitMix64 rng = SplitMix64.forKey(seed, u);
+        int cx = cellOf(xs[u]);
+        int cy = cellOf(ys[u]);
+        double scale = alpha * MAX_DISTANCE;
+        double reachSquared = reach * reach;
+        int lowY = Math.max(0, cy - cellReach);
+        int highY = Math.min(cellsPerSide - 1, cy + cellReach);
+        for (int x = cx; x <= Math.min(cellsPerSide - 1, cx + cellReach); x++) {
+            // Cells of one column are adjacent in the member arrays; in u's own column only the
+            // cells from u's onwards are later
+            int from = cellStarts[x * cellsPerSide + (x == cx ? cy : lowY)];
+            int end = cellStarts[x * cellsPerSide + highY + 1];
+            int ownCellEnd = x == cx ? cellStarts[x * cellsPerSide + cy + 1] : from;
+            for (int i = from; i < end; i++) {
+                int v = cellMembers[i];
+                if (i < ownCellEnd && v <= u) {
+                    continue;
+                }
+                double dx = xs[u] - cellXs[i];
+                double dy = ys[u] - cellYs[i];
+                double squared = dx * dx + dy * dy;
+                if (squared <= reachSquared && rng.nextDouble() < beta * Math.exp(-Math.sqrt(squared) / scale)) {
+                    sink.link(u, v, weights.sample(rng));
+                }
+            }
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "Waxman n=" + n + " alpha=" + alpha + " beta=" + beta + ", " + cellsPerSide + "x" + cellsPerSide
+                + " cells";
+    }
+}
+
+// FatTreeTopology class: k-ary fat-tree (k even) with k^3/4 hosts as routers
+// Indices: k^2/4 core switches, then k/2 aggregation and k/2 edge switches per pod, then the
+// hosts. Each switch or host emits the links to the layer above it.
+class FatTreeTopology extends TopologyGenerator {
+    private final int k;
+    private final int half;
+    private final int coreCount;
+    private final int aggregationBase;
+    private final int edgeBase;
+    private final int hostBase;
+    private final int n;
+
+    public FatTreeTopology(int k) {
+        if (k < 2 || k % 2 != 0 || (long) k * k * k / 4 + (long) k * k * 5 / 4 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Fat-tree needs an even k >= 2");
+        }
+        this.k = k;
+        this.half = k / 2;
+        this.coreCount = half * half;
+        this.aggregationBase = coreCount;
+        this.edgeBase = aggregationBase + k * half;
+        this.hostBase = edgeBase + k * half;
+        this.n = hostBase + k * half * half;
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    protected void emitLinks(int u, long seed, WeightDistribution weights, LinkSink sink) {
+        if (u < aggregationBase) {
+            return;
+        }
+        SplitMix64 rng = SplitMix64.forKey(seed, u);
+        if (u < edgeBase) {
+            // Aggregation switch a of a pod connects to cores a*k/2 .. a*k/2 + k/2 - 1
+            int a = (u - aggregationBase) % half;
+            for (int j = 0; j < half; j++) {
+                sink.link(u, a * half + j, weights.sample(rng));
+            }
+        } else if (u < hostBase) {
+            int pod = (u - edgeBase) / half;
+            for (int a = 0; a < half; a++) {
+                sink.link(u, aggregationBase + pod * half + a, weights.sample(rng));
+            }
+        } else {
+            sink.link(u, edgeBase + (u - hostBase) / half, weights.sample(rng));
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "fat-tree k=" + k + " (" + (n - hostBase) + " hosts, " + hostBase + " switches)";
+    }
+}
+
+// TorusTopology class: k-ary d-dimensional torus, each router linked to its neighbors along
+// every dimension with wrap-around
+class TorusTopology extends TopologyGenerator {
+    private final int k;
+    private final int dimensions;
+    private final int n;
+
+    public TorusTopology(int k, int dimensions) {
+        if (k < 2 || dimensions < 1 || Math.pow(k, dimensions) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Torus needs k >= 2, at least one dimension and under 2^31 routers");
+        }
+        this.k = k;
+        this.dimensions = dimensions;
+        int size = 1;
+        for (int d = 0; d < dimensions; d++) {
+            size *= k;
+        }
+        this.n = size;
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    // Each router owns the link to its +1 neighbor per dimension; with k == 2 that neighbor is
+    // also the -1 neighbor, so only coordinate 0 emits it
+    @Override
+    protected void emitLinks(int u, long seed, WeightDistribution weights, LinkSink sink) {
+        SplitMix64 rng = SplitMix64.forKey(seed, u);
+        int stride = 1;
+        for (int d = 0; d < dimensions; d++) {
+            int coordinate = u / stride % k;
+            if (k > 2 || coordinate == 0) {
+                int neighbor = coordinate == k - 1 ? u - coordinate * stride : u + stride;
+                sink.link(u, neighbor, weights.sample(rng));
+            }
+            stride *= k;
+        }
+    }
+
+    @Override
+    public String describe() {
+        return k + "-ary " + dimensions + "-dimensional torus";
+    }
+}
@@ -0,0 +1,280 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// TraceLevel enum: how much detail the trace records, each level includes the ones before it
+enum TraceLevel {
+    OFF, SUMMARY, DROPS, PACKETS
+}
+
+// TraceLog class: level-gated binary trace written by a background thread
+// Callers test drops()/packets() before recording, so nothing is built when a level is disabled.
+// Records are packed into 64 KB buffers that a writer thread flushes to a FileChannel; run
+// "java TraceLog <file>" to print a trace as text. At the packets level each packet's payload is
+// written once, when it is injected, so the simulation itself never keeps payloads. Packet ids are
+// reused once a packet leaves the network; an INJECT record starts the life of a new one.
+class TraceLog implements AutoCloseable {
+    static final TraceLog DISABLED = new TraceLog(TraceLevel.OFF);
+
+    static final byte FORWARD = 1;
+    static final byte DELIVER = 2;
+    static final byte DROP_QUEUE_FULL = 3;
+    static final byte DROP_RED = 4;
+    static final byte DROP_NO_ROUTE = 5;
+    static final byte TOKEN_MISS = 6;
+    static final byte SUMMARY = 7;
+    static final byte INJECT = 8;
+    static final byte DROP_CODEL = 9;
+
+    private static final int MAGIC = 0x4E535452; // "NSTR"
+    private static final int VERSION = 2;
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int PACKET_RECORD_BYTES = 1 + 8 + 4 * 5;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final TraceLevel level;
+    private final boolean summaryEnabled;
+    private final boolean dropsEnabled;
+    private final boolean packetsEnabled;
+    private final FileChannel channel;
+    private final BlockingQueue<ByteBuffer> fullBuffers;
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final Thread writer;
+    private ByteBuffer current;
+    private TimeSource timeSource = TimeSource.SYSTEM;
+    private volatile IOException writeFailure;
+
+    private TraceLog(TraceLevel level) {
+        this.level = level;
+        this.summaryEnabled = false;
+        this.dropsEnabled = false;
+        this.packetsEnabled = false;
+        this.channel = null;
+        this.fullBuffers = null;
+        this.freeBuffers = null;
+        this.writer = null;
+    }
+
+    public TraceLog(TraceLevel level, String path) throws IOException {
+        this.level = level;
+        this.summaryEnabled = level.compareTo(TraceLevel.SUMMARY) >= 0;
+        this.dropsEnabled = level.compareTo(TraceLevel.DROPS) >= 0;
+        this.packetsEnabled = level.compareTo(TraceLevel.PACKETS) >= 0;
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.fullBuffers = new ArrayBlockingQueue<>(8);
+        this.freeBuffers = new ArrayBlockingQueue<>(8);
+        this.current = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        current.putInt(MAGIC).putInt(VERSION);
+        this.writer = new Thread(this::drain, "trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Reads -Dtrace.level=off|summary|drops|packets and -Dtrace.file (default trace.bin)
+    public static TraceLog fromSystemProperties() {
+        TraceLevel level = TraceLevel.valueOf(System.getProperty("trace.level", "off").toUpperCase());
+        if (level == TraceLevel.OFF) {
+            return DISABLED;
+        }
+        try {
+            return new TraceLog(level, System.getProperty("trace.file", "trace.bin"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open trace file", e);
+        }
+    }
+
+    public TraceLevel getLevel() {
+        return level;
+    }
+
+    public boolean summary() {
+        return summaryEnabled;
+    }
+
+    public boolean drops() {
+        return dropsEnabled;
+    }
+
+    public boolean packets() {
+        return packetsEnabled;
+    }
+
+    // Timestamps come from this source, e.g. the simulator's virtual clock. DISABLED never records
+    // and is shared by every graph without a trace, e.g. the runs of a parameter sweep, so it keeps
+    // no simulator's clock.
+    public void setTimeSource(TimeSource timeSource) {
+        if (this == DISABLED) {
+            return;
+        }
+        this.timeSource = timeSource;
+    }
+
+    public synchronized void record(byte kind, int routerId, PacketTable packets, int packet, int otherRouterId) {
+        ensureRoom(PACKET_RECORD_BYTES);
+        current.put(kind)
+                .putLong(timeSource.nanoTime())
+                .putInt(routerId)
+                .putInt(packet)
+                .putInt(packets.sourceId(packet))
+                .putInt(packets.destinationId(packet))
+                .putInt(otherRouterId);
+    }
+
+    public synchronized void inject(int routerId, int packet, String payload) {
+        byte[] data = payload.getBytes(StandardCharsets.UTF_8);
+        ensureRoom(1 + 8 + 4 + 4 + 4 + data.length);
+        current.put(INJECT)
+                .putLong(timeSource.nanoTime())
+                .putInt(routerId)
+                .putInt(packet)
+                .putInt(data.length)
+                .put(data);
+    }
+
+    public synchronized void summary(String line) {
+        if (!summaryEnabled) {
+            return;
+        }
+        byte[] text = line.getBytes(StandardCharsets.UTF_8);
+        ensureRoom(1 + 8 + 4 + text.length);
+        current.put(SUMMARY).putLong(timeSource.nanoTime()).putInt(text.length).put(text);
+    }
+
+    private void ensureRoom(int bytes) {
+        if (current.remaining() >= bytes) {
+            return;
+        }
+        hand(current);
+        ByteBuffer next = freeBuffers.poll();
+        current = next != null ? next : ByteBuffer.allocateDirect(Math.max(BUFFER_BYTES, bytes));
+        if (current.capacity() < bytes) {
+            current = ByteBuffer.allocateDirect(bytes);
+        }
+    }
+
+    private void hand(ByteBuffer buffer) {
+        if (writeFailure != null) {
+            throw new UncheckedIOException("Trace writer failed", writeFailure);
+        }
+        buffer.flip();
+        try {
+            fullBuffers.put(buffer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                ByteBuffer buffer = fullBuffers.take();
+                if (buffer == END) {
+                    return;
+                }
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+                freeBuffers.offer(buffer);
+            }
+        } catch (IOException e) {
+            writeFailure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null || !channel.isOpen()) {
+            return;
+        }
+        try {
+            hand(current);
+            fullBuffers.put(END);
+            writer.join();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Prints a binary trace as text, one record per line
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: java TraceLog <trace file>");
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a trace file: " + args[0]);
+            }
+            while (true) {
+                byte kind;
+                try {
+                    kind = in.readByte();
+                } catch (EOFException end) {
+                    return;
+                }
+                long time = in.readLong();
+                if (kind == SUMMARY) {
+                    byte[] text = new byte[in.readInt()];
+                    in.readFully(text);
+                    System.out.println(time + " SUMMARY " + new String(text, StandardCharsets.UTF_8));
+                    continue;
+                }
+                if (kind == INJECT) {
+                    int router = in.readInt();
+                    int packet = in.readInt();
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    System.out.println(time + " INJECT router=" + router + " packet=" + packet + " data='"
+                            + new String(data, StandardCharsets.UTF_8) + "'");
+                    continue;
+                }
+                int router = in.readInt();
+                int packet = in.readInt();
+                int source = in.readInt();
+                int destination = in.readInt();
+                int other = in.readInt();
+                System.out.println(time + " " + kindName(kind) + " router=" + router + " packet=" + packet
+                        + " source=" + source + " destination=" + destination
+                        + (kind == FORWARD ? " next=" + other : ""));
+            }
+        }
+    }
+
+    private static String kindName(byte kind) {
+        switch (kind) {
+            case FORWARD:
+                return "FORWARD";
+            case DELIVER:
+                return "DELIVER";
+            case DROP_QUEUE_FULL:
+                return "DROP_QUEUE_FULL";
+            case DROP_RED:
+                return "DROP_RED";
+            case DROP_NO_ROUTE:
+                return "DROP_NO_ROUTE";
+            case DROP_CODEL:
+                return "DROP_CODEL";
+            case TOKEN_MISS:
+                return "TOKEN_MISS";
+            default:
+                return "UNKNOWN(" + kind + ")";
+        }
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+// TrafficGenerator class: lazily produces the packets sent by one source router
+// The simulator keeps one pending event per generator and asks for the next packet only when that
+// event fires, so memory does not depend on how many packets a run generates. Subclasses supply
+// the gaps between packets; rates are in packets per second and times in simulator ticks.
+// Checkpoints hold the built-in generators and destination pickers, see write().
+abstract class TrafficGenerator {
+    static final long NONE = Long.MAX_VALUE;
+    static final double TICKS_PER_SECOND = EventSimulator.TICKS_PER_MILLISECOND * 1000.0;
+    static final int DEFAULT_FLOWS = 16;
+    private static final byte KIND_POISSON = 0;
+    private static final byte KIND_ON_OFF = 1;
+    private static final byte KIND_PARETO = 2;
+    private static final byte PICKER_UNIFORM = 0;
+    private static final byte PICKER_WEIGHTED = 1;
+    // A picker written earlier in the same checkpoint, referred to by number
+    private static final byte PICKER_SEEN = 2;
+
+    protected final SplitMix64 rng;
+    private final int source;
+    private final DestinationPicker destinations;
+    private final int sizeBytes;
+    private final long endTime;
+    // Kept fractional so that rounding to whole ticks does not bias the rate
+    private double clock;
+    private long generated;
+    private int flows = DEFAULT_FLOWS;
+
+    protected TrafficGenerator(int source, DestinationPicker destinations, int sizeBytes, long startTime, long endTime,
+            SplitMix64 rng) {
+        this.source = source;
+        this.destinations = destinations;
+        this.sizeBytes = sizeBytes;
+        this.endTime = endTime;
+        this.rng = rng;
+        this.clock = startTime;
+    }
+
+    public int getSource() {
+        return source;
+    }
+
+    public int getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public long getGenerated() {
+        return generated;
+    }
+
+    public DestinationPicker getDestinations() {
+        return destinations;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    // Time of the next packet, or NONE once the generator has passed its end time
+    public long nextTime() {
+        clock += nextGap();
+        long time = (long) Math.ceil(clock);
+        return time < endTime ? time : NONE;
+    }
+
+    // Destination router index of the packet due now
+    public int nextDestination() {
+        generated++;
+        return destinations.pick(rng, source);
+    }
+
+    // Flow of the packet nextDestination() just produced; the source's packets take turns over
+    // its flows, which multipath routing may send along different paths
+    public int flowId() {
+        return (int) ((generated - 1) % flows);
+    }
+
+    public void setFlows(int flows) {
+        if (flows <= 0) {
+            throw new IllegalArgumentException("Flow count must be positive, got " + flows);
+        }
+        this.flows = flows;
+    }
+
+    // Ticks from the previous packet to the next one
+    protected abstract double nextGap();
+
+    // Progress through the packet sequence; subclasses add state of their own
+    void writeState(CheckpointOutput out) throws IOException {
+        out.writeLong(rng.getState());
+        out.writeDouble(clock);
+        out.writeLong(generated);
+        out.writeInt(flows);
+    }
+
+    void readState(MappedInput in) throws IOException {
+        rng.setState(in.readLong());
+        clock = in.readDouble();
+        generated = in.readLong();
+        setFlows(in.readInt());
+    }
+
+    // Writes a generator's configuration and state. Many generators usually share one destination
+    // picker, so pickers maps each picker already written to its number and later generators
+    // refer to it instead of repeating it.
+    static void write(CheckpointOutput out, TrafficGenerator generator, Map<DestinationPicker, Integer> pickers)
+            throws IOException {
+        if (generator instanceof PoissonTraffic) {
+            out.writeByte(KIND_POISSON);
+        } else if (generator instanceof OnOffTraffic) {
+            out.writeByte(KIND_ON_OFF);
+        } else if (generator instanceof ParetoTraffic) {
+            out.writeByte(KIND_PARETO);
+        } else {
+            throw new IllegalArgumentException("Cannot checkpoint a " + generator.getClass().getName());
+        }
+        out.writeInt(generator.source);
+        out.writeInt(generator.sizeBytes);
+        out.writeLong(generator.endTime);
+        writePicker(out, generator.destinations, pickers);
+        if (generator instanceof PoissonTraffic) {
+            out.writeDouble(((PoissonTraffic) generator).getPacketsPerSecond());
+        } else if (generator instanceof OnOffTraffic) {
+            OnOffTraffic onOff = (OnOffTraffic) generator;
+            out.writeDouble(onOff.getPacketsPerSecond());
+            out.writeDouble(onOff.getMeanOnMillis());
+            out.writeDouble(onOff.getMeanOffMillis());
+        } else {
+            ParetoTraffic pareto = (ParetoTraffic) generator;
+            out.writeDouble(pareto.getPacketsPerSecond());
+            out.writeDouble(pareto.getShape());
+        }
+        generator.writeState(out);
+    }
+
+    private static void writePicker(CheckpointOutput out, DestinationPicker picker,
+            Map<DestinationPicker, Integer> pickers) throws IOException {
+        Integer seen = pickers.get(picker);
+        if (seen != null) {
+            out.writeByte(PICKER_SEEN);
+            out.writeInt(seen);
+            return;
+        }
+        if (picker instanceof UniformDestinations) {
+            out.writeByte(PICKER_UNIFORM);
+            out.writeInt(((UniformDestinations) picker).getRouterCount());
+        } else if (picker instanceof WeightedDestinations) {
+            double[] weights = ((WeightedDestinations) picker).getWeights();
+            out.writeByte(PICKER_WEIGHTED);
+            out.writeInt(weights.length);
+            for (double weight : weights) {
+                out.writeDouble(weight);
+            }
+        } else {
+            throw new IllegalArgumentException("Cannot checkpoint a " + picker.getClass().getName());
+        }
+        pickers.put(picker, pickers.size());
+    }
+
+    // Reads a generator written by write(); pickers collects the pickers read so far
+    static TrafficGenerator read(MappedInput in, List<DestinationPicker> pickers) throws IOException {
+        byte kind = in.readByte();
+        int source = in.readInt();
+        int sizeBytes = in.readInt();
+        long endTime = in.readLong();
+        DestinationPicker destinations = readPicker(in, pickers);
+        // The random state and clock are overwritten by readState
+        SplitMix64 rng = new SplitMix64(0);
+        TrafficGenerator generator;
+        if (kind == KIND_POISSON) {
+            generator = new PoissonTraffic(source, destinations, sizeBytes, 0, endTime, rng, in.readDouble());
+        } else if (kind == KIND_ON_OFF) {
+            generator = new OnOffTraffic(source, destinations, sizeBytes, 0, endTime, rng, in.readDouble(),
+                    in.readDouble(), in.readDouble());
+        } else if (kind == KIND_PARETO) {
+            generator = new ParetoTraffic(source, destinations, sizeBytes, 0, endTime, rng, in.readDouble(),
+                    in.readDouble());
+        } else {
+            throw in.error("Unknown traffic generator kind " + kind);
+        }
+        generator.readState(in);
+        return generator;
+    }
+
+    private static DestinationPicker readPicker(MappedInput in, List<DestinationPicker> pickers) throws IOException {
+        byte kind = in.readByte();
+        if (kind == PICKER_SEEN) {
+            int number = in.readInt();
+            if (number < 0 || number >= pickers.size()) {
+                throw in.error("Unknown destination picker " + number);
+            }
+            return pickers.get(number);
+        }
+        DestinationPicker picker;
+        if (kind == PICKER_UNIFORM) {
+            picker = new UniformDestinations(in.readInt());
+        } else if (kind == PICKER_WEIGHTED) {
+            double[] weights = new double[in.readInt()];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = in.readDouble();
+            }
+            picker = new WeightedDestinations(weights);
+        } else {
+            throw in.error("Unknown destination picker kind " + kind);
+        }
+        pickers.add(picker);
+        return picker;
+    }
+}
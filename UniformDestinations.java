@@ -0,0 +1,21 @@
+// UniformDestinations class: every router other than the source is equally likely
+class UniformDestinations implements DestinationPicker {
+    private final int routerCount;
+
+    public UniformDestinations(int routerCount) {
+        if (routerCount < 2) {
+            throw new IllegalArgumentException("Traffic needs at least two routers");
+        }
+        this.routerCount = routerCount;
+    }
+
+    @Override
+    public int pick(SplitMix64 rng, int source) {
+        int destination = rng.nextInt(routerCount - 1);
+        return destination >= source ? destination + 1 : destination;
+    }
+
+    public int getRouterCount() {
+        return routerCount;
+    }
+}
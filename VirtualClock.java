@@ -0,0 +1,13 @@
+// VirtualClock class: simulation time source advanced by the event loop that owns it
+class VirtualClock implements TimeSource {
+    private long now;
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    public void setNanoTime(long now) {
+        this.now = now;
+    }
+}
@@ -0,0 +1,75 @@
+// WeightDistribution class: link weights for generated topologies, always at least 1
+abstract class WeightDistribution {
+    public abstract int sample(SplitMix64 rng);
+
+    public abstract String describe();
+
+    // Parses constant:<w>, uniform:<lo>:<hi> or exponential:<mean>
+    public static WeightDistribution parse(String spec) {
+        String[] parts = spec.split(":");
+        try {
+            if (parts[0].equals("constant") && parts.length == 2) {
+                return constant(Integer.parseInt(parts[1]));
+            } else if (parts[0].equals("uniform") && parts.length == 3) {
+                return uniform(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            } else if (parts[0].equals("exponential") && parts.length == 2) {
+                return exponential(Double.parseDouble(parts[1]));
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number in weight distribution " + spec);
+        }
+        throw new IllegalArgumentException("Unknown weight distribution " + spec);
+    }
+
+    public static WeightDistribution constant(int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Weights must be at least 1");
+        }
+        return new WeightDistribution() {
+            @Override
+            public int sample(SplitMix64 rng) {
+                return weight;
+            }
+
+            @Override
+            public String describe() {
+                return "constant " + weight;
+            }
+        };
+    }
+
+    public static WeightDistribution uniform(int low, int high) {
+        if (low < 1 || high < low) {
+            throw new IllegalArgumentException("Uniform weights need 1 <= low <= high");
+        }
+        return new WeightDistribution() {
+            @Override
+            public int sample(SplitMix64 rng) {
+                return low + rng.nextInt(high - low + 1);
+            }
+
+            @Override
+            public String describe() {
+                return "uniform " + low + ".." + high;
+            }
+        };
+    }
+
+    // Exponential with the given mean, rounded up so it never drops below 1
+    public static WeightDistribution exponential(double mean) {
+        if (!(mean > 0)) {
+            throw new IllegalArgumentException("Exponential weights need a positive mean");
+        }
+        return new WeightDistribution() {
+            @Override
+            public int sample(SplitMix64 rng) {
+                return (int) Math.min(Integer.MAX_VALUE - 1, Math.max(1, Math.ceil(rng.nextExponential(mean))));
+            }
+
+            @Override
+            public String describe() {
+                return "exponential mean " + mean;
+            }
+        };
+    }
+}
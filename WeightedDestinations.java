@@ -0,0 +1,72 @@
+// WeightedDestinations class: destinations in proportion to their weight, via Vose's alias table
+// The source is never picked; draws that land on it are repeated.
+class WeightedDestinations implements DestinationPicker {
+    private final double[] weights;
+    private final double[] probabilities;
+    private final int[] aliases;
+
+    public WeightedDestinations(double[] weights) {
+        int n = weights.length;
+        double total = 0;
+        int positive = 0;
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight)) {
+                throw new IllegalArgumentException("Weights must be non-negative");
+            }
+            total += weight;
+            positive += weight > 0 ? 1 : 0;
+        }
+        if (positive < 2) {
+            throw new IllegalArgumentException("Traffic needs at least two routers with positive weight");
+        }
+        this.weights = weights.clone();
+        this.probabilities = new double[n];
+        this.aliases = new int[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        double[] scaled = new double[n];
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probabilities[less] = scaled[less];
+            aliases[less] = more;
+            scaled[more] += scaled[less] - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        while (largeCount > 0) {
+            probabilities[large[--largeCount]] = 1.0;
+        }
+        while (smallCount > 0) {
+            probabilities[small[--smallCount]] = 1.0;
+        }
+    }
+
+    @Override
+    public int pick(SplitMix64 rng, int source) {
+        while (true) {
+            int column = rng.nextInt(probabilities.length);
+            int destination = rng.nextDouble() < probabilities[column] ? column : aliases[column];
+            if (destination != source) {
+                return destination;
+            }
+        }
+    }
+
+    public double[] getWeights() {
+        return weights.clone();
+    }
+}
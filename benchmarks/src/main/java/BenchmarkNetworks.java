@@ -0,0 +1,53 @@
+// BenchmarkNetworks class: builds the menu topologies and random graphs for the benchmarks
+// Buckets are large and refill fast so token shaping never limits a benchmark by accident.
+final class BenchmarkNetworks {
+    static final int BUCKET_CAPACITY = 1_000_000;
+    static final int TOKEN_RATE = 1_000_000_000;
+
+    private BenchmarkNetworks() {
+    }
+
+    static Graph create(String topology, int routers) {
+        Graph graph = new Graph();
+        for (int i = 1; i <= routers; i++) {
+            graph.addRouter(i, BUCKET_CAPACITY, TOKEN_RATE);
+        }
+        switch (topology) {
+            case "bus":
+                NetworkSimulation.createBusTopology(graph, routers);
+                break;
+            case "star":
+                NetworkSimulation.createStarTopology(graph, routers);
+                break;
+            case "ring":
+                NetworkSimulation.createRingTopology(graph, routers);
+                break;
+            case "mesh":
+                NetworkSimulation.createMeshTopology(graph, routers);
+                break;
+            case "tree":
+                NetworkSimulation.createTreeTopology(graph, routers);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown topology " + topology);
+        }
+        return graph;
+    }
+
+    // A ring with edgesPerRouter - 1 extra links per router to random targets, weights uniform in
+    // 1..maxWeight, the same for the same seed
+    static Graph random(int routers, int edgesPerRouter, int maxWeight, long seed) {
+        SplitMix64 rng = new SplitMix64(seed);
+        Graph graph = new Graph();
+        for (int i = 1; i <= routers; i++) {
+            graph.addRouter(i, BUCKET_CAPACITY, TOKEN_RATE);
+        }
+        for (int i = 1; i <= routers; i++) {
+            graph.addEdge(i, i % routers + 1, 1 + rng.nextInt(maxWeight));
+            for (int k = 1; k < edgesPerRouter; k++) {
+                graph.addEdge(i, 1 + rng.nextInt(routers), 1 + rng.nextInt(maxWeight));
+            }
+        }
+        return graph;
+    }
+}
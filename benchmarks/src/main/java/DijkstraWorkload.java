@@ -0,0 +1,30 @@
+import benchmarks.Workload;
+
+// DijkstraWorkload class: single-source Dijkstra on a random graph of 4 links per router
+// The variant is the priority queue, dial or heap. Weights are 1..10, which Dijkstra runs on
+// Dial's bucket queue; the heap variant multiplies them past DIAL_MAX_WEIGHT, which gives the
+// same shortest-path trees on the indexed binary heap. Each run starts from the next source.
+public class DijkstraWorkload implements Workload {
+    static final int EDGES_PER_ROUTER = 4;
+    static final int MAX_WEIGHT = 10;
+
+    private CompactGraph compact;
+    private Dijkstra dijkstra;
+    private int source;
+
+    @Override
+    public void setUp(String queue, int routers) {
+        compact = BenchmarkNetworks.random(routers, EDGES_PER_ROUTER, MAX_WEIGHT, 42).getCompactGraph();
+        if (queue.equals("heap")) {
+            compact = compact.scaledCopy(Dijkstra.DIAL_MAX_WEIGHT + 1);
+        }
+        dijkstra = new Dijkstra(routers);
+    }
+
+    @Override
+    public long run() {
+        int[] distances = dijkstra.run(compact, source);
+        source = source + 1 < compact.size() ? source + 1 : 0;
+        return distances[compact.size() - 1];
+    }
+}
@@ -0,0 +1,83 @@
+import benchmarks.Workload;
+
+// DistanceVectorWorkload class: one link change on a random graph of 4 links per router, then
+// the routes are brought up to date
+// The variant is how: distance-vector has Graph repair the converged vectors incrementally,
+// dijkstra recomputes every forwarding table. Both apply the change through Graph. Runs alternate
+// between the next of a fixed cycle of changes, a quarter of them failures, and undoing it, so both
+// variants see the same sequence of topologies. Only single links change, so an undo restores the
+// old weight exactly. Ring links only change weight: with the ring intact every router stays
+// reachable, since an unreachable one would have the vectors count to infinity instead.
+public class DistanceVectorWorkload implements Workload {
+    static final int EDGES_PER_ROUTER = 4;
+    static final int MAX_WEIGHT = 10;
+    static final int CHANGES = 1024;
+
+    private Graph graph;
+    private boolean distanceVector;
+    // Router ids, not indices
+    private int[] sources;
+    private int[] targets;
+    private int[] weights;
+    private int next;
+
+    @Override
+    public void setUp(String variant, int routers) {
+        graph = BenchmarkNetworks.random(routers, EDGES_PER_ROUTER, MAX_WEIGHT, 7);
+        CompactGraph compact = graph.getCompactGraph();
+        distanceVector = variant.equals("distance-vector");
+        if (distanceVector) {
+            graph.calculateDistanceVectors();
+        } else {
+            graph.calculateShortestPaths();
+        }
+        SplitMix64 rng = new SplitMix64(7);
+        sources = new int[CHANGES];
+        targets = new int[CHANGES];
+        weights = new int[CHANGES];
+        for (int i = 0; i < CHANGES; i += 2) {
+            int source;
+            int target;
+            do {
+                source = rng.nextInt(routers);
+                int edge = compact.firstEdge(source) + rng.nextInt(compact.endEdge(source) - compact.firstEdge(source));
+                target = compact.target(edge);
+            } while (target == source || linkCount(compact, source, target) > 1);
+            boolean fail = rng.nextInt(4) == 0 && target != (source + 1) % routers;
+            sources[i] = compact.routerId(source);
+            targets[i] = compact.routerId(target);
+            weights[i] = fail ? CompactGraph.NO_LINK : 1 + rng.nextInt(MAX_WEIGHT);
+            sources[i + 1] = sources[i];
+            targets[i + 1] = targets[i];
+            weights[i + 1] = compact.weight(compact.findEdge(source, target));
+        }
+    }
+
+    private static int linkCount(CompactGraph compact, int source, int target) {
+        int count = 0;
+        for (int e = compact.firstEdge(source), end = compact.endEdge(source); e < end; e++) {
+            if (compact.target(e) == target) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long run() {
+        int i = next;
+        next = next + 1 < CHANGES ? next + 1 : 0;
+        if (weights[i] == CompactGraph.NO_LINK) {
+            graph.removeEdge(sources[i], targets[i]);
+        } else if (i % 2 == 1 && weights[i - 1] == CompactGraph.NO_LINK) {
+            // Default bandwidth and delay, so the link gets its failed CSR slot back without a rebuild
+            graph.addEdge(sources[i], targets[i], weights[i]);
+        } else {
+            graph.updateEdgeWeight(sources[i], targets[i], weights[i]);
+        }
+        if (distanceVector) {
+            return graph.getRoutingRecomputes();
+        }
+        return graph.calculateShortestPaths().length;
+    }
+}
@@ -0,0 +1,45 @@
+import benchmarks.Workload;
+
+// ForwardPacketsWorkload class: a batch of packets from router 1 of a 64-router topology is
+// forwarded hop by hop to its destinations by the event simulator
+// The variant is "<topology>:<routing>", routing dijkstra or ecmp.
+// Each run injects the same packets for assorted destinations at the current virtual time and
+// runs SimulationShard's arrival, transmission and delivery handlers until the network drains
+// again, so every run does the same work. Buckets never run dry, see BenchmarkNetworks.
+public class ForwardPacketsWorkload implements Workload {
+    static final int ROUTERS = 64;
+    static final int PACKET_BYTES = 64;
+
+    private Simulator simulator;
+    private int source;
+    private int[] destinations;
+
+    @Override
+    public void setUp(String variant, int batchSize) {
+        String[] parts = variant.split(":");
+        Graph graph = BenchmarkNetworks.create(parts[0], ROUTERS);
+        if (parts[1].equals("ecmp")) {
+            graph.calculateMultipathRoutes(1);
+        } else {
+            graph.calculateShortestPaths();
+        }
+        simulator = new EventSimulator(graph);
+        source = graph.getRouter(1).getIndex();
+        SplitMix64 rng = new SplitMix64(42);
+        destinations = new int[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            destinations[i] = graph.getRouter(2 + rng.nextInt(ROUTERS - 1)).getIndex();
+        }
+    }
+
+    @Override
+    public long run() {
+        long now = simulator.getVirtualTime();
+        for (int i = 0; i < destinations.length; i++) {
+            simulator.inject(source, destinations[i], PACKET_BYTES, i, now);
+        }
+        long before = simulator.getPacketsDelivered();
+        simulator.run();
+        return simulator.getPacketsDelivered() - before;
+    }
+}
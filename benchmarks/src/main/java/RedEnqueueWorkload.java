@@ -0,0 +1,48 @@
+import benchmarks.Workload;
+
+// RedEnqueueWorkload class: enqueuePacket at a steady queue length, on a RED or a plain router
+// The variant is "<router>:<queue>": router red or plain, queue empty, between (half full, so
+// the RED decision draws a random number) or full. An accepted packet is dequeued again.
+public class RedEnqueueWorkload implements Workload {
+    private Router router;
+    private PacketTable packets;
+    private int packet;
+    private int port;
+
+    @Override
+    public void setUp(String variant, int unused) {
+        String[] parts = variant.split(":");
+        String queue = parts[1];
+        int length = queue.equals("full") ? Router.QUEUE_CAPACITY : queue.equals("between") ? 50 : 0;
+        Graph graph = new Graph();
+        if (parts[0].equals("red")) {
+            // Thresholds wide enough that the average sits between them for "between"
+            graph.addRedRouter(1, BenchmarkNetworks.BUCKET_CAPACITY, BenchmarkNetworks.TOKEN_RATE, 20, 80, 0.1,
+                    length);
+        } else {
+            graph.addRouter(1, BenchmarkNetworks.BUCKET_CAPACITY, BenchmarkNetworks.TOKEN_RATE);
+        }
+        graph.addRouter(2, BenchmarkNetworks.BUCKET_CAPACITY, BenchmarkNetworks.TOKEN_RATE);
+        graph.addEdge(1, 2, 1);
+        graph.calculateShortestPaths();
+        graph.getOutputPorts();
+        router = graph.getRouter(1);
+        // Simulation time, as the event simulator drives it
+        router.getTokenBucket().setTimeSource(new VirtualClock());
+        packets = new PacketTable(new Router[] {router, graph.getRouter(2)});
+        port = router.outputPort(1);
+        packet = packets.add(0, 0, 1, 64, 0);
+        while (router.getQueueLength() < length) {
+            router.appendPacket(packets, packets.add(0, 0, 1, 64, 0), port);
+        }
+    }
+
+    @Override
+    public long run() {
+        if (!router.enqueuePacket(packets, packet)) {
+            return 0;
+        }
+        router.dequeuePacket(packets, port);
+        return 1;
+    }
+}
@@ -0,0 +1,17 @@
+import benchmarks.Workload;
+
+// ShortestPathWorkload class: all-pairs Dijkstra on a menu topology
+public class ShortestPathWorkload implements Workload {
+    private Graph graph;
+
+    @Override
+    public void setUp(String topology, int routers) {
+        graph = BenchmarkNetworks.create(topology, routers);
+        graph.getCompactGraph();
+    }
+
+    @Override
+    public long run() {
+        return graph.calculateShortestPaths().length;
+    }
+}
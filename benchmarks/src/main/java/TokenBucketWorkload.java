@@ -0,0 +1,17 @@
+import benchmarks.Workload;
+
+// TokenBucketWorkload class: one tryConsume on a bucket that refills faster than it drains,
+// so every call succeeds and only the lock-free update is measured
+public class TokenBucketWorkload implements Workload {
+    private TokenBucket bucket;
+
+    @Override
+    public void setUp(String clock, int tokens) {
+        bucket = new TokenBucket(BenchmarkNetworks.BUCKET_CAPACITY, BenchmarkNetworks.TOKEN_RATE);
+    }
+
+    @Override
+    public long run() {
+        return bucket.tryConsume(1) ? 1 : 0;
+    }
+}
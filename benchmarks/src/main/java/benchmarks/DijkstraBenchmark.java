@@ -0,0 +1,37 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// DijkstraBenchmark class: one single-source Dijkstra run on Dial's bucket queue or the indexed
+// binary heap, over the same shortest-path trees
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DijkstraBenchmark {
+    @Param({"dial", "heap"})
+    public String queue;
+
+    @Param({"20000"})
+    public int routers;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create("DijkstraWorkload", queue, routers);
+    }
+
+    @Benchmark
+    public long run() {
+        return workload.run();
+    }
+}
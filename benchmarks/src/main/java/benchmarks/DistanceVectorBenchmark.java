@@ -0,0 +1,37 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// DistanceVectorBenchmark class: routes after one link change, repaired incrementally by
+// DistanceVectorRouting or recomputed by an all-pairs Dijkstra run
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DistanceVectorBenchmark {
+    @Param({"distance-vector", "dijkstra"})
+    public String routing;
+
+    @Param({"1000"})
+    public int routers;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create("DistanceVectorWorkload", routing, routers);
+    }
+
+    @Benchmark
+    public long linkChanged() {
+        return workload.run();
+    }
+}
@@ -0,0 +1,39 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// ForwardPacketsBenchmark class: event-driven forwarding through SimulationShard, reported per
+// packet delivered, each over several hops
+// With ecmp routing every next-hop lookup also hashes the packet's flow onto a group member.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ForwardPacketsBenchmark {
+    static final int BATCH = 64;
+
+    @Param({"dijkstra", "ecmp"})
+    public String routing;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create("ForwardPacketsWorkload", "ring:" + routing, BATCH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long forwardPackets() {
+        return workload.run();
+    }
+}
@@ -0,0 +1,37 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// RedEnqueueBenchmark class: RedRouter.enqueuePacket with an empty queue (idle decay of the
+// average), a half-full one (random drop decision) or a full one, next to a plain Router
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RedEnqueueBenchmark {
+    @Param({"red", "plain"})
+    public String router;
+
+    @Param({"empty", "between", "full"})
+    public String queue;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create("RedEnqueueWorkload", router + ":" + queue, 0);
+    }
+
+    @Benchmark
+    public long enqueuePacket() {
+        return workload.run();
+    }
+}
@@ -0,0 +1,37 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// ShortestPathBenchmark class: Graph.calculateShortestPaths over the five menu topologies
+// One operation is a full all-pairs Dijkstra run, forwarding tables included.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ShortestPathBenchmark {
+    @Param({"bus", "star", "ring", "mesh", "tree"})
+    public String topology;
+
+    @Param({"64", "512"})
+    public int routers;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create("ShortestPathWorkload", topology, routers);
+    }
+
+    @Benchmark
+    public long calculateShortestPaths() {
+        return workload.run();
+    }
+}
@@ -0,0 +1,52 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+// TokenBucketBenchmark class: TokenBucket.tryConsume with one bucket per thread, or four
+// threads sharing one bucket so the compare-and-set loop is contended
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TokenBucketBenchmark {
+    // TokenBucketBenchmark.PerThread class: a private bucket for each benchmark thread
+    @State(Scope.Thread)
+    public static class PerThread {
+        Workload workload;
+
+        @Setup
+        public void setUp() {
+            workload = Workload.create("TokenBucketWorkload", "system", 1);
+        }
+    }
+
+    // TokenBucketBenchmark.Shared class: one bucket for all benchmark threads
+    @State(Scope.Benchmark)
+    public static class Shared {
+        Workload workload;
+
+        @Setup
+        public void setUp() {
+            workload = Workload.create("TokenBucketWorkload", "system", 1);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long uncontended(PerThread state) {
+        return state.workload.run();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long contended(Shared state) {
+        return state.workload.run();
+    }
+}
@@ -0,0 +1,23 @@
+package benchmarks;
+
+// Workload interface: one benchmarked operation on the simulator
+// The simulator classes live in the unnamed package, which JMH benchmarks (and any named package)
+// cannot refer to. Each operation is therefore an unnamed-package class implementing this
+// interface, loaded by name once per trial; the measured call is a plain interface call.
+public interface Workload {
+    // Builds the state for one variant, e.g. a topology name, and size
+    void setUp(String variant, int size);
+
+    // Runs the operation once and returns a value for the benchmark to consume
+    long run();
+
+    static Workload create(String className, String variant, int size) {
+        try {
+            Workload workload = (Workload) Class.forName(className).getDeclaredConstructor().newInstance();
+            workload.setUp(variant, size);
+            return workload;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load workload " + className, e);
+        }
+    }
+}